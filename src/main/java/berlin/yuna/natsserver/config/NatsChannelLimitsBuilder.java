@@ -0,0 +1,116 @@
+package berlin.yuna.natsserver.config;
+
+import berlin.yuna.natsserver.logic.NatsStreaming;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Store limits of a channel or a wildcard channel e.g. orders.* - see {@link NatsStreamingConfig#NATS_CHANNEL_LIMITS} <br />
+ * Unset limits are inherited from the global limits ({@link NatsStreamingConfig#MAX_MSGS}, {@link NatsStreamingConfig#MAX_BYTES},
+ * {@link NatsStreamingConfig#MAX_AGE}, {@link NatsStreamingConfig#MAX_SUBS}). The server rejects channel limits above the global limits.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsChannelLimitsBuilder {
+
+    protected final NatsStreamingOptionsBuilder parent;
+    protected final String channel;
+
+    protected NatsChannelLimitsBuilder(final NatsStreamingOptionsBuilder parent, final String channel) {
+        this.parent = parent;
+        this.channel = channel;
+    }
+
+    /**
+     * @param maxMsgs max number of messages of the channel (0 for unlimited)
+     * @return self {@link NatsChannelLimitsBuilder}
+     */
+    public NatsChannelLimitsBuilder maxMsgs(final long maxMsgs) {
+        return limit("max_msgs", Math.max(0, maxMsgs));
+    }
+
+    /**
+     * @param maxBytes max total message size of the channel in bytes (0 for unlimited)
+     * @return self {@link NatsChannelLimitsBuilder}
+     */
+    public NatsChannelLimitsBuilder maxBytes(final long maxBytes) {
+        return limit("max_bytes", Math.max(0, maxBytes));
+    }
+
+    /**
+     * @param maxAge max duration a message of the channel is stored (zero for unlimited)
+     * @return self {@link NatsChannelLimitsBuilder}
+     */
+    public NatsChannelLimitsBuilder maxAge(final Duration maxAge) {
+        return limit("max_age", goDuration(maxAge));
+    }
+
+    /**
+     * @param maxSubs max number of subscriptions of the channel (0 for unlimited)
+     * @return self {@link NatsChannelLimitsBuilder}
+     */
+    public NatsChannelLimitsBuilder maxSubs(final int maxSubs) {
+        return limit("max_subs", Math.max(0, maxSubs));
+    }
+
+    /**
+     * @param maxInactivity duration without messages and subscriptions after which the channel is deleted (zero for unlimited)
+     * @return self {@link NatsChannelLimitsBuilder}
+     */
+    public NatsChannelLimitsBuilder maxInactivity(final Duration maxInactivity) {
+        return limit("max_inactivity", goDuration(maxInactivity));
+    }
+
+    /**
+     * @return limits of this channel
+     */
+    public Map<String, String> limits() {
+        return parent.channelLimits().getOrDefault(channel, Map.of());
+    }
+
+    /**
+     * @param channel next channel or wildcard channel
+     * @return {@link NatsChannelLimitsBuilder} of the next channel
+     */
+    public NatsChannelLimitsBuilder channel(final String channel) {
+        return parent.channel(channel);
+    }
+
+    /**
+     * @return parent {@link NatsStreamingOptionsBuilder}
+     */
+    public NatsStreamingOptionsBuilder and() {
+        return parent;
+    }
+
+    /**
+     * @return immutable config for {@link NatsStreaming}
+     */
+    public NatsStreamingOptions build() {
+        return parent.build();
+    }
+
+    /**
+     * @return {@link NatsStreaming} build nats server from config
+     */
+    public NatsStreaming nats() {
+        return parent.nats();
+    }
+
+    protected NatsChannelLimitsBuilder limit(final String key, final Object value) {
+        parent.channelLimit(channel, key, String.valueOf(value));
+        return this;
+    }
+
+    protected static String goDuration(final Duration duration) {
+        return duration == null || duration.isNegative() || duration.isZero() ? "0s" : duration.toMillis() + "ms";
+    }
+
+    @Override
+    public String toString() {
+        return "NatsChannelLimitsBuilder{" +
+                "channel=" + channel +
+                ", limits=" + limits() +
+                '}';
+    }
+}
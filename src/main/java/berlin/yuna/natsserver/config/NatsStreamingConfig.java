@@ -87,6 +87,7 @@ public enum NatsStreamingConfig {
     PID("--pid", null, String.class, "File to store PID"),
     HTTP_PORT("--http_port", null, Integer.class, "Use port for http monitoring"),
     HTTPS_PORT("--https_port", null, Integer.class, "Use port for https monitoring"),
+    PROFILE("--profile", null, Integer.class, "Profiling HTTP port for the go pprof endpoints /debug/pprof/"),
     CONFIG("--config", null, String.class, "Configuration file"),
 
     //NATS Server Logging Options
@@ -128,6 +129,15 @@ public enum NatsStreamingConfig {
     NATS_DOWNLOAD_URL(null, "https://github.com/nats-io/nats-streaming-server/releases/download/%" + NATS_STREAMING_VERSION.name() + "%/nats-streaming-server-%" + NATS_STREAMING_VERSION.name() + "%-%" + NATS_SYSTEM.name() + "%.zip", String.class, "Path to Nats binary or zip file"),
     NATS_BINARY_PATH(null, null, String.class, "Target Path to Nats binary or zip file - auto from " + NATS_DOWNLOAD_URL.name() + ""),
     NATS_PROPERTY_FILE(null, null, String.class, "Additional config file (properties / KV) same as DSL configs"),
+    NATS_EPHEMERAL_STORE(null, false, Boolean.class, "[true] == FILE store in a fresh directory under NATS_EPHEMERAL_ROOT which is deleted on close - explicit DIR configs win (default: false)"),
+    NATS_EPHEMERAL_ROOT(null, null, String.class, "Root directory of ephemeral stores (default: /dev/shm if writable else java.io.tmpdir)"),
+    NATS_AUTO_TUNE(null, false, Boolean.class, "[true] == sizes file store and cluster log parameters from cores, memory, open file limit and tmpfs - explicit configs win (default: false)"),
+    NATS_CPU_SET(null, null, String.class, "Cpu list the server process is pinned to with taskset - linux only e.g. 2-3,6"),
+    NATS_NICE(null, null, Integer.class, "Nice level of the server process e.g. -5 or 10 - not on windows"),
+    NATS_CGROUP_CPUS(null, null, String.class, "cgroup v2 cpu limit in cores e.g. 1.5 - linux only, skipped if /sys/fs/cgroup is not writable"),
+    NATS_CGROUP_MEMORY(null, null, String.class, "cgroup v2 memory limit in bytes - linux only, skipped if /sys/fs/cgroup is not writable"),
+    NATS_CHANNEL_LIMITS(null, null, String.class, "Per channel store limits written to a generated STAN_CONFIG file e.g. orders.*:max_msgs=1000,max_age=1h separated by &&"),
+    NATS_ENV(null, null, String.class, "Environment variables of the server process e.g. GOMAXPROCS=2&&GOGC=200 separated by &&"),
     NATS_ARGS(null, null, String.class, "custom arguments separated by &&");
 
     public static final String ARGS_SEPARATOR = "&&";
@@ -153,7 +163,6 @@ public enum NatsStreamingConfig {
         return type != SilentBoolean.class;
     }
 
-
     public Object defaultValue() {
         return defaultValue;
     }
@@ -5,6 +5,7 @@ import berlin.yuna.natsserver.logic.NatsUtils;
 
 import java.nio.file.Path;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
@@ -175,6 +176,141 @@ public class NatsStreamingOptionsBuilder {
         return this;
     }
 
+    /**
+     * @return environment variables of the server process
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public Map<String, String> env() {
+        return NatsUtils.parseEnv(configMap.get(NatsStreamingConfig.NATS_ENV));
+    }
+
+    /**
+     * Sets an environment variable of the server process <br />
+     * Values are passed on the command line and may only contain [A-Za-z0-9_.,:=+/@%-]
+     *
+     * @param key   variable name e.g. GODEBUG
+     * @param value variable value or null to remove the variable
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public NatsStreamingOptionsBuilder env(final String key, final Object value) {
+        final Map<String, String> env = env();
+        if (value == null) {
+            env.remove(key);
+        } else {
+            env.put(key, String.valueOf(value));
+        }
+        configMap.put(NatsStreamingConfig.NATS_ENV, NatsUtils.joinEnv(env));
+        return this;
+    }
+
+    /**
+     * @return store limits per channel
+     * @see NatsStreamingConfig#NATS_CHANNEL_LIMITS
+     */
+    public Map<String, Map<String, String>> channelLimits() {
+        return NatsUtils.parseChannelLimits(configMap.get(NatsStreamingConfig.NATS_CHANNEL_LIMITS));
+    }
+
+    /**
+     * Defines store limits of a channel which differ from the global limits e.g. <br />
+     * channel("orders.*").maxMsgs(1000000).maxAge(Duration.ofHours(1)).channel("audit").maxBytes(1048576).and()
+     *
+     * @param channel channel or wildcard channel e.g. orders.* or orders.&gt;
+     * @return {@link NatsChannelLimitsBuilder} of the channel
+     * @see NatsStreamingConfig#NATS_CHANNEL_LIMITS
+     */
+    public NatsChannelLimitsBuilder channel(final String channel) {
+        final Map<String, Map<String, String>> limits = channelLimits();
+        limits.putIfAbsent(channel, new LinkedHashMap<>());
+        NatsUtils.joinChannelLimits(limits);
+        return new NatsChannelLimitsBuilder(this, channel);
+    }
+
+    protected NatsStreamingOptionsBuilder channelLimit(final String channel, final String key, final String value) {
+        final Map<String, Map<String, String>> limits = channelLimits();
+        limits.computeIfAbsent(channel, name -> new LinkedHashMap<>()).put(key, value);
+        configMap.put(NatsStreamingConfig.NATS_CHANNEL_LIMITS, NatsUtils.joinChannelLimits(limits));
+        return this;
+    }
+
+    /**
+     * @param procs max cores the Go scheduler of the server uses at once - set it when several servers share a host
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public NatsStreamingOptionsBuilder goMaxProcs(final int procs) {
+        return env("GOMAXPROCS", Math.max(1, procs));
+    }
+
+    /**
+     * @param percent heap growth in percent which triggers the next Go garbage collection - higher == less gc cpu,
+     *                more memory (Go default: 100, &lt;0 == off)
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public NatsStreamingOptionsBuilder goGc(final int percent) {
+        return env("GOGC", percent < 0 ? "off" : String.valueOf(percent));
+    }
+
+    /**
+     * @param bytes soft memory limit of the Go runtime - collects more often when reached, useful with goGc(-1)
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public NatsStreamingOptionsBuilder goMemLimit(final long bytes) {
+        return env("GOMEMLIMIT", Math.max(1, bytes) + "B");
+    }
+
+    /**
+     * @return cpu list the server process is pinned to
+     * @see NatsStreamingConfig#NATS_CPU_SET
+     */
+    public String cpuSet() {
+        return configMap.get(NatsStreamingConfig.NATS_CPU_SET);
+    }
+
+    /**
+     * @param cpuSet cpu list the server process is pinned to with taskset e.g. 2-3,6 (linux only)
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_CPU_SET
+     */
+    public NatsStreamingOptionsBuilder cpuSet(final String cpuSet) {
+        setValue(configMap, String::trim, NatsStreamingConfig.NATS_CPU_SET, cpuSet);
+        return this;
+    }
+
+    /**
+     * @return nice level of the server process
+     * @see NatsStreamingConfig#NATS_NICE
+     */
+    public Integer nice() {
+        return getValueI(configMap, NatsStreamingConfig.NATS_NICE);
+    }
+
+    /**
+     * @param nice nice level of the server process from -20 (highest priority, needs privileges) to 19
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_NICE
+     */
+    public NatsStreamingOptionsBuilder nice(final Integer nice) {
+        setValueI(configMap, NatsStreamingConfig.NATS_NICE, nice == null ? null : Math.max(-20, Math.min(19, nice)));
+        return this;
+    }
+
+    /**
+     * @param cpus        cgroup v2 cpu limit in cores e.g. 1.5 or null
+     * @param memoryBytes cgroup v2 memory limit in bytes or null
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_CGROUP_CPUS
+     * @see NatsStreamingConfig#NATS_CGROUP_MEMORY
+     */
+    public NatsStreamingOptionsBuilder cgroupLimits(final Double cpus, final Long memoryBytes) {
+        setValue(configMap, Object::toString, NatsStreamingConfig.NATS_CGROUP_CPUS, cpus);
+        setValue(configMap, Object::toString, NatsStreamingConfig.NATS_CGROUP_MEMORY, memoryBytes);
+        return this;
+    }
+
     /**
      * @return custom logger
      */
@@ -244,6 +380,60 @@ public class NatsStreamingOptionsBuilder {
         return this;
     }
 
+    /**
+     * @return true = sizes file store and cluster log parameters from the host
+     * @see NatsStreamingConfig#NATS_AUTO_TUNE
+     */
+    public Boolean autoTune() {
+        return getValueB(configMap, NatsStreamingConfig.NATS_AUTO_TUNE);
+    }
+
+    /**
+     * @param autoTune true = sizes file store and cluster log parameters from the host - explicit configs win
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_AUTO_TUNE
+     */
+    public NatsStreamingOptionsBuilder autoTune(final Boolean autoTune) {
+        setValueB(configMap, NatsStreamingConfig.NATS_AUTO_TUNE, autoTune);
+        return this;
+    }
+
+    /**
+     * @return true = FILE store in a fresh directory which is deleted on close
+     * @see NatsStreamingConfig#NATS_EPHEMERAL_STORE
+     */
+    public Boolean ephemeralStore() {
+        return getValueB(configMap, NatsStreamingConfig.NATS_EPHEMERAL_STORE);
+    }
+
+    /**
+     * @param ephemeralStore true = FILE store in a fresh directory under {@link NatsStreamingConfig#NATS_EPHEMERAL_ROOT} which is deleted on close
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_EPHEMERAL_STORE
+     */
+    public NatsStreamingOptionsBuilder ephemeralStore(final Boolean ephemeralStore) {
+        setValueB(configMap, NatsStreamingConfig.NATS_EPHEMERAL_STORE, ephemeralStore);
+        return this;
+    }
+
+    /**
+     * @return root directory of ephemeral stores
+     * @see NatsStreamingConfig#NATS_EPHEMERAL_ROOT
+     */
+    public Path ephemeralRoot() {
+        return getValue(configMap, Path::of, NatsStreamingConfig.NATS_EPHEMERAL_ROOT);
+    }
+
+    /**
+     * @param ephemeralRoot root directory of ephemeral stores e.g. a tmpfs mount (default: /dev/shm)
+     * @return self {@link NatsStreamingOptionsBuilder}
+     * @see NatsStreamingConfig#NATS_EPHEMERAL_ROOT
+     */
+    public NatsStreamingOptionsBuilder ephemeralRoot(final Path ephemeralRoot) {
+        setValue(configMap, Path::toString, NatsStreamingConfig.NATS_EPHEMERAL_ROOT, ephemeralRoot);
+        return this;
+    }
+
     /**
      * @return defines the start-up timeout in milliseconds (-1 == default)
      */
@@ -307,6 +497,66 @@ public class NatsStreamingOptionsBuilder {
         return this;
     }
 
+    /**
+     * Profile for bulk publishing - FILE store with large write and read ahead buffers, no sync per flush but a
+     * periodic {@link NatsStreamingConfig#FILE_AUTO_SYNC} and large slices <br />
+     * Tradeoff: highest sustained msgs/s of the FILE store, messages acked within the last second can be lost on a
+     * host crash (not on a process crash)
+     *
+     * @return self {@link NatsStreamingOptionsBuilder}
+     */
+    public NatsStreamingOptionsBuilder throughput() {
+        return profile(Map.of(
+                NatsStreamingConfig.STORE, "FILE",
+                NatsStreamingConfig.FILE_SYNC, "false",
+                NatsStreamingConfig.FILE_AUTO_SYNC, "1s",
+                NatsStreamingConfig.FILE_BUFFER_SIZE, String.valueOf(8 * 1024 * 1024),
+                NatsStreamingConfig.FILE_READ_BUFFER_SIZE, String.valueOf(4 * 1024 * 1024),
+                NatsStreamingConfig.FILE_SLICE_MAX_BYTES, String.valueOf(256 * 1024 * 1024),
+                NatsStreamingConfig.FILE_SLICE_MAX_MSGS, "0"
+        ));
+    }
+
+    /**
+     * Profile for tests - MEMORY store, no CRC, heartbeats of one second so dead test clients are dropped fast <br />
+     * Tradeoff: lowest publish to ack latency and fast client cleanup, nothing survives a restart and the heartbeat
+     * traffic is higher than with the defaults (30s interval, 10s timeout)
+     *
+     * @return self {@link NatsStreamingOptionsBuilder}
+     */
+    public NatsStreamingOptionsBuilder lowLatencyTest() {
+        return profile(Map.of(
+                NatsStreamingConfig.STORE, "MEMORY",
+                NatsStreamingConfig.FILE_CRC, "false",
+                NatsStreamingConfig.HB_INTERVAL, "1s",
+                NatsStreamingConfig.HB_TIMEOUT, "1s",
+                NatsStreamingConfig.HB_FAIL_COUNT, "2"
+        ));
+    }
+
+    /**
+     * Profile for no data loss - FILE store with CRC, a file sync on every flush and on every replication log write
+     * when clustered <br />
+     * Tradeoff: acked messages survive a host crash, throughput and ack latency are bound by the disk sync latency
+     * (typically an order of magnitude below {@link NatsStreamingOptionsBuilder#throughput()})
+     *
+     * @return self {@link NatsStreamingOptionsBuilder}
+     */
+    public NatsStreamingOptionsBuilder durable() {
+        configMap.remove(NatsStreamingConfig.FILE_AUTO_SYNC);
+        return profile(Map.of(
+                NatsStreamingConfig.STORE, "FILE",
+                NatsStreamingConfig.FILE_SYNC, "true",
+                NatsStreamingConfig.FILE_CRC, "true",
+                NatsStreamingConfig.CLUSTER_SYNC, "true"
+        ));
+    }
+
+    protected NatsStreamingOptionsBuilder profile(final Map<NatsStreamingConfig, String> profile) {
+        configMap.putAll(profile);
+        return this;
+    }
+
     protected static Integer getValueI(final Map<NatsStreamingConfig, String> config, final NatsStreamingConfig key) {
         return getValue(config, Integer::parseInt, key);
     }
@@ -0,0 +1,167 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_LOG_CACHE_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_BUFFER_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_FDS_LIMIT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_PARALLEL_RECOVERY;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_READ_BUFFER_SIZE;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Sizes the FILE store and cluster log parameters from the host - see {@link NatsStreamingConfig#NATS_AUTO_TUNE} <br />
+ * Inputs are the available cores, the available memory (/proc/meminfo or the os bean), the open file limit of this
+ * process which the server inherits and whether the store and cluster log directories are on tmpfs. Unknown inputs
+ * leave the related parameters at the server defaults.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsAutoTune {
+
+    protected static final Set<String> MEMORY_FILE_SYSTEMS = Set.of("tmpfs", "ramfs");
+    protected static final int MIN_BUFFER = 64 * 1024;
+    protected static final int MAX_BUFFER = 8 * 1024 * 1024;
+    protected static final int DEFAULT_LOG_CACHE = 512;
+    protected static final int MAX_LOG_CACHE = 8192;
+    protected static final int MAX_DISK_RECOVERY = 16;
+    protected static final int RESERVED_FDS = 64;
+
+    protected final int cores;
+    protected final long memoryBytes;
+    protected final long fdLimit;
+    protected final boolean storeOnTmpfs;
+    protected final boolean logOnTmpfs;
+
+    /**
+     * @param cores        available cores
+     * @param memoryBytes  available memory in bytes or -1 if unknown
+     * @param fdLimit      max open files of the server process or -1 if unknown
+     * @param storeOnTmpfs [true] == {@link NatsStreamingConfig#DIR} is memory backed
+     * @param logOnTmpfs   [true] == {@link NatsStreamingConfig#CLUSTER_LOG_PATH} is memory backed
+     */
+    public NatsAutoTune(final int cores, final long memoryBytes, final long fdLimit, final boolean storeOnTmpfs, final boolean logOnTmpfs) {
+        this.cores = Math.max(1, cores);
+        this.memoryBytes = memoryBytes;
+        this.fdLimit = fdLimit;
+        this.storeOnTmpfs = storeOnTmpfs;
+        this.logOnTmpfs = logOnTmpfs;
+    }
+
+    /**
+     * @param storeDir       {@link NatsStreamingConfig#DIR} or null
+     * @param clusterLogPath {@link NatsStreamingConfig#CLUSTER_LOG_PATH} or null
+     * @return tuning for the current host
+     */
+    public static NatsAutoTune ofHost(final Path storeDir, final Path clusterLogPath) {
+        return new NatsAutoTune(Runtime.getRuntime().availableProcessors(), hostMemory(), hostFdLimit(), tmpfs(storeDir), tmpfs(clusterLogPath));
+    }
+
+    /**
+     * @return tuned config values - only keys with a known input are contained
+     */
+    public Map<NatsStreamingConfig, String> values() {
+        final Map<NatsStreamingConfig, String> result = new EnumMap<>(NatsStreamingConfig.class);
+        // recovery is disk bound on real disks, cpu bound on tmpfs
+        result.put(FILE_PARALLEL_RECOVERY, String.valueOf(storeOnTmpfs ? cores : clamp(cores / 2, 1, MAX_DISK_RECOVERY)));
+        if (fdLimit > 0) {
+            // leave room for client sockets, routes and the cluster log
+            result.put(FILE_FDS_LIMIT, String.valueOf(Math.max(RESERVED_FDS / 4, fdLimit - Math.max(RESERVED_FDS, fdLimit / 4))));
+        }
+        if (memoryBytes > 0) {
+            // buffers are per channel - spend about 1/4096 of the available memory on each
+            final int buffer = (int) clamp(Long.highestOneBit(Math.max(1, memoryBytes / 4096)), MIN_BUFFER, MAX_BUFFER);
+            result.put(FILE_BUFFER_SIZE, String.valueOf(storeOnTmpfs ? Math.max(MIN_BUFFER, buffer / 2) : buffer));
+            result.put(FILE_READ_BUFFER_SIZE, String.valueOf(storeOnTmpfs ? 0 : buffer));
+            final long gb = memoryBytes / (1024L * 1024 * 1024);
+            result.put(CLUSTER_LOG_CACHE_SIZE, String.valueOf(logOnTmpfs ? DEFAULT_LOG_CACHE : clamp(gb * 256, DEFAULT_LOG_CACHE, MAX_LOG_CACHE)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    public int cores() {
+        return cores;
+    }
+
+    public long memoryBytes() {
+        return memoryBytes;
+    }
+
+    public long fdLimit() {
+        return fdLimit;
+    }
+
+    public boolean storeOnTmpfs() {
+        return storeOnTmpfs;
+    }
+
+    public boolean logOnTmpfs() {
+        return logOnTmpfs;
+    }
+
+    /**
+     * @return available memory in bytes from /proc/meminfo, the os bean or -1 if unknown
+     */
+    public static long hostMemory() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/meminfo"), ISO_8859_1)) {
+                if (line.startsWith("MemAvailable:")) {
+                    return Long.parseLong(line.substring(13).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // not linux
+        }
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os ? os.getFreeMemorySize() : -1;
+    }
+
+    /**
+     * @return max open files of this process (ulimit -n) which a started server inherits or -1 if unknown
+     */
+    public static long hostFdLimit() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.UnixOperatingSystemMXBean os ? os.getMaxFileDescriptorCount() : -1;
+    }
+
+    /**
+     * @param path directory which may not exist yet - the closest existing parent is checked
+     * @return true if the path is on a memory backed file system
+     */
+    public static boolean tmpfs(final Path path) {
+        Path existing = path == null ? null : path.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            return false;
+        }
+        try {
+            return MEMORY_FILE_SYSTEMS.contains(Files.getFileStore(existing).type().toLowerCase());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    protected static long clamp(final long value, final long min, final long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return "NatsAutoTune{" +
+                "cores=" + cores +
+                ", memoryBytes=" + memoryBytes +
+                ", fdLimit=" + fdLimit +
+                ", storeOnTmpfs=" + storeOnTmpfs +
+                ", logOnTmpfs=" + logOnTmpfs +
+                ", values=" + values() +
+                '}';
+    }
+}
@@ -0,0 +1,312 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.BenchmarkResult;
+import berlin.yuna.natsserver.model.LatencyHistogram;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static java.lang.String.format;
+
+/**
+ * Core NATS load generator - the zero dependency counterpart of the go `nats-bench` tool <br />
+ * Each publisher and subscriber uses its own {@link NatsConnection}. Publishers pipeline their messages through the
+ * write coalescing buffer and only wait for the server once at the end. <br />
+ * With a {@link #rate(long)} the latency is measured from the intended send time, so publisher stalls show up in the
+ * percentiles instead of being hidden (coordinated omission).
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsBenchmark {
+
+    protected static final int TIMESTAMP_BYTES = 16;
+
+    protected final String host;
+    protected final int port;
+    protected final String user;
+    protected final String pass;
+    protected final String token;
+    protected String name = NatsBenchmark.class.getSimpleName();
+    protected String subject = "bench";
+    protected int publishers = 1;
+    protected int subscribers = 1;
+    protected long messages = 100000;
+    protected int messageSize = 128;
+    protected long rate = 0;
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+    protected long timeoutMs = 60000;
+
+    /**
+     * @param nats started nats server - credentials are taken from its config
+     */
+    public NatsBenchmark(final NatsStreaming nats) {
+        this.host = "localhost";
+        this.port = nats.port();
+        this.user = nats.getValue(USER, () -> null);
+        this.pass = nats.getValue(PASS, () -> null);
+        this.token = nats.getValue(AUTH, () -> null);
+    }
+
+    /**
+     * @param host server host
+     * @param port server client port
+     */
+    public NatsBenchmark(final String host, final int port) {
+        this.host = host;
+        this.port = port;
+        this.user = null;
+        this.pass = null;
+        this.token = null;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @param name benchmark name - used as connection name prefix
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark name(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public String subject() {
+        return subject;
+    }
+
+    /**
+     * @param subject subject to publish to (default: bench)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark subject(final String subject) {
+        this.subject = subject;
+        return this;
+    }
+
+    public int publishers() {
+        return publishers;
+    }
+
+    /**
+     * @param publishers number of publishing connections (default: 1)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark publishers(final int publishers) {
+        this.publishers = Math.max(1, publishers);
+        return this;
+    }
+
+    public int subscribers() {
+        return subscribers;
+    }
+
+    /**
+     * @param subscribers number of subscribing connections - each receives every message (default: 1)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark subscribers(final int subscribers) {
+        this.subscribers = Math.max(0, subscribers);
+        return this;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    /**
+     * @param messages total number of messages split over all publishers (default: 100000)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark messages(final long messages) {
+        this.messages = Math.max(0, messages);
+        return this;
+    }
+
+    public int messageSize() {
+        return messageSize;
+    }
+
+    /**
+     * @param messageSize payload size in bytes - latency is only measured from 16 bytes on (default: 128)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark messageSize(final int messageSize) {
+        this.messageSize = Math.max(0, messageSize);
+        return this;
+    }
+
+    public long rate() {
+        return rate;
+    }
+
+    /**
+     * @param rate target messages per second over all publishers (&lt;=0 == as fast as possible)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark rate(final long rate) {
+        this.rate = Math.max(0, rate);
+        return this;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize write coalescing buffer size per connection in bytes (default: 64KB)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark bufferSize(final int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public long timeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * @param timeoutMs max time for publishing and receiving (default: 60000)
+     * @return self {@link NatsBenchmark}
+     */
+    public NatsBenchmark timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Connects all subscribers, starts all publishers at the same time and waits until every subscriber received every
+     * message or the timeout is reached
+     *
+     * @return {@link BenchmarkResult} - subscribers which did not receive everything in time are visible as dropped messages
+     */
+    public BenchmarkResult run() {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final AtomicLong received = new AtomicLong(0);
+        final AtomicLong lastReceived = new AtomicLong(0);
+        final CountDownLatch done = new CountDownLatch(messages > 0 ? subscribers : 0);
+        final List<NatsConnection> connections = new ArrayList<>();
+        final AtomicInteger threads = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(publishers, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-pub-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < subscribers; i++) {
+                final NatsConnection subscriber = connect(name + "-sub-" + i);
+                final AtomicLong count = new AtomicLong(0);
+                connections.add(subscriber);
+                subscriber.subscribe(subject, null, (subj, replyTo, payload) -> {
+                    final long now = System.nanoTime();
+                    if (payload.remaining() >= TIMESTAMP_BYTES) {
+                        latency.record(now - payload.getLong(payload.position()));
+                        serviceTime.record(now - payload.getLong(payload.position() + Long.BYTES));
+                    }
+                    received.incrementAndGet();
+                    lastReceived.accumulateAndGet(now, Math::max);
+                    if (count.incrementAndGet() == messages) {
+                        done.countDown();
+                    }
+                });
+                subscriber.ping();
+            }
+            final List<NatsConnection> publisherConnections = new ArrayList<>();
+            for (int i = 0; i < publishers; i++) {
+                publisherConnections.add(connect(name + "-pub-" + i));
+            }
+            connections.addAll(publisherConnections);
+
+            final long start = System.nanoTime();
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < publishers; i++) {
+                final NatsConnection connection = publisherConnections.get(i);
+                final long share = messages / publishers + (i < messages % publishers ? 1 : 0);
+                futures.add(executor.submit(() -> publish(connection, share, start)));
+            }
+            long published = 0;
+            for (Future<Long> future : futures) {
+                published += future.get(remainingMs(start), TimeUnit.MILLISECONDS);
+            }
+            final long publishNs = System.nanoTime() - start;
+            final boolean completed = done.await(remainingMs(start), TimeUnit.MILLISECONDS);
+            final long receiveNs = received.get() > 0 ? lastReceived.get() - start : 0;
+            return new BenchmarkResult(
+                    format("%s pub=%d sub=%d size=%d rate=%d%s", name, publishers, subscribers, messageSize, rate, completed ? "" : " (timeout)"),
+                    published, received.get(), messages * subscribers, messageSize, publishNs, receiveNs, latency, serviceTime
+            );
+        } catch (ExecutionException e) {
+            throw new NatsProtocolException("Publisher failed [" + name + "]", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NatsProtocolException("Publishers did not finish within [" + timeoutMs + "] ms [" + name + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted [" + name + "]", e);
+        } finally {
+            executor.shutdownNow();
+            connections.forEach(NatsConnection::close);
+        }
+    }
+
+    protected long publish(final NatsConnection connection, final long count, final long start) {
+        final ByteBuffer payload = ByteBuffer.allocate(messageSize);
+        final double intervalNs = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * (double) publishers / rate : 0;
+        for (long i = 0; i < count; i++) {
+            final long intended = start + (long) (i * intervalNs);
+            long now = System.nanoTime();
+            if (now < intended) {
+                connection.flush();
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+            }
+            if (messageSize >= TIMESTAMP_BYTES) {
+                payload.putLong(0, intervalNs > 0 ? intended : now);
+                payload.putLong(Long.BYTES, now);
+            }
+            connection.publish(subject, null, payload);
+        }
+        connection.ping();
+        return count;
+    }
+
+    protected NatsConnection connect(final String connectionName) {
+        return new NatsConnection(host, port, connectionName, user, pass, token, bufferSize, timeoutMs);
+    }
+
+    private long remainingMs(final long startNs) {
+        return Math.max(1, timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+    }
+
+    @Override
+    public String toString() {
+        return "NatsBenchmark{" +
+                "name=" + name +
+                ", target=" + host + ":" + port +
+                ", subject=" + subject +
+                ", publishers=" + publishers +
+                ", subscribers=" + subscribers +
+                ", messages=" + messages +
+                ", messageSize=" + messageSize +
+                ", rate=" + rate +
+                '}';
+    }
+}
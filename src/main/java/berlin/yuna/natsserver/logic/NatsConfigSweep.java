@@ -0,0 +1,180 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.model.ProcessStats;
+import berlin.yuna.natsserver.model.SweepResult;
+import berlin.yuna.natsserver.model.SweepRow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_AUTOSTART;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.lang.String.format;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Runs the same workload against one fresh server per combination of the swept {@link NatsStreamingConfig} values <br />
+ * Server cpu and memory are sampled while the workload runs. FILE stores without {@link NatsStreamingConfig#DIR} get
+ * a temporary directory which is deleted after each combination.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsConfigSweep {
+
+    protected final NatsStreamingOptionsBuilder base;
+    protected final Map<NatsStreamingConfig, List<String>> dimensions = new LinkedHashMap<>();
+    protected Function<NatsStreaming, Map<String, Number>> workload = nats -> new StanBenchmark(nats).run().metrics();
+    protected int repetitions = 1;
+    protected long sampleIntervalMs = 100;
+
+    /**
+     * @param base config shared by all combinations
+     */
+    public NatsConfigSweep(final NatsStreamingOptionsBuilder base) {
+        this.base = base;
+    }
+
+    public NatsConfigSweep() {
+        this(natsStreamingBuilder());
+    }
+
+    /**
+     * Adds a dimension to the cartesian product
+     *
+     * @param key    config key to sweep
+     * @param values values to try
+     * @return self {@link NatsConfigSweep}
+     */
+    public NatsConfigSweep dimension(final NatsStreamingConfig key, final String... values) {
+        dimensions.put(key, List.of(values));
+        return this;
+    }
+
+    /**
+     * @param workload workload to run against each server - returns named metrics e.g. {@link StanBenchmark} metrics
+     *                 (default: {@link StanBenchmark} with its defaults)
+     * @return self {@link NatsConfigSweep}
+     */
+    public NatsConfigSweep workload(final Function<NatsStreaming, Map<String, Number>> workload) {
+        this.workload = workload;
+        return this;
+    }
+
+    /**
+     * @param repetitions runs per combination, each on a fresh server (default: 1)
+     * @return self {@link NatsConfigSweep}
+     */
+    public NatsConfigSweep repetitions(final int repetitions) {
+        this.repetitions = Math.max(1, repetitions);
+        return this;
+    }
+
+    /**
+     * @param sampleIntervalMs memory sample interval of the server process (default: 100)
+     * @return self {@link NatsConfigSweep}
+     */
+    public NatsConfigSweep sampleIntervalMs(final long sampleIntervalMs) {
+        this.sampleIntervalMs = Math.max(1, sampleIntervalMs);
+        return this;
+    }
+
+    public Map<NatsStreamingConfig, List<String>> dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return cartesian product of all dimensions - the last dimension changes fastest
+     */
+    public List<Map<NatsStreamingConfig, String>> combinations() {
+        return combinations(dimensions);
+    }
+
+    /**
+     * @param dimensions values per config key
+     * @return cartesian product of all dimensions - the last dimension changes fastest
+     */
+    public static List<Map<NatsStreamingConfig, String>> combinations(final Map<NatsStreamingConfig, List<String>> dimensions) {
+        List<Map<NatsStreamingConfig, String>> result = new ArrayList<>();
+        result.add(new LinkedHashMap<>());
+        for (Map.Entry<NatsStreamingConfig, List<String>> dimension : dimensions.entrySet()) {
+            final List<Map<NatsStreamingConfig, String>> next = new ArrayList<>();
+            for (Map<NatsStreamingConfig, String> combination : result) {
+                for (String value : dimension.getValue()) {
+                    final Map<NatsStreamingConfig, String> extended = new LinkedHashMap<>(combination);
+                    extended.put(dimension.getKey(), value);
+                    next.add(extended);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    /**
+     * Runs every combination sequentially - failing combinations are reported as rows with error
+     *
+     * @return {@link SweepResult}
+     */
+    public SweepResult run() {
+        final List<SweepRow> rows = new ArrayList<>();
+        final Logger logger = ofNullable(base.logger()).orElseGet(() -> Logger.getLogger(NatsConfigSweep.class.getSimpleName()));
+        for (Map<NatsStreamingConfig, String> combination : combinations()) {
+            for (int repetition = 0; repetition < repetitions; repetition++) {
+                final SweepRow row = runCombination(combination, repetition);
+                logger.info(() -> format("Sweep %s", row));
+                rows.add(row);
+            }
+        }
+        return new SweepResult(new ArrayList<>(dimensions.keySet()), rows);
+    }
+
+    protected SweepRow runCombination(final Map<NatsStreamingConfig, String> combination, final int repetition) {
+        final Map<NatsStreamingConfig, String> config = new EnumMap<>(NatsStreamingConfig.class);
+        config.putAll(base.configMap());
+        config.putAll(combination);
+        config.putIfAbsent(PORT, "-1");
+        config.put(NATS_AUTOSTART, "true");
+        Path tmpDir = null;
+        try {
+            if ("FILE".equalsIgnoreCase(config.get(STORE)) && !config.containsKey(DIR)) {
+                tmpDir = Files.createTempDirectory("nats_sweep_");
+                config.put(DIR, tmpDir.toString());
+            }
+            try (final NatsStreaming nats = natsStreamingBuilder().configMap(config).logger(base.logger()).nats();
+                 final ProcessSampler sampler = new ProcessSampler(nats.pid(), sampleIntervalMs)) {
+                final Map<String, Number> metrics = new LinkedHashMap<>(workload.apply(nats));
+                final ProcessStats stats = sampler.stop();
+                metrics.putAll(stats.metrics());
+                return new SweepRow(combination, repetition, metrics, null);
+            }
+        } catch (IOException | RuntimeException e) {
+            return new SweepRow(combination, repetition, Map.of(), ofNullable(e.getCause()).map(Throwable::toString).orElseGet(e::toString));
+        } finally {
+            final Path dir = tmpDir;
+            NatsUtils.ignoreException(run -> {
+                NatsUtils.deleteRecursive(dir);
+                return run;
+            });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsConfigSweep{" +
+                "dimensions=" + dimensions +
+                ", repetitions=" + repetitions +
+                '}';
+    }
+}
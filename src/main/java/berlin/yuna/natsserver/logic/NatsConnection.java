@@ -0,0 +1,586 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Minimal NATS core protocol client (CONNECT, PUB, SUB, MSG, PING) on top of a NIO {@link SocketChannel} <br />
+ * Publishes are coalesced in a direct write buffer and only hit the socket when the buffer is full or on {@link #flush()} <br />
+ * Incoming messages are dispatched by one reader thread - the payload buffer is only valid during the callback <br />
+ * The reader thread never writes to the socket: PONGs and everything written from within a callback (replies, acks)
+ * are queued and flushed by a writer thread once the current read batch is processed, so a publisher blocked on a
+ * full socket can't stop the reader from draining the server
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsConnection implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_TIMEOUT_MS = 10000;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] PING = "PING\r\n".getBytes(ISO_8859_1);
+    private static final byte[] PONG = "PONG\r\n".getBytes(ISO_8859_1);
+    private static final char[] ID_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    protected final String name;
+    protected final long timeoutMs;
+    protected final SocketChannel channel;
+    protected final ByteBuffer writeBuffer;
+    protected final Object writeLock = new Object();
+    protected final Map<Integer, MessageHandler> handlers = new ConcurrentHashMap<>();
+    protected final Queue<CompletableFuture<Boolean>> pongs = new ConcurrentLinkedQueue<>();
+    protected final CompletableFuture<String> info = new CompletableFuture<>();
+    protected final Map<String, CompletableFuture<byte[]>> requests = new ConcurrentHashMap<>();
+    protected final AtomicInteger sids = new AtomicInteger(0);
+    protected final AtomicLong requestIds = new AtomicLong(0);
+    protected final AtomicLong msgsIn = new AtomicLong(0);
+    protected final AtomicLong msgsOut = new AtomicLong(0);
+    protected final AtomicLong bytesIn = new AtomicLong(0);
+    protected final AtomicLong bytesOut = new AtomicLong(0);
+    protected final Thread reader;
+    protected final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    protected final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    protected final ExecutorService writer;
+    protected ByteBuffer readBuffer;
+    protected volatile String responsePrefix;
+    protected volatile String lastError;
+    protected volatile boolean closed;
+
+    /**
+     * Receives messages of a subscription
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+        /**
+         * @param subject subject the message was published to
+         * @param replyTo reply subject or null
+         * @param payload read only view on the payload which is only valid during this call
+         */
+        void onMessage(String subject, String replyTo, ByteBuffer payload);
+    }
+
+    /**
+     * Connects to the client port of a started {@link NatsStreaming} using its configured credentials
+     *
+     * @param nats started nats server
+     * @param name connection name which is visible in the server monitoring
+     * @return connected {@link NatsConnection}
+     */
+    public static NatsConnection connect(final NatsStreaming nats, final String name) {
+        return new NatsConnection(
+                "localhost",
+                nats.port(),
+                name,
+                nats.getValue(USER, () -> null),
+                nats.getValue(PASS, () -> null),
+                nats.getValue(AUTH, () -> null),
+                DEFAULT_BUFFER_SIZE,
+                DEFAULT_TIMEOUT_MS
+        );
+    }
+
+    /**
+     * @param host server host
+     * @param port server client port
+     */
+    public NatsConnection(final String host, final int port) {
+        this(host, port, NatsConnection.class.getSimpleName(), null, null, null, DEFAULT_BUFFER_SIZE, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Connects and waits until the server has processed the CONNECT
+     *
+     * @param host       server host
+     * @param port       server client port
+     * @param name       connection name
+     * @param user       optional user
+     * @param pass       optional password
+     * @param token      optional auth token
+     * @param bufferSize size of the write coalescing buffer and the initial read buffer
+     * @param timeoutMs  timeout for the handshake and {@link #ping()}
+     */
+    public NatsConnection(final String host, final int port, final String name, final String user, final String pass, final String token, final int bufferSize, final long timeoutMs) {
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        try {
+            this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            throw new NatsProtocolException("Unable to connect to [" + host + ":" + port + "]", e);
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, name + "-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reader = new Thread(this::readLoop, name + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            info.get(timeoutMs, TimeUnit.MILLISECONDS);
+            final StringBuilder connect = new StringBuilder("CONNECT {\"verbose\":false,\"pedantic\":false,\"lang\":\"java\",\"protocol\":1,\"name\":").append(quote(name));
+            ofNullable(user).filter(NatsUtils::isNotEmpty).ifPresent(value -> connect.append(",\"user\":").append(quote(value)));
+            ofNullable(pass).filter(NatsUtils::isNotEmpty).ifPresent(value -> connect.append(",\"pass\":").append(quote(value)));
+            ofNullable(token).filter(NatsUtils::isNotEmpty).ifPresent(value -> connect.append(",\"auth_token\":").append(quote(value)));
+            connect.append("}\r\n");
+            write(connect.toString().getBytes(ISO_8859_1));
+            ping();
+        } catch (RuntimeException | ExecutionException | TimeoutException e) {
+            close();
+            throw new NatsProtocolException("Handshake failed with [" + host + ":" + port + "] " + ofNullable(lastError).orElse(""), e);
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Handshake interrupted", e);
+        }
+    }
+
+    /**
+     * Buffers a message - the message is sent latest on the next {@link #flush()} or when the write buffer is full
+     *
+     * @param subject subject to publish to
+     * @param replyTo optional reply subject
+     * @param payload payload (position and limit are not changed)
+     * @return self {@link NatsConnection}
+     */
+    public NatsConnection publish(final String subject, final String replyTo, final ByteBuffer payload) {
+        final int size = payload.remaining();
+        final int header = 20 + subject.length() + (replyTo == null ? 0 : replyTo.length() + 1);
+        if (Thread.currentThread() == reader) {
+            final ByteBuffer message = ByteBuffer.allocate(header + size + 2);
+            putHeader(message, subject, replyTo, size);
+            pending.add(message.put(payload.duplicate()).put(CRLF).flip());
+            msgsOut.incrementAndGet();
+            return this;
+        }
+        synchronized (writeLock) {
+            if (writeBuffer.remaining() < header + size + 2) {
+                flushLocked();
+            }
+            putHeader(writeBuffer, subject, replyTo, size);
+            if (writeBuffer.remaining() >= size + 2) {
+                writeBuffer.put(payload.duplicate()).put(CRLF);
+            } else {
+                writeBuffer.flip();
+                writeFully(writeBuffer, payload.duplicate(), ByteBuffer.wrap(CRLF));
+                writeBuffer.clear();
+            }
+            msgsOut.incrementAndGet();
+        }
+        return this;
+    }
+
+    /**
+     * @see NatsConnection#publish(String, String, ByteBuffer)
+     */
+    public NatsConnection publish(final String subject, final byte[] payload) {
+        return publish(subject, null, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Subscribes to a subject
+     *
+     * @param subject subject or wildcard
+     * @param queue   optional queue group
+     * @param handler message callback running on the reader thread
+     * @return subscription id
+     */
+    public int subscribe(final String subject, final String queue, final MessageHandler handler) {
+        final int sid = sids.incrementAndGet();
+        handlers.put(sid, handler);
+        write(("SUB " + subject + (queue == null ? "" : " " + queue) + " " + sid + "\r\n").getBytes(ISO_8859_1));
+        return sid;
+    }
+
+    /**
+     * Sends a request and waits for the first reply - all requests share one wildcard inbox subscription
+     *
+     * @param subject   subject to send the request to
+     * @param payload   request payload
+     * @param timeoutMs max time to wait for the reply
+     * @return reply payload
+     */
+    public byte[] request(final String subject, final byte[] payload, final long timeoutMs) {
+        if (responsePrefix == null) {
+            synchronized (requests) {
+                if (responsePrefix == null) {
+                    final String prefix = newInbox();
+                    subscribe(prefix + ".*", null, (replySubject, replyTo, response) -> ofNullable(requests.remove(replySubject)).ifPresent(future -> {
+                        final byte[] bytes = new byte[response.remaining()];
+                        response.get(bytes);
+                        future.complete(bytes);
+                    }));
+                    responsePrefix = prefix;
+                }
+            }
+        }
+        final String replyTo = responsePrefix + "." + requestIds.incrementAndGet();
+        final CompletableFuture<byte[]> response = new CompletableFuture<>();
+        requests.put(replyTo, response);
+        try {
+            publish(subject, replyTo, ByteBuffer.wrap(payload)).flush();
+            return response.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new NatsProtocolException("No response on [" + subject + "] " + ofNullable(lastError).orElse(""), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted while waiting for [" + subject + "]", e);
+        } finally {
+            requests.remove(replyTo);
+        }
+    }
+
+    /**
+     * @return unique inbox subject
+     */
+    public static String newInbox() {
+        final char[] id = new char[22];
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < id.length; i++) {
+            id[i] = ID_CHARS[random.nextInt(ID_CHARS.length)];
+        }
+        return "_INBOX." + new String(id);
+    }
+
+    /**
+     * @param sid subscription id from {@link #subscribe(String, String, MessageHandler)}
+     * @return self {@link NatsConnection}
+     */
+    public NatsConnection unsubscribe(final int sid) {
+        handlers.remove(sid);
+        write(("UNSUB " + sid + "\r\n").getBytes(ISO_8859_1));
+        return this;
+    }
+
+    /**
+     * Writes all buffered messages to the socket
+     *
+     * @return self {@link NatsConnection}
+     */
+    public NatsConnection flush() {
+        if (Thread.currentThread() == reader) {
+            drainAsync();
+            return this;
+        }
+        synchronized (writeLock) {
+            flushLocked();
+        }
+        return this;
+    }
+
+    /**
+     * Flushes and waits for the server round trip - all previously sent messages are processed afterwards <br />
+     * Not allowed in a {@link MessageHandler} as the handler runs on the thread which reads the PONG
+     *
+     * @return round trip time in nanoseconds
+     */
+    public long ping() {
+        if (Thread.currentThread() == reader) {
+            throw new IllegalStateException("ping() would block the reader thread of [" + name + "] which reads the PONG");
+        }
+        final CompletableFuture<Boolean> pong = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        synchronized (writeLock) {
+            pongs.add(pong);
+            if (writeBuffer.remaining() < PING.length) {
+                flushLocked();
+            }
+            writeBuffer.put(PING);
+            flushLocked();
+        }
+        try {
+            pong.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return System.nanoTime() - start;
+        } catch (ExecutionException | TimeoutException e) {
+            throw new NatsProtocolException("No PONG received from [" + name + "] " + ofNullable(lastError).orElse(""), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted while waiting for PONG", e);
+        }
+    }
+
+    /**
+     * @return INFO json sent by the server or null if not connected yet
+     */
+    public String serverInfo() {
+        return info.getNow(null);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long msgsIn() {
+        return msgsIn.get();
+    }
+
+    public long msgsOut() {
+        return msgsOut.get();
+    }
+
+    public long bytesIn() {
+        return bytesIn.get();
+    }
+
+    public long bytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * @return last -ERR sent by the server or null
+     */
+    public String lastError() {
+        return lastError;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            writer.shutdownNow();
+            NatsUtils.ignoreException(run -> {
+                channel.close();
+                return run;
+            });
+            failPending(new NatsProtocolException("Connection closed [" + name + "]"));
+        }
+    }
+
+    protected void write(final byte[] bytes) {
+        if (Thread.currentThread() == reader) {
+            pending.add(ByteBuffer.wrap(bytes));
+            return;
+        }
+        synchronized (writeLock) {
+            if (writeBuffer.remaining() < bytes.length) {
+                flushLocked();
+            }
+            if (writeBuffer.remaining() < bytes.length) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                writeBuffer.put(bytes);
+            }
+            flushLocked();
+        }
+    }
+
+    /**
+     * Hands the writes queued by the reader thread to the writer thread
+     */
+    protected void drainAsync() {
+        if (!pending.isEmpty() && !closed && drainScheduled.compareAndSet(false, true)) {
+            NatsUtils.ignoreException(run -> {
+                writer.execute(this::drainPending);
+                return run;
+            });
+        }
+    }
+
+    protected void drainPending() {
+        drainScheduled.set(false);
+        try {
+            synchronized (writeLock) {
+                ByteBuffer next;
+                while ((next = pending.poll()) != null) {
+                    if (writeBuffer.remaining() < next.remaining()) {
+                        flushLocked();
+                    }
+                    if (writeBuffer.remaining() < next.remaining()) {
+                        writeFully(next);
+                    } else {
+                        writeBuffer.put(next);
+                    }
+                }
+                flushLocked();
+            }
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+        }
+    }
+
+    protected void flushLocked() {
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    protected void writeFully(final ByteBuffer... buffers) {
+        try {
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                final long written = channel.write(buffers);
+                bytesOut.addAndGet(written);
+                remaining -= written;
+            }
+        } catch (IOException e) {
+            close();
+            throw new NatsProtocolException("Write failed [" + name + "]", e);
+        }
+    }
+
+    protected void readLoop() {
+        try {
+            while (!closed && channel.read(readBuffer) >= 0) {
+                readBuffer.flip();
+                parse();
+                drainAsync();
+                readBuffer.compact();
+                if (!readBuffer.hasRemaining()) {
+                    final ByteBuffer grown = ByteBuffer.allocateDirect(readBuffer.capacity() * 2);
+                    readBuffer.flip();
+                    readBuffer = grown.put(readBuffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                lastError = e.getMessage();
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @SuppressWarnings("java:S3776")
+    protected void parse() {
+        while (readBuffer.hasRemaining()) {
+            final int start = readBuffer.position();
+            final int eol = indexOfCrlf(start);
+            if (eol < 0) {
+                return;
+            }
+            final byte[] line = new byte[eol - start];
+            readBuffer.get(start, line);
+            final String op = new String(line, ISO_8859_1);
+            int next = eol + 2;
+            if (op.startsWith("MSG ") || op.startsWith("HMSG ")) {
+                final String[] args = op.split(" ");
+                final boolean headers = args[0].length() == 4;
+                final int size = Integer.parseInt(args[args.length - 1]);
+                final int skip = headers ? Integer.parseInt(args[args.length - 2]) : 0;
+                if (readBuffer.limit() - next < size + 2) {
+                    return;
+                }
+                final String replyTo = args.length == (headers ? 6 : 5) ? args[3] : null;
+                final MessageHandler handler = handlers.get(Integer.parseInt(args[2]));
+                msgsIn.incrementAndGet();
+                bytesIn.addAndGet(size);
+                if (handler != null) {
+                    dispatch(handler, args[1], replyTo, readBuffer.slice(next + skip, size - skip).asReadOnlyBuffer());
+                }
+                next += size + 2;
+            } else if (op.startsWith("PING")) {
+                write(PONG);
+            } else if (op.startsWith("PONG")) {
+                ofNullable(pongs.poll()).ifPresent(pong -> pong.complete(true));
+            } else if (op.startsWith("INFO")) {
+                info.complete(op.substring(4).trim());
+            } else if (op.startsWith("-ERR")) {
+                lastError = op.substring(4).trim();
+                if (isFatal(lastError)) {
+                    failPending(new NatsProtocolException(lastError));
+                }
+            }
+            readBuffer.position(next);
+        }
+    }
+
+    protected void dispatch(final MessageHandler handler, final String subject, final String replyTo, final ByteBuffer payload) {
+        try {
+            handler.onMessage(subject, replyTo, payload);
+        } catch (RuntimeException e) {
+            lastError = "Handler failed on [" + subject + "] " + e;
+        }
+    }
+
+    protected int indexOfCrlf(final int from) {
+        for (int i = from; i < readBuffer.limit() - 1; i++) {
+            if (readBuffer.get(i) == '\r' && readBuffer.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param error -ERR message
+     * @return true if the server closes the connection after this error - only permission and subject errors keep it open
+     */
+    protected static boolean isFatal(final String error) {
+        final String message = error.replace("'", "").trim().toLowerCase();
+        return !message.startsWith("permissions violation") && !message.startsWith("invalid subject");
+    }
+
+    protected void failPending(final Throwable cause) {
+        info.completeExceptionally(cause);
+        CompletableFuture<Boolean> pong;
+        while ((pong = pongs.poll()) != null) {
+            pong.completeExceptionally(cause);
+        }
+        requests.values().forEach(request -> request.completeExceptionally(cause));
+    }
+
+    private static void putHeader(final ByteBuffer target, final String subject, final String replyTo, final int size) {
+        target.put((byte) 'P').put((byte) 'U').put((byte) 'B').put((byte) ' ');
+        putAscii(target, subject);
+        if (replyTo != null) {
+            target.put((byte) ' ');
+            putAscii(target, replyTo);
+        }
+        target.put((byte) ' ');
+        putAscii(target, Integer.toString(size));
+        target.put(CRLF);
+    }
+
+    private static void putAscii(final ByteBuffer target, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            target.put((byte) value.charAt(i));
+        }
+    }
+
+    private static String quote(final String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    @Override
+    public String toString() {
+        return "NatsConnection{" +
+                "name=" + name +
+                ", closed=" + closed +
+                ", msgsOut=" + msgsOut +
+                ", msgsIn=" + msgsIn +
+                '}';
+    }
+}
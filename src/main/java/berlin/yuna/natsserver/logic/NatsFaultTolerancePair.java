@@ -0,0 +1,349 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.model.SweepResult;
+import berlin.yuna.natsserver.model.SweepRow;
+import berlin.yuna.natsserver.model.exception.NatsStreamingStartException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FT_GROUP;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_AUTOSTART;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_BINARY_PATH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_CPU_SET;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.ROUTES;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static berlin.yuna.natsserver.logic.NatsRecoveryBenchmark.READY_LOG;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_CLUSTER_ID;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Active/standby pair of {@link NatsStreaming} servers in one {@link NatsStreamingConfig#FT_GROUP} sharing the same
+ * FILE store <br />
+ * Both servers are routed together, the first one logging {@link NatsRecoveryBenchmark#READY_LOG} is active.
+ * {@link NatsFaultTolerancePair#failover()} kills the active server (SIGKILL), measures the time until the standby is
+ * active and serves a streaming publish and starts the killed server again as new standby.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsFaultTolerancePair implements AutoCloseable {
+
+    public static final String TAKEOVER_MS = "takeover_ms";
+    public static final String SERVE_MS = "serve_ms";
+
+    protected final NatsStreamingOptionsBuilder base;
+    protected final Logger logger;
+    protected final List<NatsStreaming> nodes = new ArrayList<>();
+    protected final Map<NatsStreaming, Consumer<String>> listeners = new LinkedHashMap<>();
+    protected volatile NatsStreaming active;
+    protected volatile CompletableFuture<NatsStreaming> activated = new CompletableFuture<>();
+    protected Path dir;
+    protected boolean ownsDir;
+    protected String group = "ft";
+    protected String channel = "ft.probe";
+    protected long timeoutMs = 30000;
+    protected long probeTimeoutMs = 100;
+    protected int coresPerNode;
+    protected int firstCore;
+
+    /**
+     * @param base config shared by both servers e.g. {@link NatsStreamingConfig#CLUSTER_ID}
+     */
+    public NatsFaultTolerancePair(final NatsStreamingOptionsBuilder base) {
+        this.base = base;
+        this.logger = ofNullable(base.logger()).orElseGet(() -> Logger.getLogger(NatsFaultTolerancePair.class.getSimpleName()));
+    }
+
+    public NatsFaultTolerancePair() {
+        this(natsStreamingBuilder());
+    }
+
+    /**
+     * @param dir shared FILE store directory (default: temporary directory which is deleted on close)
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public NatsFaultTolerancePair dir(final Path dir) {
+        this.dir = dir;
+        return this;
+    }
+
+    /**
+     * @param group name of the {@link NatsStreamingConfig#FT_GROUP} (default: ft)
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public NatsFaultTolerancePair group(final String group) {
+        this.group = group;
+        return this;
+    }
+
+    /**
+     * @param channel channel used to probe the new active server (default: ft.probe)
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public NatsFaultTolerancePair channel(final String channel) {
+        this.channel = channel;
+        return this;
+    }
+
+    /**
+     * @param timeoutMs max time for start and takeover (default: 30000)
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public NatsFaultTolerancePair timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param probeTimeoutMs timeout per probe attempt - limits the resolution of {@link #SERVE_MS} (default: 100)
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public NatsFaultTolerancePair probeTimeoutMs(final long probeTimeoutMs) {
+        this.probeTimeoutMs = probeTimeoutMs;
+        return this;
+    }
+
+    /**
+     * @param coresPerNode cores per server (0 == no pinning, default: 0)
+     * @param firstCore    first core to assign - cores below are left to the load generator (default: 0)
+     * @return self {@link NatsFaultTolerancePair}
+     * @see NatsStreamingCluster#pinCores(int, int)
+     */
+    public NatsFaultTolerancePair pinCores(final int coresPerNode, final int firstCore) {
+        this.coresPerNode = Math.max(0, coresPerNode);
+        this.firstCore = Math.max(0, firstCore);
+        return this;
+    }
+
+    /**
+     * Starts both servers and waits until one of them is active
+     *
+     * @return self {@link NatsFaultTolerancePair}
+     */
+    public synchronized NatsFaultTolerancePair start() {
+        if (!nodes.isEmpty()) {
+            return this;
+        }
+        try {
+            if (dir == null) {
+                dir = Files.createTempDirectory("nats_ft_");
+                ownsDir = true;
+            }
+            final NatsStreaming prototype = natsStreamingBuilder().configMap(base.configMap()).autostart(false).logger(logger).nats();
+            prototype.downloadNats();
+            final List<Integer> ports = NatsUtils.reservePorts(4);
+            final List<String> cpuSets = coresPerNode > 0 ? NatsUtils.cpuSets(2, coresPerNode, firstCore) : List.of();
+            for (int i = 0; i < 2; i++) {
+                final Map<NatsStreamingConfig, String> config = new EnumMap<>(NatsStreamingConfig.class);
+                config.putAll(base.configMap());
+                config.put(NATS_BINARY_PATH, prototype.binary().toString());
+                config.put(NATS_AUTOSTART, "false");
+                config.put(PORT, String.valueOf(ports.get(i)));
+                config.put(CLUSTER, "nats://localhost:" + ports.get(2 + i));
+                config.put(ROUTES, "nats://localhost:" + ports.get(3 - i));
+                config.put(FT_GROUP, group);
+                config.put(STORE, "FILE");
+                config.put(DIR, dir.toString());
+                if (!cpuSets.isEmpty()) {
+                    config.put(NATS_CPU_SET, cpuSets.get(i));
+                }
+                final String name = "ft-" + i;
+                final NatsStreaming node = natsStreamingBuilder().configMap(config).logger(ofNullable(base.logger()).orElseGet(() -> Logger.getLogger("NatsStreaming[" + name + "]"))).nats();
+                final Consumer<String> listener = line -> {
+                    if (line.contains(READY_LOG)) {
+                        active = node;
+                        activated.complete(node);
+                    }
+                };
+                node.addLogListener(listener);
+                listeners.put(node, listener);
+                nodes.add(node);
+            }
+            NatsUtils.parallel(List.of(nodes.get(0)::start, nodes.get(1)::start));
+            final NatsStreaming first = activated.get(timeoutMs, TimeUnit.MILLISECONDS);
+            logger.info(() -> format("Started FT group [%s] active port [%s] standby port [%s]", group, first.port(), standby().port()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new NatsStreamingStartException(e);
+        } catch (TimeoutException e) {
+            close();
+            throw new NatsStreamingStartException(new TimeoutException("No active server in FT group [" + group + "] within [" + timeoutMs + "] ms"));
+        } catch (Exception e) {
+            close();
+            throw e instanceof NatsStreamingStartException ? (NatsStreamingStartException) e : new NatsStreamingStartException(e);
+        }
+        return this;
+    }
+
+    /**
+     * @return active server or null if none is active
+     */
+    public NatsStreaming active() {
+        return active;
+    }
+
+    /**
+     * @return standby server or null if the pair is not started
+     */
+    public NatsStreaming standby() {
+        return nodes.stream().filter(node -> node != active).findFirst().orElse(null);
+    }
+
+    public List<NatsStreaming> nodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * Kills the active server, waits for the standby to take over and starts the killed server as new standby
+     *
+     * @return metrics {@link #TAKEOVER_MS} (kill until ready log) and {@link #SERVE_MS} (kill until first acknowledged publish)
+     */
+    public synchronized Map<String, Number> failover() {
+        final NatsStreaming killed = active;
+        final NatsStreaming standby = standby();
+        if (killed == null || standby == null) {
+            throw new IllegalStateException("FT group [" + group + "] is not started");
+        }
+        activated = new CompletableFuture<>();
+        active = null;
+        final long killedAt = kill(killed);
+        try {
+            activated.get(timeoutMs, TimeUnit.MILLISECONDS);
+            final long takeoverAt = System.nanoTime();
+            final long servedAt = probe(standby, killedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+            final Map<String, Number> metrics = new LinkedHashMap<>();
+            metrics.put(TAKEOVER_MS, (takeoverAt - killedAt) / 1_000_000d);
+            metrics.put(SERVE_MS, (servedAt - killedAt) / 1_000_000d);
+            logger.info(() -> format("Failover FT group [%s] to port [%s] %s", group, standby.port(), metrics));
+            return metrics;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for takeover in FT group [" + group + "]", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("No takeover in FT group [" + group + "] within [" + timeoutMs + "] ms", e);
+        } finally {
+            killed.start();
+        }
+    }
+
+    /**
+     * Repeats {@link #failover()} - starts the pair if needed
+     *
+     * @param trials number of failovers
+     * @return {@link SweepResult} with one row per trial and the metrics of {@link #failover()}
+     */
+    public SweepResult measure(final int trials) {
+        start();
+        final Map<NatsStreamingConfig, String> config = Map.of(FT_GROUP, group);
+        final List<SweepRow> rows = new ArrayList<>();
+        for (int trial = 0; trial < trials; trial++) {
+            try {
+                rows.add(new SweepRow(config, trial, failover(), null));
+            } catch (Exception e) {
+                rows.add(new SweepRow(config, trial, Map.of(), ofNullable(e.getCause()).orElse(e).toString()));
+            }
+        }
+        return new SweepResult(List.of(FT_GROUP), rows);
+    }
+
+    /**
+     * Stops both servers and deletes the temporary store directory
+     */
+    @Override
+    public synchronized void close() {
+        listeners.forEach(NatsStreaming::removeLogListener);
+        listeners.clear();
+        NatsUtils.parallel(nodes.stream().map(node -> (Runnable) node::close).collect(Collectors.toList()));
+        nodes.clear();
+        active = null;
+        activated = new CompletableFuture<>();
+        if (ownsDir) {
+            final Path root = dir;
+            NatsUtils.ignoreException(run -> {
+                NatsUtils.deleteRecursive(root);
+                return run;
+            });
+            dir = null;
+            ownsDir = false;
+        }
+    }
+
+    protected long kill(final NatsStreaming node) {
+        final long pid = node.pid();
+        final long killedAt = System.nanoTime();
+        if (pid > 0) {
+            ProcessHandle.of(pid).ifPresent(process -> {
+                process.destroyForcibly();
+                NatsUtils.ignoreException(run -> {
+                    process.onExit().get(timeoutMs, TimeUnit.MILLISECONDS);
+                    return run;
+                });
+            });
+        }
+        node.close();
+        return killedAt;
+    }
+
+    protected long probe(final NatsStreaming node, final long deadline) {
+        final byte[] payload = "probe".getBytes(UTF_8);
+        RuntimeException last = null;
+        while (System.nanoTime() < deadline) {
+            final String clientId = "ft-probe-" + System.nanoTime();
+            try (final StanClient client = new StanClient(new NatsConnection(
+                    "localhost",
+                    node.port(),
+                    clientId,
+                    node.getValue(USER, () -> null),
+                    node.getValue(PASS, () -> null),
+                    node.getValue(AUTH, () -> null),
+                    DEFAULT_BUFFER_SIZE,
+                    probeTimeoutMs
+            ), node.getValue(CLUSTER_ID, () -> DEFAULT_CLUSTER_ID), clientId, 1, true)) {
+                client.publish(channel, payload);
+                return System.nanoTime();
+            } catch (RuntimeException e) {
+                last = e;
+                NatsUtils.sleep(1);
+            }
+        }
+        throw ofNullable(last).orElseGet(() -> new IllegalStateException("Probe deadline reached"));
+    }
+
+    @Override
+    public String toString() {
+        return "NatsFaultTolerancePair{" +
+                "group=" + group +
+                ", active=" + ofNullable(active).map(NatsStreaming::port).orElse(-1) +
+                ", dir=" + dir +
+                '}';
+    }
+}
@@ -0,0 +1,537 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.StanMessage;
+import berlin.yuna.natsserver.model.StoreChannelStats;
+import berlin.yuna.natsserver.model.StoreSubscription;
+import berlin.yuna.natsserver.model.exception.NatsStreamingStoreException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_CRC;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_CRC_POLY;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_DATA;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_REDELIVERED;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_REDELIVERY_COUNT;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_SEQUENCE;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_SUBJECT;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_TIMESTAMP;
+import static berlin.yuna.natsserver.logic.StanProtocol.bool;
+import static berlin.yuna.natsserver.logic.StanProtocol.bytes;
+import static berlin.yuna.natsserver.logic.StanProtocol.decode;
+import static berlin.yuna.natsserver.logic.StanProtocol.number;
+import static berlin.yuna.natsserver.logic.StanProtocol.string;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Read-only inspector for FILE store directories ({@link berlin.yuna.natsserver.config.NatsStreamingConfig#DIR}) <br />
+ * Slice, index and subscription files are memory-mapped in windows, so multi GB stores are never loaded onto the heap.
+ * Messages are streamed lazily, channel stats come from the index files only. Shows the raw store content - limits
+ * which the server applies on recovery (e.g. MAX_MSGS within a slice) are not applied.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsFileStoreReader {
+
+    public static final int FILE_VERSION = 1;
+    public static final int RECORD_HEADER_SIZE = 8;
+    public static final int INDEX_RECORD_SIZE = 32;
+    public static final long CRC_POLY_IEEE = 0xedb88320L;
+    public static final String SUBS_FILE = "subs.dat";
+    public static final String CLIENTS_FILE = "clients.dat";
+    public static final String SERVER_FILE = "server.dat";
+    // subscription record types
+    public static final int SUB_REC_NEW = 1;
+    public static final int SUB_REC_UPDATE = 2;
+    public static final int SUB_REC_DEL = 3;
+    public static final int SUB_REC_ACK = 4;
+    public static final int SUB_REC_MSG = 5;
+    // client record types
+    public static final int CLIENT_REC_ADD = 1;
+    public static final int CLIENT_REC_DEL = 2;
+
+    protected static final Pattern SLICE = Pattern.compile("msgs\\.(\\d+)\\.dat");
+    protected static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+    protected final Path dir;
+    protected boolean crc = true;
+    protected long crcPoly = CRC_POLY_IEEE;
+    protected int windowSize = DEFAULT_WINDOW;
+
+    /**
+     * @param dir store root directory
+     */
+    public NatsFileStoreReader(final Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param nats server which {@link berlin.yuna.natsserver.config.NatsStreamingConfig#DIR} to read - should be stopped or idle,
+     *             CRC settings are taken from {@link berlin.yuna.natsserver.config.NatsStreamingConfig#FILE_CRC} and
+     *             {@link berlin.yuna.natsserver.config.NatsStreamingConfig#FILE_CRC_POLY}
+     */
+    public NatsFileStoreReader(final NatsStreaming nats) {
+        this(Paths.get(ofNullable(nats.getValue(DIR)).orElseThrow(() -> new NatsStreamingStoreException("No store dir configured [" + nats + "]"))));
+        ofNullable(nats.getValue(FILE_CRC)).map(String::trim).filter(NatsUtils::isNotEmpty).ifPresent(value -> crc(!"false".equalsIgnoreCase(value)));
+        ofNullable(nats.getValue(FILE_CRC_POLY)).map(String::trim).filter(NatsUtils::isNotEmpty).ifPresent(value -> crcPoly(Long.decode(value)));
+    }
+
+    /**
+     * @param crc [true] == validate the CRC-32 of every record - disable if the store was written with FILE_CRC=false (default: true)
+     * @return self {@link NatsFileStoreReader}
+     */
+    public NatsFileStoreReader crc(final boolean crc) {
+        this.crc = crc;
+        return this;
+    }
+
+    /**
+     * @param crcPoly reversed polynomial of the store see FILE_CRC_POLY (default: IEEE 0xedb88320)
+     * @return self {@link NatsFileStoreReader}
+     */
+    public NatsFileStoreReader crcPoly(final long crcPoly) {
+        this.crcPoly = crcPoly;
+        return this;
+    }
+
+    /**
+     * @param windowSize max bytes mapped at once per file (default: 64 MB)
+     * @return self {@link NatsFileStoreReader}
+     */
+    public NatsFileStoreReader windowSize(final int windowSize) {
+        this.windowSize = Math.max(INDEX_RECORD_SIZE, windowSize);
+        return this;
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * @return channel names - directories containing message slices or a subscription file
+     */
+    public List<String> channels() {
+        try (final Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> SLICE.matcher(file.getFileName().toString()).matches() || file.getFileName().toString().equals(SUBS_FILE))
+                    .map(Path::getParent)
+                    .filter(parent -> !parent.equals(dir))
+                    .map(parent -> dir.relativize(parent).toString().replace('\\', '/'))
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new NatsStreamingStoreException("Could not list channels [" + dir + "]", e);
+        }
+    }
+
+    /**
+     * @return stats of all channels
+     */
+    public List<StoreChannelStats> stats() {
+        return channels().stream().map(this::stats).collect(Collectors.toList());
+    }
+
+    /**
+     * @param channel channel name
+     * @return stats from the index files of the channel
+     */
+    public StoreChannelStats stats(final String channel) {
+        final List<Path> slices = slices(channel);
+        long messages = 0;
+        long first = 0;
+        long last = 0;
+        long payload = 0;
+        long firstTs = 0;
+        long lastTs = 0;
+        for (Path slice : slices) {
+            final Path idx = index(slice);
+            if (!Files.exists(idx)) {
+                continue;
+            }
+            final MappedFile file = new MappedFile(idx);
+            for (long pos = Integer.BYTES; pos + INDEX_RECORD_SIZE <= file.size(); pos += INDEX_RECORD_SIZE) {
+                final ByteBuffer record = file.read(pos, INDEX_RECORD_SIZE);
+                validateIndex(idx, pos, record);
+                final long seq = record.getLong(0);
+                final long ts = record.getLong(16);
+                first = first == 0 ? seq : Math.min(first, seq);
+                firstTs = firstTs == 0 ? ts : Math.min(firstTs, ts);
+                last = Math.max(last, seq);
+                lastTs = Math.max(lastTs, ts);
+                payload += Integer.toUnsignedLong(record.getInt(24));
+                messages++;
+            }
+        }
+        return new StoreChannelStats(channel, slices.size(), messages, first, last, payload, size(dir.resolve(channel)), firstTs, lastTs, subscriptions(channel).size());
+    }
+
+    /**
+     * @param channel channel name
+     * @return lazy stream of all stored messages of the channel in slice order
+     */
+    public Stream<StanMessage> messages(final String channel) {
+        return messages(channel, 0);
+    }
+
+    /**
+     * @param channel       channel name
+     * @param fromSequence  first sequence to return - the index files are used to skip earlier slices and records
+     * @return lazy stream of the stored messages starting at the given sequence
+     */
+    public Stream<StanMessage> messages(final String channel, final long fromSequence) {
+        return slices(channel).stream()
+                .flatMap(slice -> {
+                    final long offset = startOffset(slice, fromSequence);
+                    return offset < 0 ? Stream.empty() : records(slice, offset, false);
+                })
+                .map(record -> toMessage(channel, record.payload))
+                .filter(msg -> msg.sequence() >= fromSequence);
+    }
+
+    /**
+     * @param channel channel name
+     * @return subscriptions recovered from the subscription file - deleted subscriptions are omitted
+     */
+    public List<StoreSubscription> subscriptions(final String channel) {
+        final Path file = dir.resolve(channel).resolve(SUBS_FILE);
+        final Map<Long, Map<Integer, Object>> states = new LinkedHashMap<>();
+        final Map<Long, Set<Long>> pending = new LinkedHashMap<>();
+        final Map<Long, Long> lastSent = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        try (final Stream<Record> records = records(file, Integer.BYTES, true)) {
+            records.forEach(record -> {
+                final Map<Integer, Object> fields = decode(record.payload);
+                final long id = number(fields, 1);
+                switch (record.type) {
+                    case SUB_REC_NEW, SUB_REC_UPDATE -> {
+                        states.put(id, fields);
+                        lastSent.merge(id, number(fields, 9), Math::max);
+                        pending.computeIfAbsent(id, k -> new TreeSet<>());
+                    }
+                    case SUB_REC_DEL -> {
+                        states.remove(id);
+                        pending.remove(id);
+                        lastSent.remove(id);
+                    }
+                    case SUB_REC_MSG -> {
+                        ofNullable(pending.get(id)).ifPresent(seqs -> seqs.add(number(fields, 2)));
+                        lastSent.computeIfPresent(id, (k, v) -> Math.max(v, number(fields, 2)));
+                    }
+                    case SUB_REC_ACK -> ofNullable(pending.get(id)).ifPresent(seqs -> seqs.remove(number(fields, 2)));
+                    default -> throw new NatsStreamingStoreException("Unknown subscription record type [" + record.type + "] at [" + file + ":" + record.offset + "]");
+                }
+            });
+        }
+        return states.entrySet().stream().map(entry -> {
+            final Map<Integer, Object> s = entry.getValue();
+            return new StoreSubscription(
+                    entry.getKey(), string(s, 2), string(s, 3), string(s, 8), string(s, 4), string(s, 5),
+                    (int) number(s, 6), (int) number(s, 7), lastSent.getOrDefault(entry.getKey(), 0L),
+                    bool(s, 10), bool(s, 11), pending.getOrDefault(entry.getKey(), Set.of()).size()
+            );
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * @return ids of the clients registered in the clients file
+     */
+    public List<String> clients() {
+        final Path file = dir.resolve(CLIENTS_FILE);
+        final Set<String> result = new LinkedHashSet<>();
+        if (Files.exists(file)) {
+            try (final Stream<Record> records = records(file, Integer.BYTES, true)) {
+                records.forEach(record -> {
+                    final String id = string(decode(record.payload), 1);
+                    if (record.type == CLIENT_REC_ADD) {
+                        result.add(id);
+                    } else if (record.type == CLIENT_REC_DEL) {
+                        result.remove(id);
+                    }
+                });
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Reads every record of the store and compares the message slices with their index files - CRCs are validated if {@link NatsFileStoreReader#crc(boolean)} is enabled
+     *
+     * @return problems found - empty if the store is consistent
+     */
+    public List<String> verify() {
+        final List<String> problems = new ArrayList<>();
+        final Consumer<Runnable> check = run -> {
+            try {
+                run.run();
+            } catch (NatsStreamingStoreException e) {
+                problems.add(e.getMessage());
+            }
+        };
+        check.accept(this::clients);
+        for (String channel : channels()) {
+            check.accept(() -> subscriptions(channel));
+            for (Path slice : slices(channel)) {
+                check.accept(() -> verifySlice(slice));
+            }
+        }
+        return problems;
+    }
+
+    protected void verifySlice(final Path slice) {
+        final Path idx = index(slice);
+        final MappedFile index = Files.exists(idx) ? new MappedFile(idx) : null;
+        final long[] pos = {Integer.BYTES};
+        try (final Stream<Record> records = records(slice, Integer.BYTES, false)) {
+            records.forEach(record -> {
+                if (index == null || pos[0] + INDEX_RECORD_SIZE > index.size()) {
+                    throw new NatsStreamingStoreException("Missing index record for [" + slice + ":" + record.offset + "]");
+                }
+                final ByteBuffer entry = index.read(pos[0], INDEX_RECORD_SIZE);
+                validateIndex(idx, pos[0], entry);
+                final long sequence = number(decode(record.payload.duplicate()), MSG_SEQUENCE);
+                if (entry.getLong(0) != sequence || entry.getLong(8) != record.offset) {
+                    throw new NatsStreamingStoreException("Index mismatch at [" + idx + ":" + pos[0] + "] sequence [" + sequence + "] offset [" + record.offset + "]");
+                }
+                pos[0] += INDEX_RECORD_SIZE;
+            });
+        }
+    }
+
+    /**
+     * @param channel channel name
+     * @return message slice files sorted by slice number
+     */
+    protected List<Path> slices(final String channel) {
+        final Path channelDir = dir.resolve(channel);
+        if (!Files.isDirectory(channelDir)) {
+            return List.of();
+        }
+        try (final Stream<Path> files = Files.list(channelDir)) {
+            return files.filter(file -> SLICE.matcher(file.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(NatsFileStoreReader::sliceNumber))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new NatsStreamingStoreException("Could not list slices [" + channelDir + "]", e);
+        }
+    }
+
+    /**
+     * @return offset of the first record with sequence &gt;= fromSequence, -1 if the slice contains only earlier sequences
+     */
+    protected long startOffset(final Path slice, final long fromSequence) {
+        final Path idx = index(slice);
+        if (fromSequence <= 0 || !Files.exists(idx)) {
+            return Integer.BYTES;
+        }
+        final MappedFile index = new MappedFile(idx);
+        final long count = (index.size() - Integer.BYTES) / INDEX_RECORD_SIZE;
+        if (count == 0) {
+            return Integer.BYTES;
+        }
+        final long first = index.read(Integer.BYTES, INDEX_RECORD_SIZE).getLong(0);
+        if (first + count - 1 < fromSequence) {
+            return -1;
+        }
+        final long position = Integer.BYTES + Math.max(0, Math.min(count - 1, fromSequence - first)) * INDEX_RECORD_SIZE;
+        final ByteBuffer entry = index.read(position, INDEX_RECORD_SIZE);
+        validateIndex(idx, position, entry);
+        return entry.getLong(0) == Math.max(first, fromSequence) ? entry.getLong(8) : Integer.BYTES;
+    }
+
+    protected Stream<Record> records(final Path file, final long offset, final boolean typed) {
+        final MappedFile mapped = new MappedFile(file);
+        if (mapped.size() >= Integer.BYTES) {
+            final int version = mapped.read(0, Integer.BYTES).getInt(0);
+            if (version != FILE_VERSION) {
+                throw new NatsStreamingStoreException("Unsupported file version [" + version + "] in [" + file + "]");
+            }
+        }
+        final Iterator<Record> iterator = new Iterator<>() {
+            long pos = Math.max(offset, Integer.BYTES);
+            Record next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && pos + RECORD_HEADER_SIZE <= mapped.size()) {
+                    final ByteBuffer header = mapped.read(pos, RECORD_HEADER_SIZE);
+                    final int first = header.getInt(0);
+                    if (first == 0) {
+                        return false;
+                    }
+                    final int size = typed ? first & 0xFFFFFF : first;
+                    if (size < 0 || pos + RECORD_HEADER_SIZE + size > mapped.size()) {
+                        throw new NatsStreamingStoreException("Unexpected EOF at [" + file + ":" + pos + "] record size [" + size + "]");
+                    }
+                    final ByteBuffer payload = mapped.read(pos + RECORD_HEADER_SIZE, size);
+                    if (crc && checksum(payload.duplicate()) != Integer.toUnsignedLong(header.getInt(4))) {
+                        throw new NatsStreamingStoreException("CRC mismatch at [" + file + ":" + pos + "]");
+                    }
+                    next = new Record(pos, typed ? first >>> 24 : 0, payload);
+                    pos += RECORD_HEADER_SIZE + size;
+                }
+                return next != null;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Record result = next;
+                next = null;
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    protected void validateIndex(final Path file, final long position, final ByteBuffer record) {
+        if (crc && checksum(record.duplicate().limit(INDEX_RECORD_SIZE - Integer.BYTES)) != Integer.toUnsignedLong(record.getInt(INDEX_RECORD_SIZE - Integer.BYTES))) {
+            throw new NatsStreamingStoreException("CRC mismatch at [" + file + ":" + position + "]");
+        }
+    }
+
+    protected long checksum(final ByteBuffer buffer) {
+        if (crcPoly == CRC_POLY_IEEE) {
+            final CRC32 crc32 = new CRC32();
+            crc32.update(buffer);
+            return crc32.getValue();
+        }
+        long result = 0xFFFFFFFFL;
+        while (buffer.hasRemaining()) {
+            result ^= buffer.get() & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                result = (result & 1) != 0 ? (result >>> 1) ^ crcPoly : result >>> 1;
+            }
+        }
+        return ~result & 0xFFFFFFFFL;
+    }
+
+    protected static StanMessage toMessage(final String channel, final ByteBuffer payload) {
+        final Map<Integer, Object> fields = decode(payload);
+        return new StanMessage(
+                number(fields, MSG_SEQUENCE),
+                ofNullable(string(fields, MSG_SUBJECT)).filter(subject -> !subject.isEmpty()).orElse(channel),
+                bytes(fields, MSG_DATA),
+                number(fields, MSG_TIMESTAMP),
+                bool(fields, MSG_REDELIVERED),
+                (int) number(fields, MSG_REDELIVERY_COUNT)
+        );
+    }
+
+    protected static Path index(final Path slice) {
+        final String name = slice.getFileName().toString();
+        return slice.resolveSibling(name.substring(0, name.length() - ".dat".length()) + ".idx");
+    }
+
+    protected static long sliceNumber(final Path slice) {
+        final Matcher matcher = SLICE.matcher(slice.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : Long.MAX_VALUE;
+    }
+
+    protected static long size(final Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (final Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Store record with its file offset, record type (typed files only) and payload view into the mapped file
+     */
+    protected static class Record {
+        protected final long offset;
+        protected final int type;
+        protected final ByteBuffer payload;
+
+        protected Record(final long offset, final int type, final ByteBuffer payload) {
+            this.offset = offset;
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Read-only file mapped in windows of {@link NatsFileStoreReader#windowSize} - remaps when a read crosses the window
+     */
+    protected class MappedFile {
+        protected final Path path;
+        protected final long size;
+        protected MappedByteBuffer window;
+        protected long windowStart;
+
+        protected MappedFile(final Path path) {
+            this.path = path;
+            try {
+                this.size = Files.size(path);
+            } catch (IOException e) {
+                throw new NatsStreamingStoreException("Could not read [" + path + "]", e);
+            }
+        }
+
+        protected long size() {
+            return size;
+        }
+
+        /**
+         * @return little endian view of [position, position + length)
+         */
+        protected ByteBuffer read(final long position, final int length) {
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                map(position, (int) Math.min(size - position, Math.max(length, windowSize)));
+            }
+            final int start = (int) (position - windowStart);
+            return window.duplicate().position(start).limit(start + length).slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        protected void map(final long position, final int length) {
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                windowStart = position;
+            } catch (IOException e) {
+                throw new NatsStreamingStoreException("Could not map [" + path + "] at [" + position + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsFileStoreReader{" +
+                "dir=" + dir +
+                ", crc=" + crc +
+                '}';
+    }
+}
@@ -0,0 +1,250 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.model.exception.NatsStreamingProfileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PROFILE;
+import static java.lang.String.format;
+
+/**
+ * Collects go pprof profiles of a server started with {@link NatsStreamingConfig#PROFILE} <br />
+ * The cpu profile covers the window between {@link NatsProfiler#start(Path)} and {@link NatsProfiler#stop()}, capped by
+ * {@link NatsProfiler#maxCpuSeconds(int)}. Heap, goroutine and mutex profiles are snapshots taken on stop. The go
+ * runtime only records mutex contention if the server enables it, an empty mutex profile is expected otherwise.
+ * Profiles are stored as [prefix][profile].pb.gz - readable with "go tool pprof".
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsProfiler {
+
+    protected static final String PPROF_PATH = "/debug/pprof/";
+    protected static final String SUFFIX = ".pb.gz";
+
+    protected final String host;
+    protected final int port;
+    protected final Logger logger = Logger.getLogger(NatsProfiler.class.getSimpleName());
+    protected Set<Profile> profiles = EnumSet.allOf(Profile.class);
+    protected int maxCpuSeconds = 30;
+    protected long timeoutMs = 10000;
+    protected String prefix = "";
+    protected Path dir;
+    protected long startedNs;
+    protected CompletableFuture<Path> cpu;
+
+    /**
+     * Go pprof endpoints
+     */
+    public enum Profile {
+        CPU("profile"),
+        HEAP("heap"),
+        GOROUTINE("goroutine"),
+        MUTEX("mutex");
+
+        private final String endpoint;
+
+        Profile(final String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public String endpoint() {
+            return endpoint;
+        }
+    }
+
+    /**
+     * @param nats server started with {@link NatsStreamingConfig#PROFILE}
+     */
+    public NatsProfiler(final NatsStreaming nats) {
+        this("localhost", profilePort(nats));
+    }
+
+    /**
+     * @param host pprof host
+     * @param port pprof port
+     */
+    public NatsProfiler(final String host, final int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param profiles profiles to collect (default: all)
+     * @return self {@link NatsProfiler}
+     */
+    public NatsProfiler profiles(final Profile... profiles) {
+        this.profiles = profiles.length == 0 ? EnumSet.noneOf(Profile.class) : EnumSet.of(profiles[0], profiles);
+        return this;
+    }
+
+    /**
+     * @param maxCpuSeconds max cpu profile window - the server ends the cpu profile after this time (default: 30)
+     * @return self {@link NatsProfiler}
+     */
+    public NatsProfiler maxCpuSeconds(final int maxCpuSeconds) {
+        this.maxCpuSeconds = Math.max(1, maxCpuSeconds);
+        return this;
+    }
+
+    /**
+     * @param timeoutMs http timeout on top of the profile window (default: 10000)
+     * @return self {@link NatsProfiler}
+     */
+    public NatsProfiler timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param prefix file name prefix e.g. the benchmark name (default: empty)
+     * @return self {@link NatsProfiler}
+     */
+    public NatsProfiler prefix(final String prefix) {
+        this.prefix = prefix == null ? "" : prefix;
+        return this;
+    }
+
+    /**
+     * Starts the cpu profile in the background
+     *
+     * @param dir target directory e.g. next to the benchmark results
+     * @return self {@link NatsProfiler}
+     */
+    public synchronized NatsProfiler start(final Path dir) {
+        if (cpu != null) {
+            throw new IllegalStateException("Profiler is already running");
+        }
+        try {
+            this.dir = Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new NatsStreamingProfileException("Could not create profile dir [" + dir + "]", e);
+        }
+        startedNs = System.nanoTime();
+        cpu = profiles.contains(Profile.CPU)
+                ? CompletableFuture.supplyAsync(() -> fetch(Profile.CPU, "?seconds=" + maxCpuSeconds, TimeUnit.SECONDS.toMillis(maxCpuSeconds)))
+                : CompletableFuture.completedFuture(null);
+        return this;
+    }
+
+    /**
+     * Takes the snapshot profiles and waits for the cpu profile <br />
+     * The go cpu profile can't be ended early over http, so stop waits until the window of
+     * {@link NatsProfiler#maxCpuSeconds(int)} is over - use a window which fits the workload
+     *
+     * @return profile files
+     */
+    public synchronized Map<Profile, Path> stop() {
+        if (cpu == null) {
+            throw new IllegalStateException("Profiler is not running");
+        }
+        final Map<Profile, Path> result = new LinkedHashMap<>();
+        try {
+            for (Profile profile : profiles) {
+                if (profile != Profile.CPU) {
+                    result.put(profile, fetch(profile, "", 0));
+                }
+            }
+            final Path cpuProfile = cpu.get(TimeUnit.SECONDS.toMillis(maxCpuSeconds) + timeoutMs, TimeUnit.MILLISECONDS);
+            if (cpuProfile != null) {
+                result.put(Profile.CPU, cpuProfile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsStreamingProfileException("Interrupted while waiting for the cpu profile", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof NatsStreamingProfileException ? (NatsStreamingProfileException) e.getCause() : new NatsStreamingProfileException("Cpu profile failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NatsStreamingProfileException("Cpu profile timed out", e);
+        } finally {
+            cpu = null;
+        }
+        logger.info(() -> format("Collected profiles %s from [%s:%s] in [%s ms]", result.keySet(), host, port, (System.nanoTime() - startedNs) / 1_000_000));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Profiles a workload e.g. a {@link StanBenchmark} run
+     *
+     * @param dir      target directory
+     * @param workload workload to profile
+     * @param <T>      workload result type
+     * @return workload result - the profiles are in the target directory
+     */
+    public <T> T profile(final Path dir, final Supplier<T> workload) {
+        start(dir);
+        try {
+            return workload.get();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * @param profile profile
+     * @return target file of the profile
+     */
+    public Path file(final Profile profile) {
+        return dir == null ? null : dir.resolve(prefix + profile.name().toLowerCase() + SUFFIX);
+    }
+
+    public String url() {
+        return "http://" + host + ":" + port + PPROF_PATH;
+    }
+
+    protected Path fetch(final Profile profile, final String query, final long windowMs) {
+        final Path target = file(profile);
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url() + profile.endpoint() + query).openConnection();
+            connection.setConnectTimeout((int) timeoutMs);
+            connection.setReadTimeout((int) (windowMs + timeoutMs));
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new NatsStreamingProfileException(format("Profile [%s] failed with [%s %s]", profile, connection.getResponseCode(), connection.getResponseMessage()));
+            }
+            try (final InputStream in = connection.getInputStream()) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return target;
+        } catch (IOException e) {
+            throw new NatsStreamingProfileException(format("Profile [%s] failed from [%s]", profile, url()), e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    protected static int profilePort(final NatsStreaming nats) {
+        final String port = nats.getValue(PROFILE, () -> null);
+        if (!NatsUtils.isNotEmpty(port)) {
+            throw new IllegalStateException("Server was not started with [" + PROFILE.name() + "]");
+        }
+        return Integer.parseInt(port.trim());
+    }
+
+    @Override
+    public String toString() {
+        return "NatsProfiler{" +
+                "url=" + url() +
+                ", profiles=" + profiles +
+                ", maxCpuSeconds=" + maxCpuSeconds +
+                '}';
+    }
+}
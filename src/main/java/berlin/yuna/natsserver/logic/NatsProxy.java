@@ -0,0 +1,573 @@
+package berlin.yuna.natsserver.logic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Optional.ofNullable;
+
+/**
+ * Embedded NIO TCP proxy which shapes the traffic to a {@link NatsStreaming} port or a cluster route <br />
+ * Latency, jitter, bandwidth cap and chunking apply per direction and can be changed at runtime (new settings apply
+ * to data read afterwards). Unshaped traffic is forwarded straight from the direct read buffer without queueing.
+ * A single selector thread serves all connections - no root, no tc. {@link NatsProxy#blocked(boolean)} drops all
+ * connections and refuses new ones to simulate a network partition. A {@link TrafficListener} sees all forwarded
+ * bytes as read only views on the read buffer.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsProxy implements AutoCloseable {
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final InetSocketAddress target;
+    protected final List<Link> links = new CopyOnWriteArrayList<>();
+    protected final AtomicLong bytesUp = new AtomicLong(0);
+    protected final AtomicLong bytesDown = new AtomicLong(0);
+    protected final AtomicLong connections = new AtomicLong(0);
+    protected final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    protected volatile long latencyMs = 0;
+    protected volatile long jitterMs = 0;
+    protected volatile long bytesPerSecond = 0;
+    protected volatile int chunkSize = 0;
+    protected volatile long maxBufferedBytes = 8L * 1024 * 1024;
+    protected volatile boolean blocked;
+    protected volatile TrafficListener listener;
+    protected volatile boolean running;
+    protected Selector selector;
+    protected ServerSocketChannel server;
+    protected Thread thread;
+
+    /**
+     * @param host target host
+     * @param port target port
+     */
+    public NatsProxy(final String host, final int port) {
+        this.target = new InetSocketAddress(host, port);
+    }
+
+    /**
+     * @param nats target server - the port has to be known (started or configured)
+     */
+    public NatsProxy(final NatsStreaming nats) {
+        this("localhost", nats.port());
+    }
+
+    /**
+     * @param latencyMs one way delay per direction (default: 0)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy latencyMs(final long latencyMs) {
+        this.latencyMs = Math.max(0, latencyMs);
+        return wakeup();
+    }
+
+    /**
+     * @param jitterMs random additional delay between 0 and jitter - the byte order is kept (default: 0)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy jitterMs(final long jitterMs) {
+        this.jitterMs = Math.max(0, jitterMs);
+        return wakeup();
+    }
+
+    /**
+     * @param bytesPerSecond bandwidth cap per connection and direction (default: 0 == unlimited)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy bytesPerSecond(final long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        return wakeup();
+    }
+
+    /**
+     * @param chunkSize splits the traffic into writes of max chunk size bytes, each with its own delay (default: 0 == off)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy chunkSize(final int chunkSize) {
+        this.chunkSize = Math.max(0, chunkSize);
+        return wakeup();
+    }
+
+    /**
+     * @param maxBufferedBytes max queued bytes per direction before the proxy stops reading (default: 8 MB)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy maxBufferedBytes(final long maxBufferedBytes) {
+        this.maxBufferedBytes = Math.max(BUFFER_SIZE, maxBufferedBytes);
+        return wakeup();
+    }
+
+    /**
+     * @param blocked [true] == closes all connections and refuses new ones, [false] == forwards again (default: false)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy blocked(final boolean blocked) {
+        this.blocked = blocked;
+        return wakeup();
+    }
+
+    /**
+     * @param listener receives the traffic of all connections on the proxy thread (default: null)
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy listener(final TrafficListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Starts the proxy on a free port
+     *
+     * @return self {@link NatsProxy}
+     */
+    public NatsProxy start() {
+        return start(0);
+    }
+
+    /**
+     * @param port listen port (0 == free port)
+     * @return self {@link NatsProxy}
+     */
+    public synchronized NatsProxy start(final int port) {
+        if (running) {
+            return this;
+        }
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress("localhost", port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to start proxy to [" + target + "]", e);
+        }
+        running = true;
+        thread = new Thread(this::loop, "nats-proxy-" + port());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * @return listen port or -1 if not started
+     */
+    public int port() {
+        return server == null ? -1 : server.socket().getLocalPort();
+    }
+
+    /**
+     * @return nats url of the proxy e.g. nats://localhost:4222
+     */
+    public String url() {
+        return "nats://localhost:" + port();
+    }
+
+    public InetSocketAddress target() {
+        return target;
+    }
+
+    public long latencyMs() {
+        return latencyMs;
+    }
+
+    public long jitterMs() {
+        return jitterMs;
+    }
+
+    public long bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public boolean blocked() {
+        return blocked;
+    }
+
+    /**
+     * @return bytes forwarded from clients to the target
+     */
+    public long bytesUp() {
+        return bytesUp.get();
+    }
+
+    /**
+     * @return bytes forwarded from the target to clients
+     */
+    public long bytesDown() {
+        return bytesDown.get();
+    }
+
+    /**
+     * @return accepted connections since start
+     */
+    public long connections() {
+        return connections.get();
+    }
+
+    /**
+     * @return currently open connections
+     */
+    public int activeConnections() {
+        return links.size();
+    }
+
+    /**
+     * Closes all connections and the listen port
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        links.forEach(Link::close);
+        links.clear();
+        closeQuietly(server);
+        closeQuietly(selector);
+    }
+
+    protected void loop() {
+        try {
+            while (running) {
+                if (blocked) {
+                    links.forEach(Link::close);
+                }
+                long wakeAt = Long.MAX_VALUE;
+                final long now = System.nanoTime();
+                for (Link link : links) {
+                    wakeAt = Math.min(wakeAt, link.process(now));
+                }
+                if (wakeAt == Long.MAX_VALUE) {
+                    selector.select();
+                } else {
+                    final long waitMs = TimeUnit.NANOSECONDS.toMillis(wakeAt - System.nanoTime() + 999_999);
+                    if (waitMs > 0) {
+                        selector.select(waitMs);
+                    } else {
+                        selector.selectNow();
+                    }
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    protected void handle(final SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        final Link link = (Link) key.attachment();
+        try {
+            if (key.isConnectable() && link.upstream.finishConnect()) {
+                link.connected = true;
+            }
+            if (key.isWritable()) {
+                link.up.sinkBlocked &= key.channel() != link.upstream;
+                link.down.sinkBlocked &= key.channel() != link.client;
+            }
+            if (key.isReadable()) {
+                (key.channel() == link.client ? link.up : link.down).read(System.nanoTime());
+            }
+        } catch (IOException e) {
+            link.close();
+        }
+    }
+
+    protected void accept() {
+        SocketChannel client = null;
+        try {
+            client = server.accept();
+            if (client == null) {
+                return;
+            } else if (blocked) {
+                client.close();
+                return;
+            }
+            final SocketChannel upstream = SocketChannel.open();
+            configure(client);
+            configure(upstream);
+            final Link link = new Link(connections.incrementAndGet(), client, upstream);
+            link.connected = upstream.connect(target);
+            link.clientKey = client.register(selector, 0, link);
+            link.upstreamKey = upstream.register(selector, 0, link);
+            links.add(link);
+            ofNullable(listener).ifPresent(tap -> tap.onOpen(link.id));
+            link.updateInterest();
+        } catch (IOException e) {
+            closeQuietly(client);
+        }
+    }
+
+    protected NatsProxy wakeup() {
+        if (selector != null) {
+            selector.wakeup();
+        }
+        return this;
+    }
+
+    protected static void configure(final SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    protected static void closeQuietly(final AutoCloseable closeable) {
+        if (closeable != null) {
+            NatsUtils.ignoreException(run -> {
+                closeable.close();
+                return run;
+            });
+        }
+    }
+
+    /**
+     * Observes the traffic of a {@link NatsProxy} - called on the proxy thread, so implementations have to be fast
+     */
+    @FunctionalInterface
+    public interface TrafficListener {
+
+        /**
+         * @param connection connection number starting at 1
+         */
+        default void onOpen(final long connection) {
+        }
+
+        /**
+         * @param connection connection number
+         * @param toTarget   [true] == client to target, [false] == target to client
+         * @param data       read only view on the received bytes which is only valid during this call
+         */
+        void onData(long connection, boolean toTarget, ByteBuffer data);
+
+        /**
+         * @param connection connection number
+         */
+        default void onClose(final long connection) {
+        }
+    }
+
+    /**
+     * Client connection with its upstream connection to the target
+     */
+    protected class Link {
+
+        protected final long id;
+        protected final SocketChannel client;
+        protected final SocketChannel upstream;
+        protected final Pipe up;
+        protected final Pipe down;
+        protected SelectionKey clientKey;
+        protected SelectionKey upstreamKey;
+        protected boolean connected;
+        protected boolean closed;
+
+        protected Link(final long id, final SocketChannel client, final SocketChannel upstream) {
+            this.id = id;
+            this.client = client;
+            this.upstream = upstream;
+            this.up = new Pipe(this, client, upstream, bytesUp);
+            this.down = new Pipe(this, upstream, client, bytesDown);
+        }
+
+        /**
+         * @return nano time of the next due write or {@link Long#MAX_VALUE}
+         */
+        protected long process(final long now) {
+            if (closed) {
+                return Long.MAX_VALUE;
+            }
+            try {
+                final long wakeAt = Math.min(up.flush(now), down.flush(now));
+                if ((up.outputShut && down.outputShut) || (up.eof && down.eof && up.queue.isEmpty() && down.queue.isEmpty())) {
+                    close();
+                    return Long.MAX_VALUE;
+                }
+                updateInterest();
+                return wakeAt;
+            } catch (IOException e) {
+                close();
+                return Long.MAX_VALUE;
+            }
+        }
+
+        protected void updateInterest() {
+            if (closed) {
+                return;
+            }
+            clientKey.interestOps((up.readable() ? SelectionKey.OP_READ : 0) | (down.sinkBlocked ? SelectionKey.OP_WRITE : 0));
+            upstreamKey.interestOps(!connected ? SelectionKey.OP_CONNECT : (down.readable() ? SelectionKey.OP_READ : 0) | (up.sinkBlocked ? SelectionKey.OP_WRITE : 0));
+        }
+
+        protected void close() {
+            if (!closed) {
+                closed = true;
+                ofNullable(listener).ifPresent(tap -> tap.onClose(id));
+                closeQuietly(client);
+                closeQuietly(upstream);
+                links.remove(this);
+            }
+        }
+    }
+
+    /**
+     * One direction of a {@link Link} with its queue of delayed chunks
+     */
+    protected class Pipe {
+
+        protected final Link link;
+        protected final SocketChannel source;
+        protected final SocketChannel sink;
+        protected final AtomicLong counter;
+        protected final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+        protected long queued;
+        protected long lastDue;
+        protected long nextSend;
+        protected boolean eof;
+        protected boolean sinkBlocked;
+        protected boolean outputShut;
+
+        protected Pipe(final Link link, final SocketChannel source, final SocketChannel sink, final AtomicLong counter) {
+            this.link = link;
+            this.source = source;
+            this.sink = sink;
+            this.counter = counter;
+        }
+
+        protected boolean readable() {
+            return !eof && queued < maxBufferedBytes;
+        }
+
+        protected void read(final long now) throws IOException {
+            readBuffer.clear();
+            final int read = source.read(readBuffer);
+            if (read < 0) {
+                eof = true;
+                return;
+            }
+            readBuffer.flip();
+            final TrafficListener tap = listener;
+            if (tap != null) {
+                tap.onData(link.id, source == link.client, readBuffer.asReadOnlyBuffer());
+            }
+            final long latency = latencyMs;
+            final long jitter = jitterMs;
+            final int chunk = chunkSize;
+            if (latency == 0 && jitter == 0 && chunk == 0 && bytesPerSecond == 0 && queue.isEmpty() && link.connected) {
+                counter.addAndGet(sink.write(readBuffer));
+            }
+            while (readBuffer.hasRemaining()) {
+                final int length = chunk > 0 ? Math.min(chunk, readBuffer.remaining()) : readBuffer.remaining();
+                final ByteBuffer data = ByteBuffer.allocate(length);
+                final int limit = readBuffer.limit();
+                readBuffer.limit(readBuffer.position() + length);
+                data.put(readBuffer).flip();
+                readBuffer.limit(limit);
+                final long delayNs = TimeUnit.MILLISECONDS.toNanos(latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0));
+                lastDue = Math.max(now + delayNs, lastDue);
+                queue.add(new Chunk(data, lastDue));
+                queued += length;
+            }
+        }
+
+        /**
+         * @return nano time of the next due write or {@link Long#MAX_VALUE}
+         */
+        protected long flush(final long now) throws IOException {
+            while (!queue.isEmpty()) {
+                final Chunk chunk = queue.peek();
+                final long rate = bytesPerSecond;
+                if (chunk.due > now) {
+                    return chunk.due;
+                } else if (rate > 0 && nextSend > now) {
+                    return nextSend;
+                } else if (!link.connected || sinkBlocked) {
+                    return Long.MAX_VALUE;
+                }
+                final ByteBuffer data = chunk.data;
+                final int limit = data.limit();
+                if (rate > 0) {
+                    data.limit(data.position() + (int) Math.min(data.remaining(), Math.max(1024, rate / 100)));
+                }
+                final int written = sink.write(data);
+                data.limit(limit);
+                if (written == 0) {
+                    sinkBlocked = true;
+                    return Long.MAX_VALUE;
+                }
+                counter.addAndGet(written);
+                if (rate > 0) {
+                    nextSend = Math.max(now, nextSend) + TimeUnit.SECONDS.toNanos(written) / rate;
+                }
+                if (!data.hasRemaining()) {
+                    queue.poll();
+                    queued -= limit;
+                }
+            }
+            if (eof && !outputShut && link.connected) {
+                sink.shutdownOutput();
+                outputShut = true;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    protected static class Chunk {
+
+        protected final ByteBuffer data;
+        protected final long due;
+
+        protected Chunk(final ByteBuffer data, final long due) {
+            this.data = data;
+            this.due = due;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsProxy{" +
+                "port=" + port() +
+                ", target=" + target +
+                ", latencyMs=" + latencyMs +
+                ", jitterMs=" + jitterMs +
+                ", bytesPerSecond=" + bytesPerSecond +
+                ", chunkSize=" + chunkSize +
+                ", blocked=" + blocked +
+                ", connections=" + links.size() +
+                '}';
+    }
+}
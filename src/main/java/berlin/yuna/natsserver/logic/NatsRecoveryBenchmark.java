@@ -0,0 +1,342 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.model.SweepResult;
+import berlin.yuna.natsserver.model.SweepRow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.MAX_BYTES;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.MAX_CHANNELS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.MAX_MSGS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_AUTOSTART;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.lang.String.format;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Measures how long a FILE store takes to recover <br />
+ * Generates a store with the configured channels and messages, then restarts the server repeatedly for each
+ * combination of the swept config values. Ready is the "Streaming Server is ready" log line - the port is bound
+ * before the channels are recovered. Swept FILE_SLICE_* values change the store layout, so a separate store is
+ * generated per slice combination.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsRecoveryBenchmark {
+
+    public static final String READY_LOG = "Streaming Server is ready";
+    protected static final Pattern RECOVERED_CHANNELS = Pattern.compile("Recovered (\\d+) channel");
+
+    protected final NatsStreamingOptionsBuilder base;
+    protected final Map<NatsStreamingConfig, List<String>> dimensions = new LinkedHashMap<>();
+    protected int channels = 10;
+    protected int messages = 10_000;
+    protected int messageSize = 128;
+    protected int durables = 1;
+    protected int restarts = 3;
+    protected boolean crash = true;
+    protected Path storeDir;
+    protected long readyTimeoutMs = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * @param base config shared by all combinations - STORE is always FILE
+     */
+    public NatsRecoveryBenchmark(final NatsStreamingOptionsBuilder base) {
+        this.base = base;
+    }
+
+    public NatsRecoveryBenchmark() {
+        this(natsStreamingBuilder());
+    }
+
+    /**
+     * Adds a dimension to the cartesian product e.g. {@link NatsStreamingConfig#FILE_PARALLEL_RECOVERY}
+     *
+     * @param key    config key to sweep
+     * @param values values to try
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark dimension(final NatsStreamingConfig key, final String... values) {
+        dimensions.put(key, List.of(values));
+        return this;
+    }
+
+    public Map<NatsStreamingConfig, List<String>> dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param channels number of channels in the generated store (default: 10)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark channels(final int channels) {
+        this.channels = Math.max(1, channels);
+        return this;
+    }
+
+    /**
+     * @param messages messages per channel in the generated store (default: 10000)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark messages(final int messages) {
+        this.messages = Math.max(0, messages);
+        return this;
+    }
+
+    /**
+     * @param messageSize payload size in bytes (default: 128)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark messageSize(final int messageSize) {
+        this.messageSize = Math.max(0, messageSize);
+        return this;
+    }
+
+    /**
+     * @param durables durable subscriptions per channel which have to be recovered too (default: 1)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark durables(final int durables) {
+        this.durables = Math.max(0, durables);
+        return this;
+    }
+
+    /**
+     * @param restarts measured restarts per combination (default: 3)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark restarts(final int restarts) {
+        this.restarts = Math.max(1, restarts);
+        return this;
+    }
+
+    /**
+     * @param crash [true] == kill the server (SIGKILL) instead of a graceful stop after each start (default: true)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark crash(final boolean crash) {
+        this.crash = crash;
+        return this;
+    }
+
+    /**
+     * @param storeDir parent directory of the generated stores which is kept after the run (default: temporary directory which is deleted)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark storeDir(final Path storeDir) {
+        this.storeDir = storeDir;
+        return this;
+    }
+
+    /**
+     * @param readyTimeoutMs max time to wait for the ready log (default: 10 minutes)
+     * @return self {@link NatsRecoveryBenchmark}
+     */
+    public NatsRecoveryBenchmark readyTimeoutMs(final long readyTimeoutMs) {
+        this.readyTimeoutMs = readyTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Generates the stores and restarts the server for every combination - failing restarts are reported as rows with error
+     *
+     * @return {@link SweepResult} with "ready_ms", "bind_ms", "recovered_channels" and "store_bytes" per restart
+     */
+    public SweepResult run() {
+        final Logger logger = ofNullable(base.logger()).orElseGet(() -> Logger.getLogger(NatsRecoveryBenchmark.class.getSimpleName()));
+        final List<SweepRow> rows = new ArrayList<>();
+        final Map<Map<NatsStreamingConfig, String>, Path> stores = new HashMap<>();
+        final Map<Map<NatsStreamingConfig, String>, String> generationErrors = new HashMap<>();
+        Path root = null;
+        try {
+            root = storeDir != null ? Files.createDirectories(storeDir) : Files.createTempDirectory("nats_recovery_");
+            for (Map<NatsStreamingConfig, String> combination : NatsConfigSweep.combinations(dimensions)) {
+                final Map<NatsStreamingConfig, String> layout = layout(combination);
+                Path store = stores.get(layout);
+                if (generationErrors.containsKey(layout)) {
+                    rows.add(new SweepRow(combination, 0, Map.of(), generationErrors.get(layout)));
+                    continue;
+                }
+                try {
+                    if (store == null) {
+                        store = Files.createDirectories(root.resolve("store_" + stores.size()));
+                        generate(store, layout);
+                        stores.put(layout, store);
+                    }
+                } catch (Exception e) {
+                    generationErrors.put(layout, "Store generation failed: " + ofNullable(e.getCause()).orElse(e));
+                    rows.add(new SweepRow(combination, 0, Map.of(), generationErrors.get(layout)));
+                    continue;
+                }
+                final long storeBytes = size(store);
+                for (int repetition = 0; repetition < restarts; repetition++) {
+                    final SweepRow row = restart(combination, store, storeBytes, repetition);
+                    logger.info(() -> format("Recovery %s", row));
+                    rows.add(row);
+                }
+            }
+        } catch (IOException e) {
+            rows.add(new SweepRow(Map.of(), 0, Map.of(), e.toString()));
+        } finally {
+            if (storeDir == null && root != null) {
+                final Path dir = root;
+                NatsUtils.ignoreException(run -> {
+                    NatsUtils.deleteRecursive(dir);
+                    return run;
+                });
+            }
+        }
+        return new SweepResult(new ArrayList<>(dimensions.keySet()), rows);
+    }
+
+    /**
+     * Fills the store with {@link NatsRecoveryBenchmark#channels} x {@link NatsRecoveryBenchmark#messages} and the durable subscriptions
+     *
+     * @param store  store directory
+     * @param layout FILE_SLICE_* config of the store
+     */
+    protected void generate(final Path store, final Map<NatsStreamingConfig, String> layout) {
+        final NatsStreaming nats = nats(store, layout);
+        try {
+            nats.start();
+            try (final StanClient client = StanClient.connect(nats, "recovery-generator")) {
+                final byte[] payload = new byte[messageSize];
+                ThreadLocalRandom.current().nextBytes(payload);
+                final List<StanSubscription> subscriptions = new ArrayList<>();
+                for (int channel = 0; channel < channels; channel++) {
+                    for (int durable = 0; durable < durables; durable++) {
+                        subscriptions.add(client.subscription(channel(channel)).durableName("recovery-durable-" + durable).subscribe(msg -> {
+                        }));
+                    }
+                    final List<CompletableFuture<String>> acks = new ArrayList<>();
+                    for (int i = 0; i < messages; i++) {
+                        acks.add(client.publishAsync(channel(channel), payload));
+                    }
+                    CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).get(readyTimeoutMs, TimeUnit.MILLISECONDS);
+                }
+                subscriptions.forEach(StanSubscription::close);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            stop(nats);
+        }
+    }
+
+    protected SweepRow restart(final Map<NatsStreamingConfig, String> combination, final Path store, final long storeBytes, final int repetition) {
+        final NatsStreaming nats = nats(store, combination);
+        final CompletableFuture<Long> ready = new CompletableFuture<>();
+        final AtomicLong recovered = new AtomicLong(-1);
+        final Consumer<String> listener = line -> {
+            final Matcher matcher = RECOVERED_CHANNELS.matcher(line);
+            if (matcher.find()) {
+                recovered.set(Long.parseLong(matcher.group(1)));
+            }
+            if (line.contains(READY_LOG)) {
+                ready.complete(System.nanoTime());
+            }
+        };
+        nats.addLogListener(listener);
+        try {
+            final long started = System.nanoTime();
+            nats.start();
+            final long bound = System.nanoTime();
+            final long readyAt = ready.get(readyTimeoutMs, TimeUnit.MILLISECONDS);
+            final Map<String, Number> metrics = new LinkedHashMap<>();
+            metrics.put("ready_ms", (readyAt - started) / 1_000_000d);
+            metrics.put("bind_ms", (bound - started) / 1_000_000d);
+            metrics.put("recovered_channels", recovered.get());
+            metrics.put("store_bytes", storeBytes);
+            return new SweepRow(combination, repetition, metrics, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SweepRow(combination, repetition, Map.of(), e.toString());
+        } catch (Exception e) {
+            return new SweepRow(combination, repetition, Map.of(), ofNullable(e.getCause()).orElse(e).toString());
+        } finally {
+            nats.removeLogListener(listener);
+            stop(nats);
+        }
+    }
+
+    protected void stop(final NatsStreaming nats) {
+        if (crash && nats.pid() > 0) {
+            ProcessHandle.of(nats.pid()).ifPresent(process -> {
+                process.destroyForcibly();
+                NatsUtils.ignoreException(run -> {
+                    process.onExit().get(readyTimeoutMs, TimeUnit.MILLISECONDS);
+                    return run;
+                });
+            });
+        }
+        nats.close();
+    }
+
+    protected NatsStreaming nats(final Path store, final Map<NatsStreamingConfig, String> overwrites) {
+        final Map<NatsStreamingConfig, String> config = new EnumMap<>(NatsStreamingConfig.class);
+        config.putAll(base.configMap());
+        config.putIfAbsent(PORT, "-1");
+        config.putIfAbsent(MAX_CHANNELS, "0");
+        config.putIfAbsent(MAX_MSGS, "0");
+        config.putIfAbsent(MAX_BYTES, "0");
+        config.putAll(overwrites);
+        config.put(STORE, "FILE");
+        config.put(DIR, store.toString());
+        config.put(NATS_AUTOSTART, "false");
+        return natsStreamingBuilder().configMap(config).logger(base.logger()).nats();
+    }
+
+    protected String channel(final int index) {
+        return "recovery." + index;
+    }
+
+    protected static Map<NatsStreamingConfig, String> layout(final Map<NatsStreamingConfig, String> combination) {
+        return combination.entrySet().stream()
+                .filter(entry -> entry.getKey().name().startsWith("FILE_SLICE_"))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    protected static long size(final Path dir) {
+        try (final Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsRecoveryBenchmark{" +
+                "dimensions=" + dimensions +
+                ", channels=" + channels +
+                ", messages=" + messages +
+                ", messageSize=" + messageSize +
+                ", restarts=" + restarts +
+                '}';
+    }
+}
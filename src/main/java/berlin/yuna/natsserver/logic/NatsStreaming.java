@@ -6,8 +6,10 @@ import berlin.yuna.natsserver.config.NatsStreamingConfig;
 import berlin.yuna.natsserver.config.NatsStreamingOptions;
 import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
 import berlin.yuna.natsserver.model.MapValue;
+import berlin.yuna.natsserver.model.NatsState;
 import berlin.yuna.natsserver.model.ValueSource;
 import berlin.yuna.natsserver.model.exception.NatsStreamingStartException;
+import berlin.yuna.natsserver.model.exception.NatsStreamingStoreException;
 import io.nats.commons.NatsInterface;
 
 import java.io.FileInputStream;
@@ -20,23 +22,42 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static berlin.yuna.clu.logic.SystemUtil.OS;
+import static berlin.yuna.clu.model.OsType.OS_LINUX;
 import static berlin.yuna.clu.model.OsType.OS_WINDOWS;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.*;
 import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
 import static berlin.yuna.natsserver.logic.NatsUtils.*;
+import static berlin.yuna.natsserver.model.NatsState.FAILED;
+import static berlin.yuna.natsserver.model.NatsState.READY;
+import static berlin.yuna.natsserver.model.NatsState.STARTING;
+import static berlin.yuna.natsserver.model.NatsState.STOPPED;
+import static berlin.yuna.natsserver.model.NatsState.STOPPING;
 import static berlin.yuna.natsserver.model.MapValue.mapValueOf;
+import static berlin.yuna.natsserver.model.ValueSource.AUTO;
 import static berlin.yuna.natsserver.model.ValueSource.DEFAULT;
 import static berlin.yuna.natsserver.model.ValueSource.DSL;
 import static berlin.yuna.natsserver.model.ValueSource.ENV;
@@ -70,7 +91,23 @@ public class NatsStreaming implements NatsInterface {
     private final Logger logger;
     protected final Map<NatsStreamingConfig, MapValue> configMap = new ConcurrentHashMap<>();
     protected final AtomicReference<Terminal> terminal = new AtomicReference<>(null);
+    protected final List<Consumer<String>> logListeners = new CopyOnWriteArrayList<>();
+    protected volatile Path ephemeralDir;
+    protected volatile Path cgroup;
+    protected volatile String command;
+    protected final AtomicReference<NatsState> state = new AtomicReference<>(NatsState.NEW);
+    protected final AtomicInteger starts = new AtomicInteger(0);
+    protected final Object lifecycle = new Object();
+    protected final List<BiConsumer<NatsState, NatsState>> stateListeners = new CopyOnWriteArrayList<>();
     public static final String NATS_PREFIX = "NATS_";
+    protected static final String EPHEMERAL_DIR = "nats_ephemeral";
+    protected static final Pattern EPHEMERAL_NAME = Pattern.compile("^.+_(\\d+)_\\d+$");
+    protected static final AtomicLong EPHEMERAL_COUNTER = new AtomicLong(0);
+    protected static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    protected static final String CGROUP_DIR = "nats_streaming";
+    protected static final long CGROUP_PERIOD_US = 100000;
+    protected static final Pattern CPU_LIST = Pattern.compile("\\d+(-\\d+)?(,\\d+(-\\d+)?)*");
+    protected static final Pattern STAN_BLOCK = Pattern.compile("(?m)^\\s*(store_limits|streaming)\\s*[:=]?\\s*\\{");
     private static final String TMP_DIR = "java.io.tmpdir";
 
     /**
@@ -137,6 +174,8 @@ public class NatsStreaming implements NatsInterface {
         this.timeoutMs = Long.parseLong(getValue(NATS_TIMEOUT_MS));
         this.logger = ofNullable(natsOptions.logger()).orElse(Logger.getLogger(name));
         ofNullable(natsOptions.logLevel()).ifPresent(logger::setLevel);
+        ofNullable(getValue(NATS_EPHEMERAL_STORE)).filter(Boolean::valueOf).ifPresent(ephemeral -> ephemeralStore());
+        ofNullable(getValue(NATS_AUTO_TUNE)).filter(Boolean::valueOf).ifPresent(autoTune -> autoTune());
         ofNullable(getValue(NATS_AUTOSTART)).filter(Boolean::valueOf).ifPresent(autostart -> start());
     }
 
@@ -150,23 +189,311 @@ public class NatsStreaming implements NatsInterface {
      *
      * @return {@link NatsStreaming}
      */
-    public synchronized NatsStreaming start() {
+    public NatsStreaming start() {
+        if (!begin()) {
+            return this;
+        }
         try {
-            if (terminal.get() != null && terminal.get().running()) {
-                logger.severe(() -> format("[%s] is already running", logger.getName()));
-                return this;
-            }
             downloadNats();
             final int port = setNextFreePort();
             validatePort(port, timeoutMs, true, () -> new BindException("Address already in use [" + port + "]"), () -> false);
             final String command = prepareCommand();
             logger.info(() -> format("Starting [%s] port [%s] version [%s] command [%s]", name, port, getValue(NATS_SYSTEM), command));
-            startProcess(command);
-            validatePort(port, timeoutMs, false, () -> new PortUnreachableException(name + " failed to start with port [" + port + "]"), () -> terminal.get() == null);
-            logger.info(() -> format("Started [%s] port [%s] version [%s] pid [%s]", name, port, getValue(NATS_SYSTEM), pid()));
+            final Terminal spawned = spawn(command, port);
+            this.command = command;
+            if (ready(spawned)) {
+                logger.info(() -> format("Started [%s] port [%s] version [%s] pid [%s]", name, port, getValue(NATS_SYSTEM), pid()));
+            }
+        } catch (Exception e) {
+            transition(FAILED, STARTING);
+            throw new NatsStreamingStartException(e);
+        } finally {
+            endStart();
+        }
+        return this;
+    }
+
+    /**
+     * Stops the server if running and starts it again with the command, environment and binary of the previous start <br />
+     * Skips the binary verification and the config resolution of {@link NatsStreaming#start()} - config changes since
+     * the previous start are not applied, use {@link NatsStreaming#reconfigure(Map)} for those. Falls back to a full
+     * {@link NatsStreaming#start()} if there is no previous command e.g. never started or changed config
+     *
+     * @return {@link NatsStreaming}
+     */
+    public NatsStreaming restart() {
+        final String cached = command;
+        if (!state.get().isStartable()) {
+            shutdown();
+        }
+        if (cached == null) {
+            return start();
+        }
+        if (!begin()) {
+            return this;
+        }
+        final long started = System.nanoTime();
+        try {
+            final int port = port();
+            validatePort(port, timeoutMs, true, () -> new BindException("Address already in use [" + port + "]"), () -> false);
+            if (ready(spawn(cached, port))) {
+                logger.info(() -> format("Restarted [%s] port [%s] pid [%s] in [%s ms]", name, port, pid(), (System.nanoTime() - started) / 1_000_000));
+            }
         } catch (Exception e) {
+            transition(FAILED, STARTING);
             throw new NatsStreamingStartException(e);
+        } finally {
+            endStart();
+        }
+        return this;
+    }
+
+    /**
+     * @return current lifecycle state - never blocks
+     */
+    public NatsState state() {
+        return state.get();
+    }
+
+    /**
+     * @return true if the server is {@link NatsState#READY} and its process is alive - never blocks
+     */
+    public boolean isRunning() {
+        return state.get() == READY && ofNullable(terminal.get()).map(Terminal::running).orElse(false);
+    }
+
+    /**
+     * Registers a listener for state changes - called with the previous and the new state on the thread which
+     * changed the state without holding any lock of this server
+     *
+     * @param listener state change consumer (previous, next)
+     * @return {@link NatsStreaming}
+     */
+    public NatsStreaming addStateListener(final BiConsumer<NatsState, NatsState> listener) {
+        stateListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @param listener state change consumer to remove
+     * @return {@link NatsStreaming}
+     */
+    public NatsStreaming removeStateListener(final BiConsumer<NatsState, NatsState> listener) {
+        stateListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Claims the start - only one caller wins from a startable state <br />
+     * The winner is counted in {@link NatsStreaming#starts} until its start attempt is over
+     *
+     * @return true if the caller may start the server
+     */
+    protected boolean begin() {
+        if (state.get() == READY && !isRunning()) {
+            transition(FAILED, READY);
+        }
+        starts.incrementAndGet();
+        if (!transition(STARTING, NatsState.NEW, STOPPED, FAILED)) {
+            endStart();
+            logger.severe(() -> format("[%s] is already running with state [%s]", logger.getName(), state.get()));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Completes the start - kills the spawned process if a concurrent {@link NatsStreaming#shutdown()} took over
+     *
+     * @param spawned terminal of the spawned process
+     * @return true if the server is {@link NatsState#READY}
+     */
+    protected boolean ready(final Terminal spawned) {
+        if (transition(READY, STARTING)) {
+            return true;
+        }
+        logger.warning(() -> format("Stopped [%s] while starting with state [%s]", name, state.get()));
+        sendStopSignal();
+        waitForShutDown(timeoutMs);
+        ofNullable(spawned).map(Terminal::process).ifPresent(process -> {
+            process.destroy();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        terminal.compareAndSet(spawned, null);
+        deleteCgroup();
+        deletePidFile();
+        deleteStanConfig();
+        return false;
+    }
+
+    protected void endStart() {
+        starts.decrementAndGet();
+        signal();
+    }
+
+    /**
+     * Wakes up all threads in {@link NatsStreaming#await(BooleanSupplier, long)}
+     */
+    protected void signal() {
+        synchronized (lifecycle) {
+            lifecycle.notifyAll();
+        }
+    }
+
+    /**
+     * Waits without spinning for a condition on the state or the running starts - woken up by every transition and
+     * every finished start attempt
+     *
+     * @param condition condition to wait for
+     * @param timeoutMs max time to wait
+     * @return true if the condition was met in time
+     */
+    protected boolean await(final BooleanSupplier condition, final long timeoutMs) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (lifecycle) {
+            while (!condition.getAsBoolean()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lifecycle, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Compare and set transition - listeners are notified after the transition succeeded
+     *
+     * @param next target state
+     * @param from allowed current states
+     * @return true if this call changed the state
+     */
+    protected boolean transition(final NatsState next, final NatsState... from) {
+        for (NatsState current = state.get(); Arrays.asList(from).contains(current); current = state.get()) {
+            if (state.compareAndSet(current, next)) {
+                signal();
+                final NatsState previous = current;
+                stateListeners.forEach(listener -> {
+                    try {
+                        listener.accept(previous, next);
+                    } catch (RuntimeException e) {
+                        logger.warning(() -> format("State listener of [%s] failed on [%s -> %s] cause [%s]", name, previous, next, e.getMessage()));
+                    }
+                });
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected Terminal spawn(final String command, final int port) throws Exception {
+        cgroup = createCgroup();
+        final Terminal spawned = startProcess(cgroup == null ? command : format("echo $$ > %s || echo \"Skipped cgroup limits of [%s]\" >&2; exec %s", cgroup.resolve("cgroup.procs"), name, command));
+        validatePort(port, timeoutMs, false, () -> new PortUnreachableException(name + " failed to start with port [" + port + "]"), () -> terminal.get() == null);
+        return spawned;
+    }
+
+    /**
+     * Captures the FILE store ({@link NatsStreamingConfig#DIR}) into a new temporary directory <br />
+     * A running server is stopped for the capture and started again afterwards
+     *
+     * @return snapshot directory for {@link NatsStreaming#restoreStore(Path)}
+     */
+    public Path snapshotStore() {
+        try {
+            return snapshotStore(Files.createTempDirectory(name.toLowerCase() + "_snapshot_"));
+        } catch (IOException e) {
+            throw new NatsStreamingStoreException("Could not create snapshot dir", e);
+        }
+    }
+
+    /**
+     * Captures the FILE store ({@link NatsStreamingConfig#DIR}) into the target directory - existing content is replaced <br />
+     * Sealed message slices are hardlinked, all other files are copied in parallel. A running server is stopped for
+     * the capture and started again afterwards
+     *
+     * @param target snapshot directory
+     * @return snapshot directory for {@link NatsStreaming#restoreStore(Path)}
+     */
+    public synchronized Path snapshotStore(final Path target) {
+        final Path store = storeDir();
+        transferStore(store, target, "Snapshot");
+        return target;
+    }
+
+    /**
+     * Replaces the FILE store ({@link NatsStreamingConfig#DIR}) with the snapshot - the snapshot stays unchanged and can be restored again <br />
+     * A running server is stopped for the restore and started again from the restored state
+     *
+     * @param snapshot directory created by {@link NatsStreaming#snapshotStore()}
+     * @return {@link NatsStreaming}
+     */
+    public synchronized NatsStreaming restoreStore(final Path snapshot) {
+        if (!Files.isDirectory(snapshot)) {
+            throw new NatsStreamingStoreException("Snapshot not found [" + snapshot + "]");
         }
+        transferStore(snapshot, storeDir(), "Restore");
+        return this;
+    }
+
+    protected void transferStore(final Path source, final Path target, final String action) {
+        final boolean running = isRunning();
+        final long started = System.nanoTime();
+        if (running) {
+            shutdown();
+        }
+        try {
+            deleteRecursive(target);
+            final int linked = copyStore(source, target);
+            logger.info(() -> format("%s [%s] from [%s] to [%s] linked [%s] files in [%s ms]", action, name, source, target, linked, (System.nanoTime() - started) / 1_000_000));
+        } catch (IOException e) {
+            throw new NatsStreamingStoreException(action + " failed from [" + source + "] to [" + target + "]", e);
+        } finally {
+            if (running) {
+                restart();
+            }
+        }
+    }
+
+    /**
+     * @return FILE store directory
+     * @throws NatsStreamingStoreException if the server has no FILE store with {@link NatsStreamingConfig#DIR}
+     */
+    public Path storeDir() {
+        if (!"FILE".equalsIgnoreCase(getValue(STORE)) || !isNotEmpty(getValue(DIR))) {
+            throw new NatsStreamingStoreException(format("[%s] has no FILE store with [%s]", name, DIR.name()));
+        }
+        return Paths.get(getValue(DIR));
+    }
+
+    /**
+     * Registers a listener for each log line of the server process - independent of the java log level <br />
+     * Listeners added before {@link NatsStreaming#start()} also receive the startup logs
+     *
+     * @param listener log line consumer
+     * @return {@link NatsStreaming}
+     */
+    public NatsStreaming addLogListener(final Consumer<String> listener) {
+        logListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @param listener log line consumer to remove
+     * @return {@link NatsStreaming}
+     */
+    public NatsStreaming removeLogListener(final Consumer<String> listener) {
+        logListeners.remove(listener);
         return this;
     }
 
@@ -175,6 +502,14 @@ public class NatsStreaming implements NatsInterface {
         return ofNullable(terminal.get()).map(Terminal::process).orElse(null);
     }
 
+    /**
+     * @return environment variables of the server process
+     * @see NatsStreamingConfig#NATS_ENV
+     */
+    public Map<String, String> env() {
+        return parseEnv(getValue(NATS_ENV, () -> null));
+    }
+
     @Override
     public String[] customArgs() {
         return ofNullable(getValue(NATS_ARGS, () -> null)).map(args -> args.split(ARGS_SEPARATOR)).orElseGet(() -> new String[0]);
@@ -249,6 +584,7 @@ public class NatsStreaming implements NatsInterface {
     @Override
     public void close() {
         shutdown();
+        deleteEphemeralStore();
     }
 
     /**
@@ -323,6 +659,105 @@ public class NatsStreaming implements NatsInterface {
         return configMap.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().value()));
     }
 
+    /**
+     * Allocates a fresh FILE store directory under {@link NatsStreamingConfig#NATS_EPHEMERAL_ROOT} which is deleted on
+     * {@link NatsStreaming#close()} <br />
+     * Called on construction if {@link NatsStreamingConfig#NATS_EPHEMERAL_STORE} == true. Stores left behind by crashed
+     * JVMs are deleted first, see {@link NatsStreaming#deleteStaleEphemeralStores(Path)}
+     *
+     * @return ephemeral store directory or null if {@link NatsStreamingConfig#DIR} is configured explicitly
+     */
+    public synchronized Path ephemeralStore() {
+        if (ephemeralDir != null) {
+            return ephemeralDir;
+        }
+        if (ofNullable(configMap.get(DIR)).filter(value -> value.source().ordinal() > AUTO.ordinal()).isPresent()) {
+            logger.warning(() -> format("Ephemeral store ignored for [%s] as [%s] is configured", name, DIR.name()));
+            return null;
+        }
+        final Path root = ephemeralRoot(getValue(NATS_EPHEMERAL_ROOT, () -> null));
+        final int stale = deleteStaleEphemeralStores(root);
+        try {
+            ephemeralDir = Files.createDirectories(root.resolve(format("%s_%s_%s", name.toLowerCase(), ProcessHandle.current().pid(), EPHEMERAL_COUNTER.incrementAndGet())));
+        } catch (IOException e) {
+            throw new NatsStreamingStoreException("Could not create ephemeral store in [" + root + "]", e);
+        }
+        addConfig(AUTO, STORE, "FILE");
+        addConfig(AUTO, DIR, ephemeralDir.toString());
+        logger.info(() -> format("Ephemeral store [%s] dir [%s] deleted stale [%s]", name, ephemeralDir, stale));
+        return ephemeralDir;
+    }
+
+    /**
+     * @return ephemeral store directory or null if {@link NatsStreamingConfig#NATS_EPHEMERAL_STORE} is not used
+     */
+    public Path ephemeralDir() {
+        return ephemeralDir;
+    }
+
+    /**
+     * Deletes the ephemeral stores of JVMs which are no longer running
+     *
+     * @param root ephemeral root e.g. /dev/shm/nats_ephemeral
+     * @return number of deleted stores
+     */
+    public static int deleteStaleEphemeralStores(final Path root) {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        final List<Path> stale;
+        try (final Stream<Path> list = Files.list(root)) {
+            stale = list.filter(dir -> {
+                final Matcher matcher = EPHEMERAL_NAME.matcher(dir.getFileName().toString());
+                return matcher.matches() && !ProcessHandle.of(Long.parseLong(matcher.group(1))).map(ProcessHandle::isAlive).orElse(false);
+            }).collect(Collectors.toList());
+        } catch (IOException e) {
+            return 0;
+        }
+        stale.parallelStream().forEach(dir -> ignoreException(run -> {
+            deleteRecursiveParallel(dir);
+            return run;
+        }));
+        return stale.size();
+    }
+
+    protected static Path ephemeralRoot(final String configured) {
+        final Path shm = Paths.get("/dev/shm");
+        final Path base = isNotEmpty(configured) ? Paths.get(configured) : (Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Paths.get(getEnv(TMP_DIR)));
+        return base.resolve(EPHEMERAL_DIR);
+    }
+
+    protected void deleteEphemeralStore() {
+        final Path dir = ephemeralDir;
+        if (dir != null && Files.exists(dir)) {
+            final long started = System.nanoTime();
+            try {
+                deleteRecursiveParallel(dir);
+                logger.info(() -> format("Deleted ephemeral store [%s] dir [%s] in [%s ms]", name, dir, (System.nanoTime() - started) / 1_000_000));
+            } catch (IOException e) {
+                logger.warning(() -> format("Could not delete ephemeral store [%s] dir [%s] cause [%s]", name, dir, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Sizes the file store and cluster log parameters from the host - explicit configs win <br />
+     * Called on construction if {@link NatsStreamingConfig#NATS_AUTO_TUNE} == true, the values are visible in {@link NatsStreaming#config()}
+     *
+     * @return tuned config values
+     * @see NatsAutoTune
+     */
+    public Map<NatsStreamingConfig, String> autoTune() {
+        final NatsAutoTune tune = NatsAutoTune.ofHost(
+                ofNullable(getValue(DIR, () -> null)).map(Path::of).orElse(null),
+                ofNullable(getValue(CLUSTER_LOG_PATH, () -> null)).map(Path::of).orElse(null)
+        );
+        final Map<NatsStreamingConfig, String> values = tune.values();
+        values.forEach((key, value) -> addConfig(AUTO, key, value));
+        logger.info(() -> format("Auto tuned [%s] cores [%s] memory [%s] fds [%s] tmpfs [%s/%s] values %s", name, tune.cores(), tune.memoryBytes(), tune.fdLimit(), tune.storeOnTmpfs(), tune.logOnTmpfs(), values));
+        return values;
+    }
+
     protected void setConfigFromNatsStreamingOptions(final io.nats.commons.NatsOptions natsOptions) {
         ofNullable(natsOptions.debug()).ifPresent(debug -> addConfig(DV, debug));
         ofNullable(natsOptions.configFile()).ifPresent(config -> addConfig(CONFIG, config));
@@ -395,9 +830,20 @@ public class NatsStreaming implements NatsInterface {
         setEnvConfig();
         setConfigFromProperties();
         addConfig(DSL, PID, pidFile().toString());
+        final Map<String, String> env = validateEnv(env());
+        if (!env.isEmpty() && OS != OS_WINDOWS) {
+            command.append("env ");
+        }
+        env.forEach((key, value) -> command.append(OS == OS_WINDOWS ? format("set %s=%s&& ", key, value) : format("%s=%s ", key, value)));
+        isolation(command);
         command.append(binary().toString());
+        final Path stanConfig = writeStanConfig();
+        if (stanConfig != null) {
+            command.append(" ").append(STAN_CONFIG.key()).append("=").append(stanConfig);
+        }
         configMap.forEach((key, mapValue) -> {
-            if (!key.name().startsWith(NATS_PREFIX) && mapValue != null && isNotEmpty(mapValue.value())) {
+            if (!key.name().startsWith(NATS_PREFIX) && mapValue != null && isNotEmpty(mapValue.value())
+                    && (stanConfig == null || key != STAN_CONFIG)) {
                 if (key.isWritableValue() || !"false".equals(mapValue.value())) {
                     command.append(" ");
                     command.append(key.key());
@@ -413,13 +859,190 @@ public class NatsStreaming implements NatsInterface {
         return command.toString();
     }
 
-    protected synchronized void shutdown() {
+    /**
+     * Applies config changes - a running server is restarted with the changes, a stopped server takes them for the
+     * next start. The server has no in place reload: nats-streaming-server ignores SIGHUP and runs its embedded NATS
+     * server without signal handling
+     *
+     * @param changes config changes - empty values unset the option
+     * @return true if the running server was restarted
+     */
+    public synchronized boolean reconfigure(final Map<NatsStreamingConfig, String> changes) {
+        final Map<NatsStreamingConfig, String> diff = new EnumMap<>(NatsStreamingConfig.class);
+        changes.forEach((key, value) -> {
+            final String target = value == null ? "" : value;
+            if (!target.equals(ofNullable(getValue(key, () -> null)).orElse(""))) {
+                diff.put(key, target);
+            }
+        });
+        final boolean running = isRunning();
+        diff.forEach((key, value) -> addConfig(DSL, key, value));
+        if (!diff.isEmpty()) {
+            command = null;
+        }
+        if (!running || diff.isEmpty()) {
+            return false;
+        }
+        logger.info(() -> format("Restarting [%s] for changes %s", name, diff.keySet()));
+        shutdown();
+        start();
+        return true;
+    }
+
+    /**
+     * @return store limits per channel
+     * @see NatsStreamingConfig#NATS_CHANNEL_LIMITS
+     */
+    public Map<String, Map<String, String>> channelLimits() {
+        return parseChannelLimits(getValue(NATS_CHANNEL_LIMITS, () -> null));
+    }
+
+    /**
+     * Writes the content of {@link NatsStreamingConfig#STAN_CONFIG} followed by the store limits of
+     * {@link NatsStreamingConfig#NATS_CHANNEL_LIMITS}
+     *
+     * @return generated stan config file or null if no channel limits are configured
+     * @throws IllegalArgumentException if the custom file defines its own store_limits or streaming block,
+     *                                  as the generated block would override or bypass it
+     */
+    protected Path writeStanConfig() {
+        final Map<String, Map<String, String>> limits = channelLimits();
+        limits.values().removeIf(Map::isEmpty);
+        if (limits.isEmpty()) {
+            return null;
+        }
+        final String nl = System.lineSeparator();
+        final Path file = pidFile().resolveSibling(port() + "_stan.conf");
+        final StringBuilder conf = new StringBuilder();
+        try {
+            final Path custom = ofNullable(getValue(STAN_CONFIG, () -> null)).filter(NatsUtils::isNotEmpty).map(Path::of).orElse(null);
+            if (custom != null && !custom.equals(file)) {
+                final String content = Files.readString(custom);
+                final Matcher block = STAN_BLOCK.matcher(content);
+                if (block.find()) {
+                    throw new IllegalArgumentException(format("[%s] can not be combined with the [%s] block of [%s]", NATS_CHANNEL_LIMITS.name(), block.group(1), custom));
+                }
+                conf.append(content).append(nl);
+            }
+            conf.append("store_limits {").append(nl).append("  channels {").append(nl);
+            limits.forEach((channel, values) -> {
+                conf.append("    \"").append(channel).append("\": {").append(nl);
+                values.forEach((key, value) -> conf.append("      ").append(key).append(": ")
+                        .append(key.equals("max_age") || key.equals("max_inactivity") ? "\"" + value + "\"" : value).append(nl));
+                conf.append("    }").append(nl);
+            });
+            conf.append("  }").append(nl).append("}").append(nl);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, conf.toString());
+            return file;
+        } catch (IOException e) {
+            throw new NatsStreamingStartException(e);
+        }
+    }
+
+    protected void isolation(final StringBuilder command) {
+        ofNullable(getValue(NATS_NICE, () -> null)).filter(NatsUtils::isNotEmpty).ifPresent(nice -> {
+            if (OS == OS_WINDOWS) {
+                logger.warning(() -> format("[%s] is not supported on windows", NATS_NICE.name()));
+            } else {
+                command.append("nice -n ").append(parseInt(nice.trim())).append(" ");
+            }
+        });
+        ofNullable(getValue(NATS_CPU_SET, () -> null)).filter(NatsUtils::isNotEmpty).map(String::trim).ifPresent(cpus -> {
+            if (!CPU_LIST.matcher(cpus).matches()) {
+                throw new IllegalArgumentException("Invalid cpu list [" + cpus + "] for [" + NATS_CPU_SET.name() + "]");
+            } else if (OS != OS_LINUX) {
+                logger.warning(() -> format("[%s] is only supported on linux", NATS_CPU_SET.name()));
+            } else {
+                command.append("taskset -c ").append(cpus).append(" ");
+            }
+        });
+    }
+
+    /**
+     * Creates the cgroup v2 of the server with the limits of {@link NatsStreamingConfig#NATS_CGROUP_CPUS} and
+     * {@link NatsStreamingConfig#NATS_CGROUP_MEMORY} - skipped with a warning if cgroups are not writable <br />
+     * The start command joins the cgroup before it execs the server, so store recovery and startup are limited too
+     *
+     * @return cgroup directory or null if no limits are applied
+     */
+    protected Path createCgroup() {
+        final String cpus = getValue(NATS_CGROUP_CPUS, () -> null);
+        final String memory = getValue(NATS_CGROUP_MEMORY, () -> null);
+        if (!isNotEmpty(cpus) && !isNotEmpty(memory)) {
+            return null;
+        }
+        final Path group = CGROUP_ROOT.resolve(CGROUP_DIR).resolve(name.toLowerCase() + "_" + port());
+        try {
+            if (OS != OS_LINUX) {
+                throw new IOException("cgroups are only supported on linux");
+            }
+            enableControllers(CGROUP_ROOT);
+            Files.createDirectories(group);
+            enableControllers(group.getParent());
+            if (isNotEmpty(cpus)) {
+                Files.writeString(group.resolve("cpu.max"), Math.max(1000, (long) (Double.parseDouble(cpus.trim()) * CGROUP_PERIOD_US)) + " " + CGROUP_PERIOD_US);
+            }
+            if (isNotEmpty(memory)) {
+                Files.writeString(group.resolve("memory.max"), String.valueOf(Long.parseLong(memory.trim())));
+            }
+            logger.info(() -> format("Limited [%s] cgroup [%s] cpus [%s] memory [%s]", name, group, cpus, memory));
+            return group;
+        } catch (IOException | RuntimeException e) {
+            logger.warning(() -> format("Skipped cgroup limits of [%s] cause [%s]", name, e.getMessage()));
+            ignoreException(run -> {
+                Files.deleteIfExists(group);
+                return run;
+            });
+            return null;
+        }
+    }
+
+    /**
+     * @return cgroup directory of the running server or null if no cgroup limits are applied
+     */
+    public Path cgroup() {
+        return cgroup;
+    }
+
+    protected void deleteCgroup() {
+        final Path group = cgroup;
+        cgroup = null;
+        if (group != null) {
+            ignoreException(run -> {
+                Files.deleteIfExists(group);
+                return run;
+            });
+        }
+    }
+
+    protected static void enableControllers(final Path group) {
+        for (String controller : new String[]{"+cpu", "+memory"}) {
+            ignoreException(run -> {
+                Files.writeString(group.resolve("cgroup.subtree_control"), controller);
+                return run;
+            });
+        }
+    }
+
+    protected void shutdown() {
+        final boolean active = transition(STOPPING, STARTING, READY, FAILED);
+        if (!active && state.get() == STOPPING) {
+            if (!await(() -> state.get() != STOPPING, timeoutMs * 2)) {
+                logger.warning(() -> format("[%s] is still stopping after [%s ms]", name, timeoutMs * 2));
+            }
+            return;
+        }
+        if (active && !await(() -> starts.get() == 0, timeoutMs)) {
+            logger.warning(() -> format("[%s] is still starting after [%s ms]", name, timeoutMs));
+        }
         try {
             sendStopSignal();
             waitForShutDown(timeoutMs);
-            if (terminal.get() != null) {
-                terminal.get().process().destroy();
-                terminal.get().process().waitFor();
+            final Process process = process();
+            if (process != null) {
+                process.destroy();
+                process.waitFor();
             }
         } catch (InterruptedException ignored) {
             logger.warning(() -> format("Could not find process to stop [%s]", name));
@@ -430,8 +1053,13 @@ public class NatsStreaming implements NatsInterface {
                 logger.info(() -> format("Stopped [%s]", name));
             }
             terminal.set(null);
+            deleteCgroup();
+            deletePidFile();
+            deleteStanConfig();
+            if (active) {
+                transition(STOPPED, STOPPING);
+            }
         }
-        deletePidFile();
     }
 
     protected void sendStopSignal() {
@@ -459,17 +1087,29 @@ public class NatsStreaming implements NatsInterface {
         });
     }
 
-    protected void startProcess(final String command) {
-        terminal.set(new Terminal()
+    protected void deleteStanConfig() {
+        ignoreException(run -> {
+            Files.deleteIfExists(pidFile().resolveSibling(port() + "_stan.conf"));
+            return run;
+        });
+    }
+
+    protected Terminal startProcess(final String command) {
+        final Terminal spawned = new Terminal()
                 .timeoutMs(timeoutMs)
                 .breakOnError(false)
-                .consumerErrorStream(logger::info)
+                .consumerErrorStream(line -> {
+                    logger.info(line);
+                    logListeners.forEach(listener -> listener.accept(line));
+                })
                 .consumerInfoStream(serve -> {
                     logger.severe(serve);
                     terminal.set(null);
+                    transition(FAILED, STARTING, READY);
                 })
-                .execute(command, null)
-        );
+                .execute(command, null);
+        terminal.set(spawned);
+        return spawned;
     }
 
     @Override
@@ -478,6 +1118,7 @@ public class NatsStreaming implements NatsInterface {
                 "name=" + name +
                 ", pid='" + pid() + '\'' +
                 ", port=" + port() +
+                ", state=" + state.get() +
                 ", configs=" + configMap.size() +
                 '}';
     }
@@ -0,0 +1,658 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.model.PartitionResult;
+import berlin.yuna.natsserver.model.RollingRestartResult;
+import berlin.yuna.natsserver.model.exception.NatsStreamingStartException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTERED;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_LOG_PATH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_NODE_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_PEERS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.HTTP_PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_ARGS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_AUTOSTART;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_BINARY_PATH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_CPU_SET;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.ROUTES;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.ARGS_SEPARATOR;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_CLUSTER_ID;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Clustered (Raft) fleet of {@link NatsStreaming} nodes <br />
+ * Client, route and monitoring ports are reserved in one batch, peers and routes are generated for all nodes. The
+ * nodes boot in parallel and {@link NatsStreamingCluster#start()} returns as soon as a leader is elected, detected
+ * via the monitoring endpoint /streaming/serverz. {@link NatsStreamingCluster#rollingRestart(Map)} applies config
+ * changes one node at a time while a background probe client measures the availability. With
+ * {@link NatsStreamingCluster#relayed(boolean)} every route between two nodes runs through its own {@link NatsProxy}
+ * which allows network partitions {@link NatsStreamingCluster#partition(Collection)} and slow links.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsStreamingCluster implements AutoCloseable {
+
+    public static final String ROLE_LEADER = "Leader";
+    public static final String ROLE_FOLLOWER = "Follower";
+    protected static final Pattern ROLE = Pattern.compile("\"role\"\\s*:\\s*\"(\\w+)\"");
+    protected static final Pattern TOTAL_MSGS = Pattern.compile("\"total_msgs\"\\s*:\\s*(\\d+)");
+    protected static final Set<NatsStreamingConfig> NODE_KEYS = Set.of(PORT, CLUSTER, ROUTES, HTTP_PORT, CLUSTERED, CLUSTER_NODE_ID, CLUSTER_PEERS, CLUSTER_LOG_PATH, DIR, STORE, NATS_BINARY_PATH, NATS_ARGS, NATS_CPU_SET);
+
+    protected final NatsStreamingOptionsBuilder base;
+    protected final List<String> nodeIds = new ArrayList<>();
+    protected final List<NatsStreaming> nodes = new ArrayList<>();
+    protected final List<Map<NatsStreamingConfig, String>> nodeConfigs = new ArrayList<>();
+    protected final Map<String, NatsProxy> relays = new LinkedHashMap<>();
+    protected final Logger logger;
+    protected int size = 3;
+    protected Path dir;
+    protected boolean ownsDir;
+    protected long timeoutMs = 30000;
+    protected long warmupMs = 1000;
+    protected long probeTimeoutMs = 250;
+    protected String probeChannel = "cluster.probe";
+    protected boolean relayed;
+    protected int coresPerNode;
+    protected int firstCore;
+
+    /**
+     * @param base config shared by all nodes e.g. {@link NatsStreamingConfig#CLUSTER_ID}
+     */
+    public NatsStreamingCluster(final NatsStreamingOptionsBuilder base) {
+        this.base = base;
+        this.logger = ofNullable(base.logger()).orElseGet(() -> Logger.getLogger(NatsStreamingCluster.class.getSimpleName()));
+    }
+
+    public NatsStreamingCluster() {
+        this(natsStreamingBuilder());
+    }
+
+    /**
+     * @param size number of nodes (default: 3)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster size(final int size) {
+        this.size = Math.max(1, size);
+        return this;
+    }
+
+    /**
+     * @param dir root directory for stores and raft logs of all nodes (default: temporary directory which is deleted on close)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster dir(final Path dir) {
+        this.dir = dir;
+        return this;
+    }
+
+    /**
+     * @param timeoutMs max time for booting and leader election (default: 30000)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param warmupMs probe time before the first restart to measure the baseline rate (default: 1000)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster warmupMs(final long warmupMs) {
+        this.warmupMs = warmupMs;
+        return this;
+    }
+
+    /**
+     * @param probeTimeoutMs ack timeout of the probe client before it switches to the next node (default: 250)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster probeTimeoutMs(final long probeTimeoutMs) {
+        this.probeTimeoutMs = probeTimeoutMs;
+        return this;
+    }
+
+    /**
+     * @param probeChannel channel used by the probe client (default: cluster.probe)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster probeChannel(final String probeChannel) {
+        this.probeChannel = probeChannel;
+        return this;
+    }
+
+    /**
+     * @param relayed [true] == routes every node pair through its own {@link NatsProxy} and advertises an unreachable
+     *                cluster url, so that gossip can't create routes around the relays (default: false)
+     * @return self {@link NatsStreamingCluster}
+     */
+    public NatsStreamingCluster relayed(final boolean relayed) {
+        this.relayed = relayed;
+        return this;
+    }
+
+    /**
+     * Pins every server to its own cores so servers and load generator don't compete for the same cores
+     *
+     * @param coresPerNode cores per server (0 == no pinning, default: 0)
+     * @param firstCore    first core to assign - cores below are left to the load generator (default: 0)
+     * @return self {@link NatsStreamingCluster}
+     * @see NatsStreamingConfig#NATS_CPU_SET
+     */
+    public NatsStreamingCluster pinCores(final int coresPerNode, final int firstCore) {
+        this.coresPerNode = Math.max(0, coresPerNode);
+        this.firstCore = Math.max(0, firstCore);
+        return this;
+    }
+
+    /**
+     * Boots all nodes in parallel and waits for the leader election
+     *
+     * @return self {@link NatsStreamingCluster}
+     */
+    public synchronized NatsStreamingCluster start() {
+        if (!nodes.isEmpty()) {
+            return this;
+        }
+        final long started = System.nanoTime();
+        try {
+            if (dir == null) {
+                dir = Files.createTempDirectory("nats_cluster_");
+                ownsDir = true;
+            }
+            final NatsStreaming prototype = natsStreamingBuilder().configMap(base.configMap()).autostart(false).logger(logger).nats();
+            prototype.downloadNats();
+            final List<Integer> ports = NatsUtils.reservePorts(size * (relayed ? 4 : 3));
+            final List<String> cpuSets = coresPerNode > 0 ? NatsUtils.cpuSets(size, coresPerNode, firstCore) : List.of();
+            IntStream.range(0, size).forEach(i -> nodeIds.add("node-" + i));
+            for (int i = 0; i < size; i++) {
+                final Map<NatsStreamingConfig, String> config = new EnumMap<>(NatsStreamingConfig.class);
+                config.putAll(base.configMap());
+                config.put(NATS_BINARY_PATH, prototype.binary().toString());
+                config.put(PORT, String.valueOf(ports.get(i)));
+                config.put(CLUSTER, "nats://localhost:" + ports.get(size + i));
+                config.put(HTTP_PORT, String.valueOf(ports.get(2 * size + i)));
+                final int self = i;
+                config.put(ROUTES, IntStream.range(0, size).filter(n -> n != self).mapToObj(n -> relayed
+                        ? relay(self, n, ports.get(size + n)).url()
+                        : "nats://localhost:" + ports.get(size + n)
+                ).collect(Collectors.joining(",")));
+                if (relayed) {
+                    config.put(NATS_ARGS, ofNullable(config.get(NATS_ARGS)).map(args -> args + ARGS_SEPARATOR).orElse("") + "--cluster_advertise=localhost:" + ports.get(3 * size + i));
+                }
+                if (!cpuSets.isEmpty()) {
+                    config.put(NATS_CPU_SET, cpuSets.get(i));
+                }
+                config.put(CLUSTERED, "true");
+                config.put(CLUSTER_NODE_ID, nodeIds.get(i));
+                config.put(CLUSTER_PEERS, nodeIds.stream().filter(id -> !id.equals(nodeIds.get(self))).collect(Collectors.joining(",")));
+                config.putIfAbsent(STORE, "FILE");
+                config.put(DIR, dir.resolve(nodeIds.get(i)).resolve("store").toString());
+                config.put(CLUSTER_LOG_PATH, dir.resolve(nodeIds.get(i)).resolve("raft").toString());
+                nodeConfigs.add(config);
+                nodes.add(node(i));
+            }
+            NatsUtils.parallel(nodes.stream().map(node -> (Runnable) node::start).collect(Collectors.toList()));
+            final NatsStreaming leader = awaitLeader(timeoutMs);
+            logger.info(() -> format("Started cluster [%s] nodes leader [%s] in [%s ms]", size, nodeId(leader), (System.nanoTime() - started) / 1_000_000));
+        } catch (Exception e) {
+            close();
+            throw e instanceof NatsStreamingStartException ? (NatsStreamingStartException) e : new NatsStreamingStartException(e);
+        }
+        return this;
+    }
+
+    /**
+     * @return nodes in node id order
+     */
+    public List<NatsStreaming> nodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @param nodeId raft node id e.g. node-0
+     * @return node or null if there is no node with this id
+     */
+    public NatsStreaming node(final String nodeId) {
+        final int index = nodeIds.indexOf(nodeId);
+        return index < 0 ? null : nodes.get(index);
+    }
+
+    /**
+     * @param node cluster node
+     * @return raft node id of the node
+     */
+    public String nodeId(final NatsStreaming node) {
+        final int index = nodes.indexOf(node);
+        return index < 0 ? null : nodeIds.get(index);
+    }
+
+    public List<String> nodeIds() {
+        return Collections.unmodifiableList(nodeIds);
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * @return client urls of all nodes, comma separated
+     */
+    public String urls() {
+        return nodes.stream().map(node -> "nats://localhost:" + node.port()).collect(Collectors.joining(","));
+    }
+
+    /**
+     * @param from node id of the soliciting node
+     * @param to   node id of the target node
+     * @return relay of the route or null if the cluster is not {@link #relayed(boolean)}
+     */
+    public NatsProxy relay(final String from, final String to) {
+        return relays.get(from + "->" + to);
+    }
+
+    public Map<String, NatsProxy> relays() {
+        return Collections.unmodifiableMap(relays);
+    }
+
+    /**
+     * Cuts all routes between the given nodes and the rest of the cluster - routes within both sides stay up
+     *
+     * @param minority node ids of one side of the partition
+     * @return self {@link NatsStreamingCluster}
+     */
+    public synchronized NatsStreamingCluster partition(final Collection<String> minority) {
+        if (relays.isEmpty()) {
+            throw new IllegalStateException("Partitions require a started cluster with relayed routes");
+        }
+        final Set<String> side = new TreeSet<>(minority);
+        if (side.isEmpty() || side.size() >= nodeIds.size() || !nodeIds.containsAll(side)) {
+            throw new IllegalArgumentException("Invalid partition " + side + " of nodes " + nodeIds);
+        }
+        relays.forEach((key, relay) -> {
+            final String[] pair = key.split("->");
+            relay.blocked(side.contains(pair[0]) != side.contains(pair[1]));
+        });
+        logger.info(() -> format("Partitioned %s from the cluster", side));
+        return this;
+    }
+
+    /**
+     * Reconnects all routes after {@link #partition(Collection)}
+     *
+     * @return self {@link NatsStreamingCluster}
+     */
+    public synchronized NatsStreamingCluster heal() {
+        relays.values().forEach(relay -> relay.blocked(false));
+        return this;
+    }
+
+    /**
+     * Partitions the cluster while a background probe client publishes and measures the leader election of the
+     * majority, the client stall and the catch up time of the minority after healing
+     *
+     * @param minority node ids to cut off from the majority
+     * @param holdMs   duration of the partition - at least until the majority elected a leader
+     * @return {@link PartitionResult}
+     */
+    public synchronized PartitionResult measurePartition(final Collection<String> minority, final long holdMs) {
+        final Set<String> side = new TreeSet<>(minority);
+        final String oldLeader = nodeId(leader());
+        final List<NatsStreaming> majority = nodes.stream().filter(node -> !side.contains(nodeId(node))).collect(Collectors.toList());
+        final Map<String, Double> catchUpMs = new LinkedHashMap<>();
+        final AvailabilityProbe probe = new AvailabilityProbe();
+        final double electionMs;
+        try {
+            NatsUtils.sleep(warmupMs);
+            final long partitioned = System.nanoTime();
+            partition(side);
+            final NatsStreaming leader = awaitLeader(majority, partitioned + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+            electionMs = (System.nanoTime() - partitioned) / 1_000_000d;
+            NatsUtils.sleep(holdMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - partitioned));
+            heal();
+            final long healed = System.nanoTime();
+            final long deadline = healed + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            final long target = totalMsgs(leader);
+            for (String id : side) {
+                awaitTotalMsgs(node(id), target, deadline);
+                catchUpMs.put(id, (System.nanoTime() - healed) / 1_000_000d);
+            }
+        } catch (TimeoutException e) {
+            heal();
+            throw new NatsStreamingStartException(e);
+        } finally {
+            probe.close();
+        }
+        return new PartitionResult(side, oldLeader != null && side.contains(oldLeader), electionMs, probe.maxGapMs, probe.totalGapMs, probe.ok.get(), probe.failed.get(), catchUpMs);
+    }
+
+    /**
+     * @param node cluster node
+     * @return raft role from the monitoring endpoint [Leader, Follower, Candidate] or null if not reachable
+     */
+    public String role(final NatsStreaming node) {
+        try {
+            final Matcher matcher = ROLE.matcher(monitoring(node, "/streaming/serverz"));
+            return matcher.find() ? matcher.group(1) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return current leader or null if there is none
+     */
+    public NatsStreaming leader() {
+        return nodes.stream().filter(node -> ROLE_LEADER.equalsIgnoreCase(role(node))).findFirst().orElse(null);
+    }
+
+    /**
+     * @param timeoutMs max wait time
+     * @return elected leader
+     * @throws TimeoutException if no leader was elected within the timeout
+     */
+    public NatsStreaming awaitLeader(final long timeoutMs) throws TimeoutException {
+        return awaitLeader(nodes, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    /**
+     * @param node cluster node
+     * @return stored messages over all channels from the monitoring endpoint or -1 if not reachable
+     */
+    public long totalMsgs(final NatsStreaming node) {
+        try {
+            final Matcher matcher = TOTAL_MSGS.matcher(monitoring(node, "/streaming/serverz"));
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Restarts one node after another with the config changes - followers first, the leader last <br />
+     * Each restarted node has to rejoin as leader or follower and to store all messages the leader had at the rejoin
+     * (monitoring total_msgs) before the next node is restarted. A background probe client publishes during the whole
+     * time and switches to the next node on failure.
+     *
+     * @param changes config changes for all nodes e.g. {@link NatsStreamingConfig#CLUSTER_LOG_CACHE_SIZE} - node specific keys like ports and ids are not allowed
+     * @return {@link RollingRestartResult} with restart, catch up and availability metrics
+     */
+    public synchronized RollingRestartResult rollingRestart(final Map<NatsStreamingConfig, String> changes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("Cluster is not started");
+        }
+        changes.keySet().stream().filter(NODE_KEYS::contains).findFirst().ifPresent(key -> {
+            throw new IllegalArgumentException("Node specific config [" + key + "] can't be changed by a rolling restart");
+        });
+        final long started = System.nanoTime();
+        final NatsStreaming leader = leader();
+        final List<Integer> order = IntStream.range(0, nodes.size()).boxed()
+                .sorted((a, b) -> Boolean.compare(nodes.get(a) == leader, nodes.get(b) == leader))
+                .collect(Collectors.toList());
+        final Map<String, Double> restartMs = new LinkedHashMap<>();
+        final Map<String, Double> catchUpMs = new LinkedHashMap<>();
+        final Map<String, Double> restartRates = new LinkedHashMap<>();
+        final AvailabilityProbe probe = new AvailabilityProbe();
+        final double baselineRate;
+        try {
+            NatsUtils.sleep(warmupMs);
+            baselineRate = probe.ok.get() / seconds(System.nanoTime() - probe.started);
+            for (int index : order) {
+                final String id = nodeIds.get(index);
+                final long okBefore = probe.ok.get();
+                final long stopped = System.nanoTime();
+                final long deadline = stopped + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                nodes.get(index).close();
+                nodeConfigs.get(index).putAll(changes);
+                final NatsStreaming node = node(index);
+                nodes.set(index, node);
+                node.start();
+                awaitRejoin(node, deadline);
+                final long rejoined = System.nanoTime();
+                awaitCatchUp(node, deadline);
+                final long caughtUp = System.nanoTime();
+                restartMs.put(id, (rejoined - stopped) / 1_000_000d);
+                catchUpMs.put(id, (caughtUp - rejoined) / 1_000_000d);
+                restartRates.put(id, (probe.ok.get() - okBefore) / seconds(caughtUp - stopped));
+                logger.info(() -> format("Restarted [%s] rejoin [%.0f ms] catch up [%.0f ms]", id, restartMs.get(id), catchUpMs.get(id)));
+            }
+        } catch (TimeoutException e) {
+            throw new NatsStreamingStartException(e);
+        } finally {
+            probe.close();
+        }
+        return new RollingRestartResult(restartMs, catchUpMs, restartRates, baselineRate, probe.ok.get(), probe.failed.get(), probe.maxGapMs, probe.totalGapMs, System.nanoTime() - started);
+    }
+
+    /**
+     * @param node cluster node
+     * @param path monitoring path e.g. /streaming/serverz
+     * @return response body
+     * @throws IOException if the endpoint is not reachable
+     */
+    public String monitoring(final NatsStreaming node, final String path) throws IOException {
+        final int index = nodes.indexOf(node);
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + nodeConfigs.get(index).get(HTTP_PORT) + path).openConnection();
+        connection.setConnectTimeout(1000);
+        connection.setReadTimeout(1000);
+        try (final InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stops all nodes in parallel and deletes the temporary directory
+     */
+    @Override
+    public synchronized void close() {
+        NatsUtils.parallel(nodes.stream().map(node -> (Runnable) node::close).collect(Collectors.toList()));
+        relays.values().forEach(NatsProxy::close);
+        relays.clear();
+        nodes.clear();
+        nodeIds.clear();
+        nodeConfigs.clear();
+        if (ownsDir) {
+            final Path root = dir;
+            NatsUtils.ignoreException(run -> {
+                NatsUtils.deleteRecursive(root);
+                return run;
+            });
+            dir = null;
+            ownsDir = false;
+        }
+    }
+
+    protected NatsStreaming node(final int index) {
+        final Map<NatsStreamingConfig, String> config = new EnumMap<>(nodeConfigs.get(index));
+        config.put(NATS_AUTOSTART, "false");
+        return natsStreamingBuilder().configMap(config).logger(ofNullable(base.logger()).orElseGet(() -> Logger.getLogger("NatsStreaming[" + nodeIds.get(index) + "]"))).nats();
+    }
+
+    protected void awaitRejoin(final NatsStreaming node, final long deadline) throws TimeoutException {
+        while (System.nanoTime() < deadline) {
+            final String role = role(node);
+            if (ROLE_LEADER.equalsIgnoreCase(role) || ROLE_FOLLOWER.equalsIgnoreCase(role)) {
+                return;
+            }
+            NatsUtils.sleep(10);
+        }
+        throw new TimeoutException("Node [" + nodeId(node) + "] did not rejoin within [" + timeoutMs + "] ms");
+    }
+
+    protected void awaitCatchUp(final NatsStreaming node, final long deadline) throws TimeoutException {
+        long target = -1;
+        while (target < 0 && System.nanoTime() < deadline) {
+            target = ofNullable(leader()).map(this::totalMsgs).orElse(-1L);
+            if (target < 0) {
+                NatsUtils.sleep(10);
+            }
+        }
+        awaitTotalMsgs(node, target, deadline);
+    }
+
+    protected void awaitTotalMsgs(final NatsStreaming node, final long target, final long deadline) throws TimeoutException {
+        while (System.nanoTime() < deadline) {
+            if (target >= 0 && totalMsgs(node) >= target) {
+                return;
+            }
+            NatsUtils.sleep(10);
+        }
+        throw new TimeoutException("Node [" + nodeId(node) + "] did not catch up within [" + timeoutMs + "] ms");
+    }
+
+    protected NatsStreaming awaitLeader(final List<NatsStreaming> candidates, final long deadline) throws TimeoutException {
+        while (System.nanoTime() < deadline) {
+            final NatsStreaming leader = candidates.stream().filter(node -> ROLE_LEADER.equalsIgnoreCase(role(node))).findFirst().orElse(null);
+            if (leader != null) {
+                return leader;
+            }
+            NatsUtils.sleep(10);
+        }
+        throw new TimeoutException("No leader elected within [" + timeoutMs + "] ms among " + candidates.stream().map(this::nodeId).collect(Collectors.toList()));
+    }
+
+    protected NatsProxy relay(final int from, final int to, final int routePort) {
+        final NatsProxy relay = new NatsProxy("localhost", routePort).start();
+        relays.put(nodeIds.get(from) + "->" + nodeIds.get(to), relay);
+        return relay;
+    }
+
+    protected StanClient probeClient(final int index) {
+        final Map<NatsStreamingConfig, String> config = nodeConfigs.get(index);
+        final String clientId = "cluster-probe-" + System.nanoTime();
+        return new StanClient(new NatsConnection(
+                "localhost",
+                Integer.parseInt(config.get(PORT)),
+                clientId,
+                config.get(USER),
+                config.get(PASS),
+                config.get(AUTH),
+                DEFAULT_BUFFER_SIZE,
+                probeTimeoutMs
+        ), ofNullable(config.get(CLUSTER_ID)).orElse(DEFAULT_CLUSTER_ID), clientId, 1, true);
+    }
+
+    protected static double seconds(final long nanos) {
+        return Math.max(1, nanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "NatsStreamingCluster{" +
+                "size=" + size +
+                ", nodes=" + nodeIds +
+                ", relayed=" + relayed +
+                ", dir=" + dir +
+                '}';
+    }
+
+    /**
+     * Publishes synchronously in a loop and records the gaps between acknowledged publishes around failures
+     */
+    protected class AvailabilityProbe implements AutoCloseable {
+
+        protected final AtomicLong ok = new AtomicLong(0);
+        protected final AtomicLong failed = new AtomicLong(0);
+        protected final long started = System.nanoTime();
+        protected final Thread thread;
+        protected volatile boolean running = true;
+        protected double maxGapMs;
+        protected double totalGapMs;
+
+        protected AvailabilityProbe() {
+            thread = new Thread(this::run, "cluster-probe");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        protected void run() {
+            final byte[] payload = "probe".getBytes(UTF_8);
+            int index = 0;
+            StanClient client = null;
+            long lastOk = System.nanoTime();
+            boolean failing = false;
+            while (running) {
+                try {
+                    if (client == null) {
+                        client = probeClient(index);
+                    }
+                    client.publish(probeChannel, payload);
+                    final long now = System.nanoTime();
+                    if (failing) {
+                        final double gapMs = (now - lastOk) / 1_000_000d;
+                        maxGapMs = Math.max(maxGapMs, gapMs);
+                        totalGapMs += gapMs;
+                        failing = false;
+                    }
+                    lastOk = now;
+                    ok.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    failing = true;
+                    close(client);
+                    client = null;
+                    index = (index + 1) % nodeConfigs.size();
+                    NatsUtils.sleep(1);
+                }
+            }
+            close(client);
+        }
+
+        protected void close(final StanClient client) {
+            if (client != null) {
+                NatsUtils.ignoreException(run -> {
+                    client.close();
+                    return run;
+                });
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            try {
+                thread.join(probeTimeoutMs * 4 + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.LatencyHistogram;
+import berlin.yuna.natsserver.model.ReplayResult;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_CLUSTER_ID;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+import static berlin.yuna.natsserver.logic.StanProtocol.PUB_DATA;
+import static berlin.yuna.natsserver.logic.StanProtocol.PUB_SUBJECT;
+import static berlin.yuna.natsserver.logic.StanProtocol.bytes;
+import static berlin.yuna.natsserver.logic.StanProtocol.decode;
+import static berlin.yuna.natsserver.logic.StanProtocol.string;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Replays the publishes of a {@link NatsTrafficTap} capture against a {@link NatsStreaming} <br />
+ * Streaming publishes (_STAN.pub.*) are decoded and published again with async acks to their original channel, core
+ * publishes are sent as they are - internal subjects (_STAN.*, _INBOX.*) are skipped. All recorded connections are
+ * replayed through one client which keeps the publish order. Publishes are scheduled on the recorded time line
+ * divided by the speed factor, the lag is the delay of each publish behind its schedule.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsTrafficReplay {
+
+    protected static final String STAN_PUB_PREFIX = "_STAN.pub.";
+    protected static final String[] INTERNAL_PREFIXES = {"_STAN.", "_INBOX."};
+    protected static final long SPIN_NS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    protected final Path capture;
+    protected double speed = 1;
+    protected boolean core = true;
+    protected int maxPubAcksInFlight = DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+    protected long timeoutMs = 60000;
+
+    /**
+     * @param capture capture file or directory of a {@link NatsTrafficTap}
+     */
+    public NatsTrafficReplay(final Path capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * @param speed time line factor - 1 == original timing, 10 == ten times faster, 0 == as fast as possible (default: 1)
+     * @return self {@link NatsTrafficReplay}
+     */
+    public NatsTrafficReplay speed(final double speed) {
+        this.speed = Math.max(0, speed);
+        return this;
+    }
+
+    /**
+     * @return self {@link NatsTrafficReplay} without timing
+     */
+    public NatsTrafficReplay asFastAsPossible() {
+        return speed(0);
+    }
+
+    /**
+     * @param core [true] == replays core NATS publishes too, [false] == only streaming publishes (default: true)
+     * @return self {@link NatsTrafficReplay}
+     */
+    public NatsTrafficReplay core(final boolean core) {
+        this.core = core;
+        return this;
+    }
+
+    /**
+     * @param maxPubAcksInFlight window of unacknowledged streaming publishes (default: 16384)
+     * @return self {@link NatsTrafficReplay}
+     */
+    public NatsTrafficReplay maxPubAcksInFlight(final int maxPubAcksInFlight) {
+        this.maxPubAcksInFlight = Math.max(1, maxPubAcksInFlight);
+        return this;
+    }
+
+    /**
+     * @param timeoutMs max wait for the outstanding acks after the last publish (default: 60000)
+     * @return self {@link NatsTrafficReplay}
+     */
+    public NatsTrafficReplay timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param target started server to replay against
+     * @return {@link ReplayResult} with throughput and lag
+     */
+    public ReplayResult replay(final NatsStreaming target) {
+        final String clientId = "replay-" + System.nanoTime();
+        final NatsConnection connection = new NatsConnection(
+                "localhost",
+                target.port(),
+                clientId,
+                target.getValue(USER, () -> null),
+                target.getValue(PASS, () -> null),
+                target.getValue(AUTH, () -> null),
+                DEFAULT_BUFFER_SIZE,
+                timeoutMs
+        );
+        try (final StanClient client = new StanClient(connection, target.getValue(CLUSTER_ID, () -> DEFAULT_CLUSTER_ID), clientId, maxPubAcksInFlight, true)) {
+            return replay(client);
+        }
+    }
+
+    /**
+     * @param client connected streaming client to replay with
+     * @return {@link ReplayResult} with throughput and lag
+     */
+    public ReplayResult replay(final StanClient client) {
+        return replay(new Schedule(client.connection(), client));
+    }
+
+    /**
+     * Replays core publishes only - streaming publishes are skipped
+     *
+     * @param connection connected NATS connection to replay with
+     * @return {@link ReplayResult} with throughput and lag
+     */
+    public ReplayResult replay(final NatsConnection connection) {
+        return replay(new Schedule(connection, null));
+    }
+
+    protected ReplayResult replay(final Schedule schedule) {
+        final Map<Long, PubReader> readers = new HashMap<>();
+        NatsTrafficTap.read(capture, (offsetNs, connection, toServer, data) -> {
+            if (toServer) {
+                readers.computeIfAbsent(connection, id -> new PubReader(schedule)).read(offsetNs, data);
+            }
+        });
+        schedule.flush();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (schedule.pendingAcks() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        final long end = System.nanoTime();
+        return new ReplayResult(
+                schedule.messages,
+                schedule.streaming,
+                schedule.bytes,
+                schedule.errors.get() + schedule.pendingAcks(),
+                schedule.lastOffset - schedule.firstOffset,
+                schedule.messages == 0 ? 0 : end - schedule.startNs,
+                speed,
+                schedule.lag
+        );
+    }
+
+    protected static boolean internal(final String subject) {
+        for (String prefix : INTERNAL_PREFIXES) {
+            if (subject.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends the publishes at their scheduled time and counts them
+     */
+    protected class Schedule {
+
+        protected final NatsConnection connection;
+        protected final StanClient client;
+        protected final LatencyHistogram lag = new LatencyHistogram();
+        protected final AtomicLong errors = new AtomicLong(0);
+        protected long firstOffset = -1;
+        protected long lastOffset;
+        protected long startNs;
+        protected long messages;
+        protected long streaming;
+        protected long bytes;
+
+        protected Schedule(final NatsConnection connection, final StanClient client) {
+            this.connection = connection;
+            this.client = client;
+        }
+
+        protected void flush() {
+            if (client != null) {
+                client.flush();
+            } else {
+                connection.flush();
+            }
+        }
+
+        protected int pendingAcks() {
+            return client == null ? 0 : client.pendingAcks();
+        }
+
+        protected void publish(final long offsetNs, final String subject, final byte[] payload) {
+            final boolean stan = subject.startsWith(STAN_PUB_PREFIX);
+            if (stan ? client == null : !core || internal(subject)) {
+                return;
+            }
+            if (firstOffset < 0) {
+                firstOffset = offsetNs;
+                startNs = System.nanoTime();
+            }
+            lastOffset = offsetNs;
+            final long due = speed <= 0 ? System.nanoTime() : startNs + (long) ((offsetNs - firstOffset) / speed);
+            waitUntil(due);
+            if (stan) {
+                final Map<Integer, Object> pubMsg = decode(payload);
+                final byte[] data = bytes(pubMsg, PUB_DATA);
+                client.publishAsync(string(pubMsg, PUB_SUBJECT), data).whenComplete((guid, error) -> {
+                    if (error != null) {
+                        errors.incrementAndGet();
+                    }
+                });
+                streaming++;
+                bytes += data.length;
+            } else {
+                connection.publish(subject, payload);
+                bytes += payload.length;
+            }
+            messages++;
+            if (speed > 0) {
+                lag.record(System.nanoTime() - due);
+            }
+        }
+
+        protected void waitUntil(final long due) {
+            long remaining = due - System.nanoTime();
+            if (remaining > SPIN_NS) {
+                flush();
+            }
+            while (remaining > 0) {
+                if (remaining > SPIN_NS) {
+                    LockSupport.parkNanos(remaining - SPIN_NS);
+                } else {
+                    Thread.onSpinWait();
+                }
+                remaining = due - System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Collects the PUB operations of one recorded client connection across capture records
+     */
+    protected static class PubReader {
+
+        protected final Schedule schedule;
+        protected final byte[] line = new byte[NatsTrafficTap.MAX_LINE];
+        protected int length;
+        protected long skip;
+        protected String subject;
+        protected byte[] payload;
+        protected int filled;
+        protected long offsetNs;
+
+        protected PubReader(final Schedule schedule) {
+            this.schedule = schedule;
+        }
+
+        protected void read(final long recordOffsetNs, final ByteBuffer data) {
+            while (data.hasRemaining()) {
+                if (payload != null) {
+                    final int count = Math.min(payload.length - filled, data.remaining());
+                    data.get(payload, filled, count);
+                    filled += count;
+                    if (filled == payload.length) {
+                        final byte[] complete = payload;
+                        payload = null;
+                        skip = 2;
+                        schedule.publish(offsetNs, subject, complete);
+                    }
+                } else if (skip > 0) {
+                    final int skipped = (int) Math.min(skip, data.remaining());
+                    data.position(data.position() + skipped);
+                    skip -= skipped;
+                } else {
+                    final byte b = data.get();
+                    if (b == '\n') {
+                        line(recordOffsetNs);
+                        length = 0;
+                    } else if (length < line.length) {
+                        line[length++] = b;
+                    }
+                }
+            }
+        }
+
+        protected void line(final long recordOffsetNs) {
+            final int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+            if (end < 4) {
+                return;
+            }
+            final String[] tokens = new String(line, 0, end, ISO_8859_1).trim().split("\\s+");
+            final String op = tokens[0].toUpperCase();
+            try {
+                if ("PUB".equals(op) && tokens.length >= 3) {
+                    subject = tokens[1];
+                    offsetNs = recordOffsetNs;
+                    payload = new byte[Integer.parseInt(tokens[tokens.length - 1])];
+                    filled = 0;
+                    if (payload.length == 0) {
+                        payload = null;
+                        skip = 2;
+                        schedule.publish(offsetNs, subject, new byte[0]);
+                    }
+                } else if ("HPUB".equals(op) && tokens.length >= 4) {
+                    skip = Long.parseLong(tokens[tokens.length - 1]) + 2;
+                }
+            } catch (NumberFormatException e) {
+                throw new NatsProtocolException("Invalid recorded operation [" + new String(line, 0, end, ISO_8859_1) + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsTrafficReplay{" +
+                "capture=" + capture +
+                ", speed=" + speed +
+                ", core=" + core +
+                '}';
+    }
+}
@@ -0,0 +1,465 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.ConnectionTraffic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Passive tap on the client port of a {@link NatsStreaming} built on a {@link NatsProxy} <br />
+ * Clients connect to {@link NatsTrafficTap#url()}. Per connection the tap keeps fixed memory aggregates
+ * ({@link ConnectionTraffic}): bytes, protocol op mix and payload size histograms. Payloads are only skipped by the
+ * protocol parser, never copied. The optional capture writes the raw traffic into rotating binary files:
+ * MAGIC "NATSTAP"+1 followed by records of [long offset ns][long connection][byte direction 1 == to server][int length][bytes]
+ * - big endian.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsTrafficTap implements NatsProxy.TrafficListener, AutoCloseable {
+
+    public static final byte[] MAGIC = {'N', 'A', 'T', 'S', 'T', 'A', 'P', 1};
+    public static final String CAPTURE_PREFIX = "tap-";
+    public static final String CAPTURE_SUFFIX = ".bin";
+    protected static final int HEADER_SIZE = Long.BYTES + Long.BYTES + 1 + Integer.BYTES;
+    protected static final int MAX_LINE = 4096;
+    protected static final String UNKNOWN_OP = "UNKNOWN";
+    protected static final String[] OPS = {"PUB", "HPUB", "SUB", "UNSUB", "MSG", "HMSG", "PING", "PONG", "CONNECT", "INFO", "+OK", "-ERR"};
+    protected static final byte[][] OP_BYTES = Arrays.stream(OPS).map(op -> op.getBytes(ISO_8859_1)).toArray(byte[][]::new);
+    protected static final Set<String> PAYLOAD_OPS = Set.of("PUB", "HPUB", "MSG", "HMSG");
+    protected static final Pattern CLIENT_NAME = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
+
+    protected final NatsProxy proxy;
+    protected final Map<Long, Connection> open = new ConcurrentHashMap<>();
+    protected final Deque<ConnectionTraffic> closed = new ConcurrentLinkedDeque<>();
+    protected final ConnectionTraffic retired = new ConnectionTraffic(0, System.currentTimeMillis());
+    protected final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+    protected final Deque<Path> captureFiles = new ArrayDeque<>();
+    protected volatile int maxClosed = 1024;
+    protected Path captureDir;
+    protected long maxFileBytes = 64L * 1024 * 1024;
+    protected int maxFiles = 8;
+    protected FileChannel captureFile;
+    protected long captureBytes;
+    protected int captureIndex;
+    protected long startNs = System.nanoTime();
+
+    /**
+     * Receives one captured record - the data view is only valid during this call
+     */
+    @FunctionalInterface
+    public interface CaptureHandler {
+        /**
+         * @param offsetNs   time since the capture start
+         * @param connection connection number
+         * @param toServer   [true] == client to server, [false] == server to client
+         * @param data       read only view on the captured bytes
+         */
+        void onRecord(long offsetNs, long connection, boolean toServer, ByteBuffer data);
+    }
+
+    /**
+     * @param nats target server - the port has to be known (started or configured)
+     */
+    public NatsTrafficTap(final NatsStreaming nats) {
+        this("localhost", nats.port());
+    }
+
+    /**
+     * @param host target host
+     * @param port target client port
+     */
+    public NatsTrafficTap(final String host, final int port) {
+        this.proxy = new NatsProxy(host, port).listener(this);
+    }
+
+    /**
+     * @param dir capture directory - enables the capture with the default rotation (64 MB x 8 files)
+     * @return self {@link NatsTrafficTap}
+     */
+    public NatsTrafficTap capture(final Path dir) {
+        return capture(dir, maxFileBytes, maxFiles);
+    }
+
+    /**
+     * @param dir          capture directory
+     * @param maxFileBytes file size after which a new file is started
+     * @param maxFiles     number of files to keep - the oldest file is deleted on rotation
+     * @return self {@link NatsTrafficTap}
+     */
+    public synchronized NatsTrafficTap capture(final Path dir, final long maxFileBytes, final int maxFiles) {
+        this.captureDir = dir;
+        this.maxFileBytes = Math.max(MAGIC.length + HEADER_SIZE, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        return this;
+    }
+
+    /**
+     * @param maxClosed number of closed connections to keep - older ones are only part of {@link #total()} (default: 1024)
+     * @return self {@link NatsTrafficTap}
+     */
+    public NatsTrafficTap maxClosed(final int maxClosed) {
+        this.maxClosed = Math.max(0, maxClosed);
+        return this;
+    }
+
+    /**
+     * @return self {@link NatsTrafficTap}
+     */
+    public NatsTrafficTap start() {
+        startNs = System.nanoTime();
+        proxy.start();
+        return this;
+    }
+
+    public NatsProxy proxy() {
+        return proxy;
+    }
+
+    public int port() {
+        return proxy.port();
+    }
+
+    /**
+     * @return nats url for clients which should be tapped
+     */
+    public String url() {
+        return proxy.url();
+    }
+
+    /**
+     * @return open and kept closed connections sorted by connection number
+     */
+    public List<ConnectionTraffic> connections() {
+        return Stream.concat(closed.stream(), open.values().stream().map(connection -> connection.traffic))
+                .sorted(Comparator.comparingLong(ConnectionTraffic::id))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param id connection number
+     * @return traffic of the connection or null if unknown or dropped
+     */
+    public ConnectionTraffic connection(final long id) {
+        return connections().stream().filter(traffic -> traffic.id() == id).findFirst().orElse(null);
+    }
+
+    /**
+     * @return traffic of all connections since start
+     */
+    public ConnectionTraffic total() {
+        final ConnectionTraffic result = new ConnectionTraffic(0, retired.openedAt()).add(retired);
+        connections().forEach(result::add);
+        return result;
+    }
+
+    /**
+     * @param limit max number of connections
+     * @return text table of the connections with the most bytes
+     */
+    public String report(final int limit) {
+        final StringBuilder result = new StringBuilder(String.format("%-6s %-24s %12s %12s %10s %10s %8s %8s%n", "id", "name", "bytes_in", "bytes_out", "msgs_in", "msgs_out", "p50_in", "p99_in"));
+        connections().stream()
+                .sorted(Comparator.comparingLong((ConnectionTraffic traffic) -> traffic.bytesIn() + traffic.bytesOut()).reversed())
+                .limit(limit)
+                .forEach(traffic -> result.append(String.format("%-6d %-24s %12d %12d %10d %10d %8d %8d%n",
+                        traffic.id(),
+                        traffic.name() == null ? "-" : traffic.name(),
+                        traffic.bytesIn(),
+                        traffic.bytesOut(),
+                        traffic.msgsIn(),
+                        traffic.msgsOut(),
+                        traffic.payloadsIn().percentile(50),
+                        traffic.payloadsIn().percentile(99)
+                )));
+        return result.toString();
+    }
+
+    @Override
+    public void onOpen(final long connection) {
+        open.put(connection, new Connection(new ConnectionTraffic(connection, System.currentTimeMillis())));
+    }
+
+    @Override
+    public void onData(final long connection, final boolean toTarget, final ByteBuffer data) {
+        final Connection state = open.get(connection);
+        if (state != null) {
+            state.traffic.recordBytes(toTarget, data.remaining());
+            if (captureDir != null) {
+                capture(connection, toTarget, data.duplicate());
+            }
+            (toTarget ? state.in : state.out).parse(data);
+        }
+    }
+
+    @Override
+    public void onClose(final long connection) {
+        final Connection state = open.remove(connection);
+        if (state != null) {
+            closed.add(state.traffic.closedAt(System.currentTimeMillis()));
+            while (closed.size() > maxClosed) {
+                final ConnectionTraffic dropped = closed.poll();
+                if (dropped != null) {
+                    retired.add(dropped);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the proxy and closes the capture file
+     */
+    @Override
+    public void close() {
+        proxy.close();
+        synchronized (this) {
+            NatsProxy.closeQuietly(captureFile);
+            captureFile = null;
+        }
+    }
+
+    /**
+     * Reads a capture file or all capture files of a directory in order
+     *
+     * @param source  capture file or directory
+     * @param handler receives all records
+     * @return number of records
+     */
+    public static long read(final Path source, final CaptureHandler handler) {
+        long records = 0;
+        try {
+            for (Path file : captureFiles(source)) {
+                records += readFile(file, handler);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read capture [" + source + "]", e);
+        }
+        return records;
+    }
+
+    /**
+     * @param source capture file or directory
+     * @return capture files in write order
+     * @throws IOException on read errors
+     */
+    public static List<Path> captureFiles(final Path source) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return List.of(source);
+        }
+        try (final Stream<Path> files = Files.list(source)) {
+            return files.filter(file -> {
+                final String name = file.getFileName().toString();
+                return name.startsWith(CAPTURE_PREFIX) && name.endsWith(CAPTURE_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    protected static long readFile(final Path file, final CaptureHandler handler) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < MAGIC.length || !Arrays.equals(readMagic(buffer, magic), MAGIC)) {
+                throw new IOException("Not a capture file [" + file + "]");
+            }
+            long records = 0;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                final long offsetNs = buffer.getLong();
+                final long connection = buffer.getLong();
+                final boolean toServer = buffer.get() == 1;
+                final int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                final ByteBuffer data = buffer.slice().limit(length);
+                handler.onRecord(offsetNs, connection, toServer, data.asReadOnlyBuffer());
+                buffer.position(buffer.position() + length);
+                records++;
+            }
+            return records;
+        }
+    }
+
+    protected static byte[] readMagic(final ByteBuffer buffer, final byte[] magic) {
+        buffer.get(magic);
+        return magic;
+    }
+
+    protected synchronized void capture(final long connection, final boolean toServer, final ByteBuffer data) {
+        try {
+            final int length = data.remaining();
+            if (captureFile == null || captureBytes + HEADER_SIZE + length > maxFileBytes) {
+                rotate();
+            }
+            header.clear();
+            header.putLong(System.nanoTime() - startNs).putLong(connection).put((byte) (toServer ? 1 : 0)).putInt(length).flip();
+            final ByteBuffer[] record = {header, data};
+            while (header.hasRemaining() || data.hasRemaining()) {
+                captureFile.write(record);
+            }
+            captureBytes += HEADER_SIZE + length;
+        } catch (IOException e) {
+            NatsProxy.closeQuietly(captureFile);
+            captureFile = null;
+            captureDir = null;
+        }
+    }
+
+    protected void rotate() throws IOException {
+        NatsProxy.closeQuietly(captureFile);
+        Files.createDirectories(captureDir);
+        final Path file = captureDir.resolve(String.format("%s%06d%s", CAPTURE_PREFIX, ++captureIndex, CAPTURE_SUFFIX));
+        captureFile = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        captureFile.write(ByteBuffer.wrap(MAGIC));
+        captureBytes = MAGIC.length;
+        captureFiles.add(file);
+        while (captureFiles.size() > maxFiles) {
+            Files.deleteIfExists(captureFiles.poll());
+        }
+    }
+
+    /**
+     * Traffic and protocol parsers of one connection
+     */
+    protected static class Connection {
+
+        protected final ConnectionTraffic traffic;
+        protected final Parser in;
+        protected final Parser out;
+
+        protected Connection(final ConnectionTraffic traffic) {
+            this.traffic = traffic;
+            this.in = new Parser(traffic, true);
+            this.out = new Parser(traffic, false);
+        }
+    }
+
+    /**
+     * Streaming NATS protocol parser which reads control lines and skips payloads
+     */
+    protected static class Parser {
+
+        protected final ConnectionTraffic traffic;
+        protected final boolean in;
+        protected final byte[] line = new byte[MAX_LINE];
+        protected int length;
+        protected long skip;
+
+        protected Parser(final ConnectionTraffic traffic, final boolean in) {
+            this.traffic = traffic;
+            this.in = in;
+        }
+
+        protected void parse(final ByteBuffer data) {
+            while (data.hasRemaining()) {
+                if (skip > 0) {
+                    final int skipped = (int) Math.min(skip, data.remaining());
+                    data.position(data.position() + skipped);
+                    skip -= skipped;
+                    continue;
+                }
+                final byte b = data.get();
+                if (b == '\n') {
+                    line();
+                    length = 0;
+                } else if (length < line.length) {
+                    line[length++] = b;
+                }
+            }
+        }
+
+        protected void line() {
+            int end = length;
+            if (end > 0 && line[end - 1] == '\r') {
+                end--;
+            }
+            if (end == 0) {
+                return;
+            }
+            final int index = op(end);
+            final String op = index < 0 ? UNKNOWN_OP : OPS[index];
+            traffic.recordOp(op);
+            if (PAYLOAD_OPS.contains(op)) {
+                final long size = lastNumber(end);
+                if (size >= 0) {
+                    traffic.recordPayload(in, size);
+                    skip = size + 2;
+                }
+            } else if (in && "CONNECT".equals(op)) {
+                final Matcher matcher = CLIENT_NAME.matcher(new String(line, 0, end, UTF_8));
+                if (matcher.find()) {
+                    traffic.name(matcher.group(1));
+                }
+            }
+        }
+
+        protected int op(final int end) {
+            int opEnd = 0;
+            while (opEnd < end && line[opEnd] != ' ' && line[opEnd] != '\t') {
+                opEnd++;
+            }
+            for (int i = 0; i < OP_BYTES.length; i++) {
+                if (matches(OP_BYTES[i], opEnd)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        protected boolean matches(final byte[] op, final int opEnd) {
+            if (op.length != opEnd) {
+                return false;
+            }
+            for (int i = 0; i < opEnd; i++) {
+                if (Character.toUpperCase(line[i]) != op[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        protected long lastNumber(final int end) {
+            int start = end;
+            while (start > 0 && line[start - 1] >= '0' && line[start - 1] <= '9') {
+                start--;
+            }
+            if (start == end) {
+                return -1;
+            }
+            long result = 0;
+            for (int i = start; i < end; i++) {
+                result = result * 10 + (line[i] - '0');
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NatsTrafficTap{" +
+                "port=" + port() +
+                ", target=" + proxy.target() +
+                ", connections=" + open.size() +
+                ", capture=" + captureDir +
+                '}';
+    }
+}
@@ -8,16 +8,32 @@ import berlin.yuna.natsserver.model.exception.NatsStreamingDownloadException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -33,6 +49,14 @@ import static java.util.Optional.ofNullable;
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public class NatsUtils {
 
+    private static final Pattern SLICE_FILE = Pattern.compile("msgs\\.(\\d+)\\.(dat|idx)");
+    private static final Pattern ENV_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    // env values end up in a shell command line - no quotes, separators, redirects or substitutions
+    private static final Pattern ENV_VALUE = Pattern.compile("[A-Za-z0-9_.,:=+/@%-]*");
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[^\\s:,&\"=]+");
+    private static final Pattern CHANNEL_LIMIT = Pattern.compile("max_(msgs|bytes|subs|age|inactivity)");
+    private static final Pattern CHANNEL_LIMIT_VALUE = Pattern.compile("[0-9A-Za-z.]+");
+
     private NatsUtils() {
     }
 
@@ -121,6 +145,31 @@ public class NatsUtils {
         }
     }
 
+    /**
+     * Reserves distinct free ports at once by binding them all before releasing them
+     *
+     * @param count number of ports
+     * @return free ports
+     */
+    public static List<Integer> reservePorts(final int count) {
+        final List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                final ServerSocket socket = new ServerSocket(0);
+                socket.setReuseAddress(true);
+                sockets.add(socket);
+            }
+            return sockets.stream().map(ServerSocket::getLocalPort).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not reserve [" + count + "] ports", e);
+        } finally {
+            sockets.forEach(socket -> ignoreException(run -> {
+                socket.close();
+                return run;
+            }));
+        }
+    }
+
     public static int getNextFreePort(final int startPort) {
         for (int i = 1; i < 1024; i++) {
             final int port = i + startPort;
@@ -140,6 +189,219 @@ public class NatsUtils {
         }
     }
 
+    /**
+     * Deletes a file or directory including its content - missing paths are ignored
+     *
+     * @param path file or directory to delete
+     * @throws IOException if a file could not be deleted
+     */
+    public static void deleteRecursive(final Path path) throws IOException {
+        if (path != null && Files.exists(path)) {
+            try (final Stream<Path> walk = Files.walk(path)) {
+                for (Path file : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a file or directory including its content - files are deleted in parallel, then the directories from
+     * the deepest level up. Missing paths are ignored
+     *
+     * @param path file or directory to delete
+     * @throws IOException if a file could not be deleted
+     */
+    public static void deleteRecursiveParallel(final Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        final Map<Boolean, List<Path>> split;
+        try (final Stream<Path> walk = Files.walk(path)) {
+            split = walk.collect(Collectors.partitioningBy(Files::isDirectory));
+        }
+        try {
+            split.get(false).parallelStream().forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Path dir : (Iterable<Path>) split.get(true).stream().sorted(Comparator.reverseOrder())::iterator) {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Copies a FILE store directory - sealed message slices are hardlinked as the server never writes them again,
+     * files the server appends to are copied in parallel. Falls back to copying if hardlinks are not supported.
+     *
+     * @param source store directory
+     * @param target target directory
+     * @return number of hardlinked files
+     * @throws IOException on copy errors
+     */
+    public static int copyStore(final Path source, final Path target) throws IOException {
+        final List<Path> dirs;
+        final List<Path> files;
+        try (final Stream<Path> walk = Files.walk(source)) {
+            final Map<Boolean, List<Path>> split = walk.collect(Collectors.partitioningBy(Files::isDirectory));
+            dirs = split.get(true);
+            files = split.get(false);
+        }
+        for (Path dir : dirs) {
+            Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        }
+        final Map<Path, Long> lastSlices = new HashMap<>();
+        files.forEach(file -> sliceNumber(file).ifPresent(slice -> lastSlices.merge(file.getParent(), slice, Math::max)));
+        final AtomicInteger linked = new AtomicInteger(0);
+        try {
+            files.parallelStream().forEach(file -> {
+                final Path dest = target.resolve(source.relativize(file).toString());
+                try {
+                    if (sliceNumber(file).filter(slice -> slice < lastSlices.get(file.getParent())).isPresent() && link(file, dest)) {
+                        linked.incrementAndGet();
+                    } else {
+                        Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return linked.get();
+    }
+
+    private static boolean link(final Path source, final Path target) {
+        try {
+            Files.deleteIfExists(target);
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static Optional<Long> sliceNumber(final Path file) {
+        final Matcher matcher = SLICE_FILE.matcher(file.getFileName().toString());
+        return matcher.matches() ? Optional.of(Long.parseLong(matcher.group(1))) : Optional.empty();
+    }
+
+    /**
+     * Splits the cores of this host into disjoint cpu lists for {@link NatsStreamingConfig#NATS_CPU_SET}
+     *
+     * @param count        number of cpu lists
+     * @param coresPerSet  cores per cpu list
+     * @param firstCore    first core to assign - cores below are left to e.g. the load generator
+     * @return cpu lists e.g. [2-3, 4-5]
+     * @throws IllegalArgumentException if the host has not enough cores
+     */
+    public static List<String> cpuSets(final int count, final int coresPerSet, final int firstCore) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final int per = Math.max(1, coresPerSet);
+        final int first = Math.max(0, firstCore);
+        if (first + count * per > cores) {
+            throw new IllegalArgumentException(String.format("[%s] sets of [%s] cores from core [%s] exceed the [%s] available cores", count, per, first, cores));
+        }
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int from = first + i * per;
+            result.add(per == 1 ? String.valueOf(from) : from + "-" + (from + per - 1));
+        }
+        return result;
+    }
+
+    /**
+     * @param env environment variables e.g. GOMAXPROCS=2&amp;&amp;GOGC=200 - see {@link NatsStreamingConfig#NATS_ENV}
+     * @return environment variables in their order - entries without '=' are ignored
+     */
+    public static Map<String, String> parseEnv(final String env) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        if (isNotEmpty(env)) {
+            for (String entry : env.split(NatsStreamingConfig.ARGS_SEPARATOR)) {
+                final int index = entry.indexOf('=');
+                if (index > 0) {
+                    result.put(entry.substring(0, index).trim(), entry.substring(index + 1).trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param env environment variables
+     * @return environment variables joined by {@link NatsStreamingConfig#ARGS_SEPARATOR}
+     * @throws IllegalArgumentException on invalid names or values see {@link NatsUtils#validateEnv(Map)}
+     */
+    public static String joinEnv(final Map<String, String> env) {
+        validateEnv(env);
+        return env.entrySet().stream().map(entry -> entry.getKey() + "=" + entry.getValue()).collect(Collectors.joining(NatsStreamingConfig.ARGS_SEPARATOR));
+    }
+
+    /**
+     * @param env environment variables
+     * @return same environment variables
+     * @throws IllegalArgumentException on invalid names or values outside of [A-Za-z0-9_.,:=+/@%-]
+     */
+    public static Map<String, String> validateEnv(final Map<String, String> env) {
+        env.forEach((key, value) -> {
+            if (key == null || !ENV_NAME.matcher(key).matches() || value == null || !ENV_VALUE.matcher(value).matches()) {
+                throw new IllegalArgumentException("Invalid environment variable [" + key + "=" + value + "]");
+            }
+        });
+        return env;
+    }
+
+    /**
+     * @param limits channel limits e.g. orders.*:max_msgs=1000,max_age=1h&amp;&amp;logs.&gt;:max_bytes=1048576 - see {@link NatsStreamingConfig#NATS_CHANNEL_LIMITS}
+     * @return limits per channel in their order - entries without ':' or '=' are ignored
+     */
+    public static Map<String, Map<String, String>> parseChannelLimits(final String limits) {
+        final Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        if (isNotEmpty(limits)) {
+            for (String entry : limits.split(NatsStreamingConfig.ARGS_SEPARATOR)) {
+                final int index = entry.indexOf(':');
+                if (index > 0) {
+                    final Map<String, String> channel = result.computeIfAbsent(entry.substring(0, index).trim(), name -> new LinkedHashMap<>());
+                    for (String limit : entry.substring(index + 1).split(",")) {
+                        final int valueIndex = limit.indexOf('=');
+                        if (valueIndex > 0) {
+                            channel.put(limit.substring(0, valueIndex).trim(), limit.substring(valueIndex + 1).trim());
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param limits limits per channel
+     * @return channel limits joined by {@link NatsStreamingConfig#ARGS_SEPARATOR}
+     * @throws IllegalArgumentException on invalid channel names, limit names or values
+     */
+    public static String joinChannelLimits(final Map<String, Map<String, String>> limits) {
+        limits.forEach((channel, values) -> {
+            if (channel == null || !CHANNEL_NAME.matcher(channel).matches()) {
+                throw new IllegalArgumentException("Invalid channel name [" + channel + "]");
+            }
+            values.forEach((key, value) -> {
+                if (key == null || !CHANNEL_LIMIT.matcher(key).matches() || value == null || !CHANNEL_LIMIT_VALUE.matcher(value).matches()) {
+                    throw new IllegalArgumentException("Invalid limit [" + key + "=" + value + "] of channel [" + channel + "]");
+                }
+            });
+        });
+        return limits.entrySet().stream().filter(entry -> !entry.getValue().isEmpty()).map(entry -> entry.getKey() + ":" + entry.getValue().entrySet().stream()
+                .map(limit -> limit.getKey() + "=" + limit.getValue()).collect(Collectors.joining(","))
+        ).collect(Collectors.joining(NatsStreamingConfig.ARGS_SEPARATOR));
+    }
+
     public static boolean isNotEmpty(final String string) {
         return string != null && !string.isEmpty() && !string.isBlank();
     }
@@ -180,6 +442,39 @@ public class NatsUtils {
         return "";
     }
 
+    /**
+     * Runs the tasks on their own threads and waits until all are done
+     *
+     * @param tasks tasks e.g. starting or stopping servers
+     * @throws RuntimeException the first failure of a task
+     */
+    public static void parallel(final List<Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            CompletableFuture.allOf(tasks.stream().map(task -> CompletableFuture.runAsync(task, executor)).toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sleeps without throwing - an interrupt is kept on the thread
+     *
+     * @param ms milliseconds to sleep
+     */
+    public static void sleep(final long ms) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public static void ignoreException(final ThrowingFunction<Long, Long> function) {
         try {
             function.acceptThrows(System.currentTimeMillis());
@@ -0,0 +1,344 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.config.NatsStreamingVersion;
+import berlin.yuna.natsserver.model.VersionComparisonResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static berlin.yuna.clu.logic.SystemUtil.OS;
+import static berlin.yuna.clu.model.OsType.OS_WINDOWS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_AUTOSTART;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_BINARY_PATH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_DOWNLOAD_URL;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_STREAMING_VERSION;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_SYSTEM;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.lang.String.format;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Runs the same workload against several {@link NatsStreamingVersion}s in parallel and compares the results with
+ * Welch's t-test <br />
+ * Each version uses its own binary in {@link NatsVersionComparison#cacheDir()} and its own port - reserved up front
+ * when versions run in parallel, which overrides a {@link NatsStreamingConfig#PORT} of the base config. Binaries are
+ * resolved before measuring: cached binaries are reused, missing ones come from the mirror or the default download url.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class NatsVersionComparison {
+
+    public static final String START_MS = "start_ms";
+
+    protected final NatsStreamingOptionsBuilder base;
+    protected final List<String> versions = new ArrayList<>();
+    protected String baseline;
+    protected Function<NatsStreaming, Map<String, Number>> workload = nats -> new StanBenchmark(nats).run().metrics();
+    protected int repetitions = 5;
+    protected int parallelism = Integer.MAX_VALUE;
+    protected double alpha = 0.05;
+    protected Path cacheDir = Paths.get(System.getProperty("java.io.tmpdir"), "natsstreaming", "versions");
+    protected String mirror;
+    protected boolean offline;
+    protected long timeoutMs = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * @param base config shared by all versions
+     */
+    public NatsVersionComparison(final NatsStreamingOptionsBuilder base) {
+        this.base = base;
+    }
+
+    public NatsVersionComparison() {
+        this(natsStreamingBuilder());
+    }
+
+    /**
+     * @param versions versions to compare - the first one is the baseline unless {@link NatsVersionComparison#baseline(String)} is set
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison versions(final NatsStreamingVersion... versions) {
+        return versions(Arrays.stream(versions).map(NatsStreamingVersion::value).toArray(String[]::new));
+    }
+
+    /**
+     * @param versions versions to compare e.g. "v0.25.6"
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison versions(final String... versions) {
+        Arrays.stream(versions).map(v -> v.toLowerCase().startsWith("v") ? v : "v" + v).filter(v -> !this.versions.contains(v)).forEach(this.versions::add);
+        return this;
+    }
+
+    public List<String> versions() {
+        return versions;
+    }
+
+    /**
+     * @param baseline version to compare all others with (default: first version)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison baseline(final NatsStreamingVersion baseline) {
+        return baseline(baseline.value());
+    }
+
+    /**
+     * @param baseline version to compare all others with (default: first version)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison baseline(final String baseline) {
+        versions(baseline);
+        this.baseline = versions.stream().filter(v -> v.equalsIgnoreCase(baseline) || v.equalsIgnoreCase("v" + baseline)).findFirst().orElse(baseline);
+        return this;
+    }
+
+    public String baseline() {
+        return ofNullable(baseline).orElseGet(() -> versions.isEmpty() ? null : versions.get(0));
+    }
+
+    /**
+     * @param workload workload to run against each server - returns named metrics (default: {@link StanBenchmark} with its defaults)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison workload(final Function<NatsStreaming, Map<String, Number>> workload) {
+        this.workload = workload;
+        return this;
+    }
+
+    /**
+     * @param repetitions runs per version on a fresh server - at least two are needed for a p-value (default: 5)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison repetitions(final int repetitions) {
+        this.repetitions = Math.max(1, repetitions);
+        return this;
+    }
+
+    /**
+     * @param parallelism number of versions measured at the same time - 1 avoids cpu contention between versions (default: all)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison parallelism(final int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * @param alpha significance level (default: 0.05)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison alpha(final double alpha) {
+        this.alpha = alpha;
+        return this;
+    }
+
+    /**
+     * @param cacheDir directory of the version binaries (default: [tmp]/natsstreaming/versions)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison cacheDir(final Path cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    public Path cacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * @param mirror download url for missing binaries with the placeholders %NATS_STREAMING_VERSION% and %NATS_SYSTEM% <br />
+     *               e.g. "file:///opt/mirror/nats-streaming-server-%NATS_STREAMING_VERSION%-%NATS_SYSTEM%.zip"
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison mirror(final String mirror) {
+        this.mirror = mirror;
+        return this;
+    }
+
+    /**
+     * @param mirrorDir local directory containing the release zips as published on github
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison mirror(final Path mirrorDir) {
+        return mirror(mirrorDir.toUri() + "nats-streaming-server-%" + NATS_STREAMING_VERSION.name() + "%-%" + NATS_SYSTEM.name() + "%.zip");
+    }
+
+    /**
+     * @param offline [true] == versions which are neither cached nor available from a mirror are reported as errors (default: false)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison offline(final boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    /**
+     * @param timeoutMs max duration of the whole comparison (default: 30 minutes)
+     * @return self {@link NatsVersionComparison}
+     */
+    public NatsVersionComparison timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param version version
+     * @return binary path of the version inside {@link NatsVersionComparison#cacheDir()}
+     */
+    public Path binary(final String version) {
+        return cacheDir.resolve("natsstreaming_" + version + "_" + NatsUtils.getSystem() + (OS == OS_WINDOWS ? ".exe" : ""));
+    }
+
+    /**
+     * Resolves the binaries of all versions sequentially so that downloads neither collide nor distort the measurement
+     *
+     * @return error message per version which has no binary
+     */
+    public Map<String, String> prefetch() {
+        final Map<String, String> errors = new LinkedHashMap<>();
+        for (String version : versions) {
+            if (Files.exists(binary(version))) {
+                continue;
+            }
+            if (offline && mirror == null) {
+                errors.put(version, "Binary not cached [" + binary(version) + "]");
+                continue;
+            }
+            try {
+                nats(version, Map.of()).downloadNats();
+            } catch (Exception e) {
+                errors.put(version, ofNullable(e.getCause()).orElse(e).toString());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Measures all versions - failing versions are reported as errors in the result
+     *
+     * @return {@link VersionComparisonResult}
+     */
+    public VersionComparisonResult run() {
+        final Logger logger = ofNullable(base.logger()).orElseGet(() -> Logger.getLogger(NatsVersionComparison.class.getSimpleName()));
+        final Map<String, String> errors = new ConcurrentHashMap<>(prefetch());
+        final Map<String, List<Map<String, Number>>> runs = new ConcurrentHashMap<>();
+        final List<String> runnable = versions.stream().filter(v -> !errors.containsKey(v)).collect(Collectors.toList());
+        final int threads = Math.max(1, Math.min(parallelism, runnable.size()));
+        // concurrent servers would all pick the same "next free" port and pid file
+        final List<Integer> ports = threads > 1 ? NatsUtils.reservePorts(runnable.size()) : List.of();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, NatsVersionComparison.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < runnable.size(); i++) {
+                final String version = runnable.get(i);
+                final Integer port = ports.isEmpty() ? null : ports.get(i);
+                futures.add(executor.submit(() -> {
+                    final List<Map<String, Number>> results = new ArrayList<>();
+                    for (int repetition = 0; repetition < repetitions; repetition++) {
+                        try {
+                            results.add(runOnce(version, port));
+                        } catch (Exception e) {
+                            errors.put(version, ofNullable(e.getCause()).orElse(e).toString());
+                            break;
+                        }
+                    }
+                    runs.put(version, results);
+                    logger.info(() -> format("Measured [%s] runs [%s]", version, results.size()));
+                }));
+            }
+            final long deadline = System.currentTimeMillis() + timeoutMs;
+            for (Future<?> future : futures) {
+                future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            versions.stream().filter(v -> !runs.containsKey(v)).forEach(v -> errors.putIfAbsent(v, e.toString()));
+        } finally {
+            executor.shutdownNow();
+        }
+        final Map<String, List<Map<String, Number>>> ordered = new LinkedHashMap<>();
+        final Map<String, String> orderedErrors = new LinkedHashMap<>();
+        versions.forEach(v -> {
+            ofNullable(runs.get(v)).filter(list -> !list.isEmpty()).ifPresent(list -> ordered.put(v, list));
+            ofNullable(errors.get(v)).ifPresent(error -> orderedErrors.put(v, error));
+        });
+        final VersionComparisonResult result = new VersionComparisonResult(baseline(), alpha, ordered, orderedErrors);
+        logger.info(result::report);
+        return result;
+    }
+
+    protected Map<String, Number> runOnce(final String version, final Integer port) throws Exception {
+        Path tmpDir = null;
+        try {
+            final Map<NatsStreamingConfig, String> overwrites = new EnumMap<>(NatsStreamingConfig.class);
+            ofNullable(port).ifPresent(reserved -> overwrites.put(PORT, String.valueOf(reserved)));
+            if ("FILE".equalsIgnoreCase(base.configMap().get(STORE))) {
+                final Path parent = ofNullable(base.configMap().get(DIR)).map(Paths::get).orElseGet(() -> Paths.get(System.getProperty("java.io.tmpdir")));
+                Files.createDirectories(parent);
+                tmpDir = Files.createTempDirectory(parent, "nats_" + version + "_");
+                overwrites.put(DIR, tmpDir.toString());
+            }
+            try (final NatsStreaming nats = nats(version, overwrites)) {
+                final long started = System.nanoTime();
+                nats.start();
+                final double startMs = (System.nanoTime() - started) / 1_000_000d;
+                final Map<String, Number> metrics = new LinkedHashMap<>();
+                metrics.put(START_MS, startMs);
+                metrics.putAll(workload.apply(nats));
+                return metrics;
+            }
+        } finally {
+            final Path dir = tmpDir;
+            NatsUtils.ignoreException(run -> {
+                NatsUtils.deleteRecursive(dir);
+                return run;
+            });
+        }
+    }
+
+    protected NatsStreaming nats(final String version, final Map<NatsStreamingConfig, String> overwrites) {
+        final Map<NatsStreamingConfig, String> config = new EnumMap<>(NatsStreamingConfig.class);
+        config.putAll(base.configMap());
+        config.putIfAbsent(PORT, "-1");
+        config.putAll(overwrites);
+        config.put(NATS_STREAMING_VERSION, version);
+        config.put(NATS_BINARY_PATH, binary(version).toString());
+        config.put(NATS_AUTOSTART, "false");
+        ofNullable(mirror).ifPresent(url -> config.put(NATS_DOWNLOAD_URL, url));
+        return natsStreamingBuilder().configMap(config).logger(base.logger()).nats();
+    }
+
+    @Override
+    public String toString() {
+        return "NatsVersionComparison{" +
+                "versions=" + versions +
+                ", baseline=" + baseline() +
+                ", repetitions=" + repetitions +
+                ", cacheDir=" + cacheDir +
+                '}';
+    }
+}
@@ -0,0 +1,118 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.ProcessStats;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Samples cpu time and resident memory of a process in the background <br />
+ * Cpu time comes from {@link ProcessHandle}, memory from /proc/[pid]/status which is only available on linux
+ */
+@SuppressWarnings("unused")
+public class ProcessSampler implements AutoCloseable {
+
+    protected final long pid;
+    protected final long intervalMs;
+    protected final long startNs;
+    protected final long startCpuNs;
+    protected final AtomicLong peakRss = new AtomicLong(-1);
+    protected final AtomicLong sumRss = new AtomicLong(0);
+    protected final AtomicLong samples = new AtomicLong(0);
+    protected final Thread thread;
+    protected volatile boolean running = true;
+
+    /**
+     * Starts sampling
+     *
+     * @param pid        process id
+     * @param intervalMs memory sample interval
+     */
+    public ProcessSampler(final long pid, final long intervalMs) {
+        this.pid = pid;
+        this.intervalMs = intervalMs;
+        this.startNs = System.nanoTime();
+        this.startCpuNs = cpuNs(pid);
+        this.thread = new Thread(this::sample, "sampler-" + pid);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops sampling
+     *
+     * @return {@link ProcessStats} of the sampling window
+     */
+    public ProcessStats stop() {
+        running = false;
+        thread.interrupt();
+        NatsUtils.ignoreException(run -> {
+            thread.join(intervalMs * 2);
+            return run;
+        });
+        final long wallNs = System.nanoTime() - startNs;
+        final long endCpuNs = cpuNs(pid);
+        final long count = samples.get();
+        return new ProcessStats(
+                pid,
+                wallNs,
+                startCpuNs < 0 || endCpuNs < 0 ? -1 : endCpuNs - startCpuNs,
+                peakRss.get(),
+                count == 0 ? -1 : sumRss.get() / count,
+                (int) count
+        );
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * @param pid process id
+     * @return total cpu time of the process in nanoseconds or -1 if unknown
+     */
+    public static long cpuNs(final long pid) {
+        return ProcessHandle.of(pid).flatMap(handle -> handle.info().totalCpuDuration()).map(Duration::toNanos).orElse(-1L);
+    }
+
+    /**
+     * @param pid process id
+     * @return resident set size in bytes or -1 if unknown
+     */
+    public static long rssBytes(final long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"), ISO_8859_1)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // not linux or process gone
+        }
+        return -1;
+    }
+
+    protected void sample() {
+        while (running) {
+            final long rss = rssBytes(pid);
+            if (rss >= 0) {
+                peakRss.accumulateAndGet(rss, Math::max);
+                sumRss.addAndGet(rss);
+                samples.incrementAndGet();
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
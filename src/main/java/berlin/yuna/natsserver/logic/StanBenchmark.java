@@ -0,0 +1,502 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.LatencyHistogram;
+import berlin.yuna.natsserver.model.StanBenchmarkResult;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_CLUSTER_ID;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+import static java.lang.String.format;
+
+/**
+ * Declarative streaming workload: channels, publishers with acks, (durable / queue) subscribers, AckWait redelivery
+ * and a final replay from the store <br />
+ * Every channel gets one publishing client and {@link #subscribers(int)} subscribing clients. The payload carries the
+ * publish time, so delivery latency is measured end to end.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class StanBenchmark {
+
+    protected static final long IDLE_MS = 1000;
+
+    protected final String host;
+    protected final int port;
+    protected final String user;
+    protected final String pass;
+    protected final String token;
+    protected final String clusterId;
+    protected String name = StanBenchmark.class.getSimpleName();
+    protected String channelPrefix = "bench";
+    protected int channels = 1;
+    protected long messages = 10000;
+    protected int messageSize = 128;
+    protected long rate = 0;
+    protected int maxPubAcksInFlight = DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+    protected int subscribers = 1;
+    protected String queueGroup;
+    protected boolean durable;
+    protected int maxInFlight = 1024;
+    protected int ackWaitSecs = 30;
+    protected int unackedPercent = 0;
+    protected boolean replay = true;
+    protected long replaySequence = 1;
+    protected long replayTimeDeltaMs = 0;
+    protected long timeoutMs = 60000;
+
+    /**
+     * @param nats started nats streaming server - cluster id and credentials are taken from its config
+     */
+    public StanBenchmark(final NatsStreaming nats) {
+        this.host = "localhost";
+        this.port = nats.port();
+        this.user = nats.getValue(USER, () -> null);
+        this.pass = nats.getValue(PASS, () -> null);
+        this.token = nats.getValue(AUTH, () -> null);
+        this.clusterId = nats.getValue(CLUSTER_ID, () -> DEFAULT_CLUSTER_ID);
+    }
+
+    /**
+     * @param host      server host
+     * @param port      server client port
+     * @param clusterId streaming cluster id
+     */
+    public StanBenchmark(final String host, final int port, final String clusterId) {
+        this.host = host;
+        this.port = port;
+        this.user = null;
+        this.pass = null;
+        this.token = null;
+        this.clusterId = clusterId;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @param name workload name - used as client id prefix
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark name(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public String channelPrefix() {
+        return channelPrefix;
+    }
+
+    /**
+     * @param channelPrefix channels are named [prefix].[index] (default: bench)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark channelPrefix(final String channelPrefix) {
+        this.channelPrefix = channelPrefix;
+        return this;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /**
+     * @param channels number of channels - each has its own publisher (default: 1)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark channels(final int channels) {
+        this.channels = Math.max(1, channels);
+        return this;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    /**
+     * @param messages messages per channel (default: 10000)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark messages(final long messages) {
+        this.messages = Math.max(0, messages);
+        return this;
+    }
+
+    public int messageSize() {
+        return messageSize;
+    }
+
+    /**
+     * @param messageSize payload size in bytes - delivery latency is only measured from 8 bytes on (default: 128)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark messageSize(final int messageSize) {
+        this.messageSize = Math.max(0, messageSize);
+        return this;
+    }
+
+    public long rate() {
+        return rate;
+    }
+
+    /**
+     * @param rate messages per second per channel (&lt;=0 == as fast as the ack window allows)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark rate(final long rate) {
+        this.rate = Math.max(0, rate);
+        return this;
+    }
+
+    public int maxPubAcksInFlight() {
+        return maxPubAcksInFlight;
+    }
+
+    /**
+     * @param maxPubAcksInFlight max unacknowledged publishes per publisher (default: 16384)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark maxPubAcksInFlight(final int maxPubAcksInFlight) {
+        this.maxPubAcksInFlight = Math.max(1, maxPubAcksInFlight);
+        return this;
+    }
+
+    public int subscribers() {
+        return subscribers;
+    }
+
+    /**
+     * @param subscribers subscribers per channel (default: 1)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark subscribers(final int subscribers) {
+        this.subscribers = Math.max(0, subscribers);
+        return this;
+    }
+
+    public String queueGroup() {
+        return queueGroup;
+    }
+
+    /**
+     * @param queueGroup queue group for all subscribers of a channel - messages are shared instead of fanned out
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark queueGroup(final String queueGroup) {
+        this.queueGroup = queueGroup;
+        return this;
+    }
+
+    public boolean durable() {
+        return durable;
+    }
+
+    /**
+     * @param durable true == subscribers use durable names
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark durable(final boolean durable) {
+        this.durable = durable;
+        return this;
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight max unacknowledged deliveries per subscriber (default: 1024)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark maxInFlight(final int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        return this;
+    }
+
+    public int ackWaitSecs() {
+        return ackWaitSecs;
+    }
+
+    /**
+     * @param ackWaitSecs redelivery timeout of the subscribers (default: 30)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark ackWaitSecs(final int ackWaitSecs) {
+        this.ackWaitSecs = Math.max(1, ackWaitSecs);
+        return this;
+    }
+
+    public int unackedPercent() {
+        return unackedPercent;
+    }
+
+    /**
+     * @param unackedPercent percent of first deliveries which are not acked to force AckWait redeliveries (default: 0)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark unackedPercent(final int unackedPercent) {
+        this.unackedPercent = Math.min(100, Math.max(0, unackedPercent));
+        return this;
+    }
+
+    public boolean replay() {
+        return replay;
+    }
+
+    /**
+     * @param replay true == read every channel again from the store after publishing (default: true)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark replay(final boolean replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    public long replaySequence() {
+        return replaySequence;
+    }
+
+    /**
+     * @param replaySequence sequence to start the replay from (default: 1)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark replaySequence(final long replaySequence) {
+        this.replaySequence = Math.max(1, replaySequence);
+        this.replayTimeDeltaMs = 0;
+        return this;
+    }
+
+    public long replayTimeDeltaMs() {
+        return replayTimeDeltaMs;
+    }
+
+    /**
+     * @param replayTimeDeltaMs replay messages stored within the last milliseconds instead of a sequence
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark replayTimeDeltaMs(final long replayTimeDeltaMs) {
+        this.replayTimeDeltaMs = Math.max(0, replayTimeDeltaMs);
+        return this;
+    }
+
+    public long timeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * @param timeoutMs max time per phase (default: 60000)
+     * @return self {@link StanBenchmark}
+     */
+    public StanBenchmark timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * @param index channel index
+     * @return channel name
+     */
+    public String channel(final int index) {
+        return channelPrefix + "." + index;
+    }
+
+    /**
+     * Runs subscribe, publish and replay phase
+     *
+     * @return {@link StanBenchmarkResult}
+     */
+    @SuppressWarnings("java:S3776")
+    public StanBenchmarkResult run() {
+        final LatencyHistogram ackLatency = new LatencyHistogram();
+        final LatencyHistogram deliveryLatency = new LatencyHistogram();
+        final AtomicLong received = new AtomicLong(0);
+        final AtomicLong redelivered = new AtomicLong(0);
+        final AtomicLong withheld = new AtomicLong(0);
+        final AtomicLong lastReceived = new AtomicLong(0);
+        final AtomicLong acked = new AtomicLong(0);
+        final AtomicLong lastAck = new AtomicLong(0);
+        final long expected = subscribers == 0 ? 0 : channels * messages * (queueGroup == null ? subscribers : 1);
+        final List<StanClient> clients = new ArrayList<>();
+        final AtomicInteger threads = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(channels, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-pub-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int c = 0; c < channels; c++) {
+                for (int s = 0; s < subscribers; s++) {
+                    final StanClient client = connect(name + "-sub-" + c + "-" + s);
+                    clients.add(client);
+                    final StanSubscription subscription = client.subscription(channel(c))
+                            .queueGroup(queueGroup)
+                            .durableName(durable ? name + "-durable-" + s : null)
+                            .maxInFlight(maxInFlight)
+                            .ackWaitSecs(ackWaitSecs)
+                            .manualAcks(true);
+                    subscription.subscribe(message -> {
+                        final long now = System.nanoTime();
+                        if (message.redelivered()) {
+                            redelivered.incrementAndGet();
+                            subscription.ack(message);
+                        } else {
+                            if (message.data().length >= Long.BYTES) {
+                                deliveryLatency.record(now - ByteBuffer.wrap(message.data()).getLong(0));
+                            }
+                            received.incrementAndGet();
+                            if (message.sequence() % 100 < unackedPercent) {
+                                withheld.incrementAndGet();
+                            } else {
+                                subscription.ack(message);
+                            }
+                        }
+                        lastReceived.accumulateAndGet(now, Math::max);
+                    });
+                }
+            }
+
+            final List<StanClient> publishers = new ArrayList<>();
+            for (int c = 0; c < channels; c++) {
+                publishers.add(connect(name + "-pub-" + c));
+            }
+            clients.addAll(publishers);
+            final long start = System.nanoTime();
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int c = 0; c < channels; c++) {
+                final StanClient client = publishers.get(c);
+                final String channel = channel(c);
+                futures.add(executor.submit(() -> publish(client, channel, start, acked, lastAck, ackLatency)));
+            }
+            long published = 0;
+            for (Future<Long> future : futures) {
+                published += future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            final long publishNs = acked.get() > 0 ? lastAck.get() - start : 0;
+            awaitOrIdle(() -> received.get() >= expected && redelivered.get() >= withheld.get(), lastReceived);
+            final long receiveNs = received.get() > 0 ? lastReceived.get() - start : 0;
+
+            final AtomicLong replayed = new AtomicLong(0);
+            final AtomicLong lastReplayed = new AtomicLong(0);
+            long replayNs = 0;
+            if (replay && messages > 0) {
+                final StanClient client = connect(name + "-replay");
+                clients.add(client);
+                final long replayStart = System.nanoTime();
+                lastReplayed.set(replayStart);
+                for (int c = 0; c < channels; c++) {
+                    final StanSubscription subscription = client.subscription(channel(c)).maxInFlight(DEFAULT_MAX_PUB_ACKS_IN_FLIGHT);
+                    if (replayTimeDeltaMs > 0) {
+                        subscription.startAtTimeDelta(TimeUnit.MILLISECONDS.toNanos(replayTimeDeltaMs));
+                    } else {
+                        subscription.startAtSequence(replaySequence);
+                    }
+                    subscription.subscribe(message -> {
+                        replayed.incrementAndGet();
+                        lastReplayed.accumulateAndGet(System.nanoTime(), Math::max);
+                    });
+                }
+                final long replayExpected = replayTimeDeltaMs > 0 ? Long.MAX_VALUE : channels * Math.max(0, messages - replaySequence + 1);
+                awaitOrIdle(() -> replayed.get() >= replayExpected, lastReplayed);
+                replayNs = replayed.get() > 0 ? lastReplayed.get() - replayStart : 0;
+            }
+            return new StanBenchmarkResult(
+                    format("%s channels=%d sub=%d%s%s size=%d rate=%d", name, channels, subscribers, queueGroup == null ? "" : " queue=" + queueGroup, durable ? " durable" : "", messageSize, rate),
+                    messageSize, published, acked.get(), publishNs, received.get(), expected, redelivered.get(), receiveNs, replayed.get(), replayNs, ackLatency, deliveryLatency
+            );
+        } catch (ExecutionException e) {
+            throw new NatsProtocolException("Publisher failed [" + name + "]", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NatsProtocolException("Publishers did not finish within [" + timeoutMs + "] ms [" + name + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted [" + name + "]", e);
+        } finally {
+            executor.shutdownNow();
+            clients.forEach(client -> NatsUtils.ignoreException(run -> {
+                client.close();
+                return run;
+            }));
+        }
+    }
+
+    @SuppressWarnings("java:S107")
+    protected long publish(final StanClient client, final String channel, final long start, final AtomicLong acked, final AtomicLong lastAck, final LatencyHistogram ackLatency) {
+        final ByteBuffer payload = ByteBuffer.allocate(messageSize);
+        final double intervalNs = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) rate : 0;
+        for (long i = 0; i < messages; i++) {
+            final long intended = start + (long) (i * intervalNs);
+            long now = System.nanoTime();
+            if (now < intended) {
+                client.flush();
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+            }
+            final long sent = intervalNs > 0 ? intended : now;
+            if (messageSize >= Long.BYTES) {
+                payload.putLong(0, sent);
+            }
+            client.publishAsync(channel, payload.array()).whenComplete((guid, error) -> {
+                if (error == null) {
+                    final long ackTime = System.nanoTime();
+                    ackLatency.record(ackTime - sent);
+                    acked.incrementAndGet();
+                    lastAck.accumulateAndGet(ackTime, Math::max);
+                }
+            });
+        }
+        client.flush();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (client.pendingAcks() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return messages;
+    }
+
+    protected StanClient connect(final String clientId) {
+        return new StanClient(new NatsConnection(host, port, clientId, user, pass, token, DEFAULT_BUFFER_SIZE, timeoutMs), clusterId, clientId, maxPubAcksInFlight, true);
+    }
+
+    /**
+     * Waits until the condition is met, the timeout is reached or nothing was received for {@link #IDLE_MS} plus AckWait
+     */
+    protected void awaitOrIdle(final BooleanSupplier condition, final AtomicLong lastReceived) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        final long idleNs = TimeUnit.MILLISECONDS.toNanos(IDLE_MS) + (unackedPercent > 0 ? TimeUnit.SECONDS.toNanos(ackWaitSecs) : 0);
+        final long waitStart = System.nanoTime();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline && System.nanoTime() - Math.max(waitStart, lastReceived.get()) < idleNs) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StanBenchmark{" +
+                "name=" + name +
+                ", target=" + host + ":" + port +
+                ", clusterId=" + clusterId +
+                ", channels=" + channels +
+                ", messages=" + messages +
+                ", subscribers=" + subscribers +
+                ", messageSize=" + messageSize +
+                '}';
+    }
+}
@@ -0,0 +1,357 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.ChannelTransferResult;
+import berlin.yuna.natsserver.model.StanMessage;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.AUTH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
+import static berlin.yuna.natsserver.logic.NatsConnection.DEFAULT_BUFFER_SIZE;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_CLUSTER_ID;
+import static berlin.yuna.natsserver.logic.StanClient.DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exports channels of a running server into a compact, version independent fixture file and imports them into any
+ * server (MEMORY or FILE) <br />
+ * File format: 8 byte header "STANEXP" + version, then one record per message: [int length][long sequence]
+ * [long timestamp][unsigned short subject length][subject][payload] - big endian. The importer pipelines async
+ * publishes with a bounded window of unacknowledged messages. Sequences and timestamps are assigned new by the target server.
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class StanChannelTransfer {
+
+    public static final byte[] MAGIC = {'S', 'T', 'A', 'N', 'E', 'X', 'P', 1};
+    protected static final int IO_BUFFER_SIZE = 1024 * 1024;
+    protected static final int RECORD_OVERHEAD = Long.BYTES + Long.BYTES + Short.BYTES;
+
+    protected final String host;
+    protected final int port;
+    protected final String user;
+    protected final String pass;
+    protected final String token;
+    protected final String clusterId;
+    protected String name = StanChannelTransfer.class.getSimpleName();
+    protected int maxPubAcksInFlight = DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+    protected int maxInFlight = DEFAULT_MAX_PUB_ACKS_IN_FLIGHT;
+    protected Function<String, String> channelMapping = Function.identity();
+    protected long idleMs = 1000;
+    protected long timeoutMs = 60000;
+
+    /**
+     * @param nats started nats streaming server - cluster id and credentials are taken from its config
+     */
+    public StanChannelTransfer(final NatsStreaming nats) {
+        this.host = "localhost";
+        this.port = nats.port();
+        this.user = nats.getValue(USER, () -> null);
+        this.pass = nats.getValue(PASS, () -> null);
+        this.token = nats.getValue(AUTH, () -> null);
+        this.clusterId = nats.getValue(CLUSTER_ID, () -> DEFAULT_CLUSTER_ID);
+    }
+
+    /**
+     * @param host      server host
+     * @param port      server client port
+     * @param clusterId streaming cluster id
+     */
+    public StanChannelTransfer(final String host, final int port, final String clusterId) {
+        this.host = host;
+        this.port = port;
+        this.user = null;
+        this.pass = null;
+        this.token = null;
+        this.clusterId = clusterId;
+    }
+
+    /**
+     * @param name client id prefix (default: StanChannelTransfer)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer name(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param maxPubAcksInFlight import window of unacknowledged publishes (default: 16384)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer maxPubAcksInFlight(final int maxPubAcksInFlight) {
+        this.maxPubAcksInFlight = Math.max(1, maxPubAcksInFlight);
+        return this;
+    }
+
+    /**
+     * @param maxInFlight export window of unacknowledged deliveries (default: 16384)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer maxInFlight(final int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        return this;
+    }
+
+    /**
+     * @param channelMapping maps exported channel names to import channel names (default: identity)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer channelMapping(final Function<String, String> channelMapping) {
+        this.channelMapping = channelMapping;
+        return this;
+    }
+
+    /**
+     * @param idleMs export of a channel ends if nothing is received for this time (default: 1000)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer idleMs(final long idleMs) {
+        this.idleMs = idleMs;
+        return this;
+    }
+
+    /**
+     * @param timeoutMs max duration per channel export or for the outstanding acks of an import (default: 60000)
+     * @return self {@link StanChannelTransfer}
+     */
+    public StanChannelTransfer timeoutMs(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Replays the channels from their first stored message up to the last message at export start
+     *
+     * @param target   fixture file
+     * @param channels channels to export
+     * @return {@link ChannelTransferResult} with exported messages per channel
+     * @throws NatsProtocolException if a channel is not exported completely within {@link StanChannelTransfer#timeoutMs(long)}
+     *                               or stalls for {@link StanChannelTransfer#idleMs(long)}
+     */
+    public ChannelTransferResult exportTo(final Path target, final String... channels) {
+        final long start = System.nanoTime();
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        final AtomicLong bytes = new AtomicLong(0);
+        try {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), IO_BUFFER_SIZE));
+                 final StanClient client = connect(name + "-export")) {
+                out.write(MAGIC);
+                for (String channel : channels) {
+                    counts.put(channel, exportChannel(client, channel, out, bytes));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Export failed [" + target + "]", e);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("Export failed [" + target + "]", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted while exporting [" + target + "]", e);
+        }
+        return new ChannelTransferResult(counts, bytes.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Republishes all messages of the fixture file with async publishes
+     *
+     * @param source fixture file
+     * @return {@link ChannelTransferResult} with imported messages per target channel
+     */
+    public ChannelTransferResult importFrom(final Path source) {
+        final long start = System.nanoTime();
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        long bytes = 0;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), IO_BUFFER_SIZE));
+             final StanClient client = connect(name + "-import")) {
+            readMagic(in, source);
+            final Map<String, String> channels = new LinkedHashMap<>();
+            StanMessage message;
+            while ((message = read(in)) != null && error.get() == null) {
+                final String channel = channels.computeIfAbsent(message.subject(), channelMapping);
+                final CompletableFuture<String> ack = client.publishAsync(channel, message.data());
+                ack.whenComplete((guid, e) -> {
+                    if (e != null) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+                counts.merge(channel, 1L, Long::sum);
+                bytes += message.data().length;
+            }
+            client.flush();
+            await(() -> client.pendingAcks() == 0 || error.get() != null, new AtomicLong(System.nanoTime()), timeoutMs);
+            if (error.get() == null && client.pendingAcks() > 0) {
+                throw new NatsProtocolException("Missing [" + client.pendingAcks() + "] acks after [" + timeoutMs + "] ms importing [" + source + "]");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Import failed [" + source + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted while importing [" + source + "]", e);
+        }
+        if (error.get() != null) {
+            throw new NatsProtocolException("Import failed [" + source + "]", error.get());
+        }
+        return new ChannelTransferResult(counts, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads all records of a fixture file without a server
+     *
+     * @param source  fixture file
+     * @param handler message consumer - the subject is the exported channel
+     * @return number of messages
+     */
+    public static long read(final Path source, final Consumer<StanMessage> handler) {
+        long count = 0;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), IO_BUFFER_SIZE))) {
+            readMagic(in, source);
+            StanMessage message;
+            while ((message = read(in)) != null) {
+                handler.accept(message);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read [" + source + "]", e);
+        }
+        return count;
+    }
+
+    protected long exportChannel(final StanClient client, final String channel, final DataOutputStream out, final AtomicLong bytes) throws InterruptedException {
+        final AtomicLong lastSequence = new AtomicLong(0);
+        final AtomicLong lastReceived = new AtomicLong(System.nanoTime());
+        final StanSubscription last = client.subscription(channel).startWithLastReceived().subscribe(message -> lastSequence.set(message.sequence()));
+        await(() -> lastSequence.get() > 0, lastReceived, idleMs);
+        last.unsubscribe();
+        final long end = lastSequence.get();
+        if (end == 0) {
+            return 0;
+        }
+        final AtomicLong written = new AtomicLong(0);
+        final AtomicLong count = new AtomicLong(0);
+        final AtomicReference<UncheckedIOException> writeError = new AtomicReference<>();
+        // guards the stream - no callback may write once the export of this channel is over
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final StanSubscription all = client.subscription(channel).deliverAllAvailable().maxInFlight(maxInFlight).subscribe(message -> {
+            lastReceived.set(System.nanoTime());
+            synchronized (closed) {
+                if (!closed.get() && writeError.get() == null && message.sequence() > written.get() && message.sequence() <= end) {
+                    try {
+                        write(out, message);
+                    } catch (UncheckedIOException e) {
+                        writeError.set(e);
+                        return;
+                    }
+                    written.set(message.sequence());
+                    count.incrementAndGet();
+                    bytes.addAndGet(message.data().length);
+                }
+            }
+        });
+        lastReceived.set(System.nanoTime());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            await(() -> written.get() >= end || writeError.get() != null || System.nanoTime() > deadline, lastReceived, idleMs);
+        } finally {
+            synchronized (closed) {
+                closed.set(true);
+            }
+            all.unsubscribe();
+        }
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+        if (written.get() < end) {
+            throw new NatsProtocolException(format("Incomplete export of [%s] at sequence [%s] of [%s] after [%s] messages", channel, written.get(), end, count.get()));
+        }
+        return count.get();
+    }
+
+    protected static void write(final DataOutputStream out, final StanMessage message) {
+        final byte[] subject = message.subject().getBytes(UTF_8);
+        try {
+            out.writeInt(RECORD_OVERHEAD + subject.length + message.data().length);
+            out.writeLong(message.sequence());
+            out.writeLong(message.timestamp());
+            out.writeShort(subject.length);
+            out.write(subject);
+            out.write(message.data());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected static StanMessage read(final DataInputStream in) throws IOException {
+        final int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        final long sequence = in.readLong();
+        final long timestamp = in.readLong();
+        final byte[] subject = new byte[in.readUnsignedShort()];
+        in.readFully(subject);
+        final byte[] data = new byte[length - RECORD_OVERHEAD - subject.length];
+        in.readFully(data);
+        return new StanMessage(sequence, new String(subject, UTF_8), data, timestamp, false, 0);
+    }
+
+    protected static void readMagic(final DataInputStream in, final Path source) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Unsupported fixture file [" + source + "]");
+        }
+    }
+
+    protected StanClient connect(final String clientName) {
+        final String clientId = clientName + "-" + System.nanoTime();
+        return new StanClient(new NatsConnection(host, port, clientId, user, pass, token, DEFAULT_BUFFER_SIZE, timeoutMs), clusterId, clientId, maxPubAcksInFlight, true);
+    }
+
+    /**
+     * Waits until the condition is met or nothing was received for the idle time
+     */
+    protected static void await(final BooleanSupplier condition, final AtomicLong lastReceived, final long idleMs) throws InterruptedException {
+        final long idleNs = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        while (!condition.getAsBoolean() && System.nanoTime() - lastReceived.get() < idleNs) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StanChannelTransfer{" +
+                "host=" + host +
+                ", port=" + port +
+                ", clusterId=" + clusterId +
+                '}';
+    }
+}
@@ -0,0 +1,253 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_ID;
+import static berlin.yuna.natsserver.logic.StanProtocol.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Minimal NATS streaming (STAN) client on top of a {@link NatsConnection} <br />
+ * Publishes are asynchronous with a bounded window of unacknowledged messages, like the official clients
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class StanClient implements AutoCloseable {
+
+    public static final String DEFAULT_CLUSTER_ID = "test-cluster";
+    public static final int DEFAULT_MAX_PUB_ACKS_IN_FLIGHT = 16384;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    protected final NatsConnection connection;
+    protected final boolean ownsConnection;
+    protected final String clusterId;
+    protected final String clientId;
+    protected final byte[] connId;
+    protected final String guidPrefix;
+    protected final String ackSubject;
+    protected final String pubPrefix;
+    protected final String subRequests;
+    protected final String unsubRequests;
+    protected final String closeRequests;
+    protected final String subCloseRequests;
+    protected final Semaphore window;
+    protected final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    protected final AtomicLong guids = new AtomicLong(0);
+    protected final long timeoutMs;
+
+    /**
+     * Connects a new client to a started {@link NatsStreaming} - the connection is closed with the client
+     *
+     * @param nats     started nats streaming server
+     * @param clientId unique client id
+     * @return connected {@link StanClient}
+     */
+    public static StanClient connect(final NatsStreaming nats, final String clientId) {
+        return new StanClient(NatsConnection.connect(nats, clientId), nats.getValue(CLUSTER_ID, () -> DEFAULT_CLUSTER_ID), clientId, DEFAULT_MAX_PUB_ACKS_IN_FLIGHT, true);
+    }
+
+    /**
+     * @param connection connected NATS connection (stays open on {@link #close()})
+     * @param clusterId  streaming cluster id
+     * @param clientId   unique client id
+     */
+    public StanClient(final NatsConnection connection, final String clusterId, final String clientId) {
+        this(connection, clusterId, clientId, DEFAULT_MAX_PUB_ACKS_IN_FLIGHT, false);
+    }
+
+    /**
+     * Sends the connect request to the streaming server
+     *
+     * @param connection         connected NATS connection
+     * @param clusterId          streaming cluster id
+     * @param clientId           unique client id
+     * @param maxPubAcksInFlight max number of published messages without ack - publishing blocks when reached
+     * @param ownsConnection     true to close the connection on {@link #close()}
+     */
+    public StanClient(final NatsConnection connection, final String clusterId, final String clientId, final int maxPubAcksInFlight, final boolean ownsConnection) {
+        this.connection = connection;
+        this.ownsConnection = ownsConnection;
+        this.clusterId = clusterId;
+        this.clientId = clientId;
+        this.timeoutMs = connection.timeoutMs;
+        this.window = new Semaphore(maxPubAcksInFlight);
+        this.guidPrefix = NatsConnection.newInbox().substring(7) + ".";
+        this.connId = guidPrefix.getBytes(UTF_8);
+        this.ackSubject = "_STAN.acks." + NatsConnection.newInbox().substring(7);
+        connection.subscribe(ackSubject, null, (subject, replyTo, payload) -> onPubAck(payload));
+        final String heartbeatInbox = NatsConnection.newInbox();
+        connection.subscribe(heartbeatInbox, null, (subject, replyTo, payload) -> {
+            if (replyTo != null) {
+                connection.publish(replyTo, null, EMPTY);
+            }
+        });
+        final Map<Integer, Object> response = decode(connection.request(DISCOVER_PREFIX + "." + clusterId, encode(
+                CONNECT_CLIENT_ID, clientId,
+                CONNECT_HEARTBEAT_INBOX, heartbeatInbox,
+                CONNECT_PROTOCOL, PROTOCOL_VERSION,
+                CONNECT_CONN_ID, connId,
+                CONNECT_PING_INTERVAL, 5,
+                CONNECT_PING_MAX_OUT, 88
+        ), timeoutMs));
+        final String error = string(response, CONNECTED_ERROR);
+        if (!error.isEmpty()) {
+            closeConnection();
+            throw new NatsProtocolException("Streaming connect failed [" + clientId + "] " + error);
+        }
+        this.pubPrefix = string(response, CONNECTED_PUB_PREFIX);
+        this.subRequests = string(response, CONNECTED_SUB_REQUESTS);
+        this.unsubRequests = string(response, CONNECTED_UNSUB_REQUESTS);
+        this.closeRequests = string(response, CONNECTED_CLOSE_REQUESTS);
+        this.subCloseRequests = string(response, CONNECTED_SUB_CLOSE_REQUESTS);
+    }
+
+    /**
+     * Buffers a message for the channel and returns without waiting for the ack <br />
+     * Blocks (after a flush) when the max number of unacknowledged messages is reached
+     *
+     * @param channel channel name
+     * @param data    payload
+     * @return future completed with the guid when the server stored the message
+     */
+    public CompletableFuture<String> publishAsync(final String channel, final byte[] data) {
+        acquireWindow();
+        final String guid = guidPrefix + guids.incrementAndGet();
+        final CompletableFuture<String> ack = new CompletableFuture<>();
+        pending.put(guid, ack);
+        connection.publish(pubPrefix + "." + channel, ackSubject, ByteBuffer.wrap(encode(
+                PUB_CLIENT_ID, clientId,
+                PUB_GUID, guid,
+                PUB_SUBJECT, channel,
+                PUB_DATA, data,
+                PUB_CONN_ID, connId
+        )));
+        return ack;
+    }
+
+    /**
+     * Publishes and waits until the server stored the message
+     *
+     * @param channel channel name
+     * @param data    payload
+     * @return guid of the message
+     */
+    public String publish(final String channel, final byte[] data) {
+        final CompletableFuture<String> ack = publishAsync(channel, data);
+        flush();
+        try {
+            return ack.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new NatsProtocolException("Publish failed on [" + channel + "]", e.getCause());
+        } catch (TimeoutException e) {
+            throw new NatsProtocolException("No ack within [" + timeoutMs + "] ms on [" + channel + "]", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NatsProtocolException("Interrupted while publishing on [" + channel + "]", e);
+        }
+    }
+
+    /**
+     * @param channel channel to subscribe to
+     * @return unstarted {@link StanSubscription} to configure and start with {@link StanSubscription#subscribe}
+     */
+    public StanSubscription subscription(final String channel) {
+        return new StanSubscription(this, channel);
+    }
+
+    /**
+     * Sends all buffered publishes and acks
+     *
+     * @return self {@link StanClient}
+     */
+    public StanClient flush() {
+        connection.flush();
+        return this;
+    }
+
+    /**
+     * @return number of published messages without ack
+     */
+    public int pendingAcks() {
+        return pending.size();
+    }
+
+    public String clientId() {
+        return clientId;
+    }
+
+    public String clusterId() {
+        return clusterId;
+    }
+
+    public NatsConnection connection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!connection.isClosed()) {
+                final String error = string(decode(connection.request(closeRequests, encode(CLOSE_CLIENT_ID, clientId), timeoutMs)), CLOSE_ERROR);
+                if (!error.isEmpty()) {
+                    throw new NatsProtocolException("Streaming close failed [" + clientId + "] " + error);
+                }
+            }
+        } finally {
+            final NatsProtocolException closed = new NatsProtocolException("Client closed [" + clientId + "]");
+            pending.values().forEach(ack -> ack.completeExceptionally(closed));
+            closeConnection();
+        }
+    }
+
+    protected void onPubAck(final ByteBuffer payload) {
+        final Map<Integer, Object> pubAck = decode(payload);
+        final CompletableFuture<String> ack = pending.remove(string(pubAck, PUB_ACK_GUID));
+        if (ack != null) {
+            window.release();
+            final String error = string(pubAck, PUB_ACK_ERROR);
+            if (error.isEmpty()) {
+                ack.complete(string(pubAck, PUB_ACK_GUID));
+            } else {
+                ack.completeExceptionally(new NatsProtocolException(error));
+            }
+        }
+    }
+
+    protected void acquireWindow() {
+        if (!window.tryAcquire()) {
+            flush();
+            try {
+                if (!window.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new NatsProtocolException("No publish acks within [" + timeoutMs + "] ms [" + clientId + "]");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NatsProtocolException("Interrupted while waiting for publish acks [" + clientId + "]", e);
+            }
+        }
+    }
+
+    protected void closeConnection() {
+        if (ownsConnection) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StanClient{" +
+                "clusterId=" + clusterId +
+                ", clientId=" + clientId +
+                ", pendingAcks=" + pending.size() +
+                '}';
+    }
+}
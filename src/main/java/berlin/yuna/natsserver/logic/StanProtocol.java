@@ -0,0 +1,208 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Hand written protobuf codec for the messages of the NATS streaming protocol (pb/protocol.proto) <br />
+ * Only the wire types used by the protocol are supported: varint and length delimited
+ */
+@SuppressWarnings("unused")
+public class StanProtocol {
+
+    public static final String DISCOVER_PREFIX = "_STAN.discover";
+    public static final int PROTOCOL_VERSION = 1;
+
+    // ConnectRequest
+    public static final int CONNECT_CLIENT_ID = 1;
+    public static final int CONNECT_HEARTBEAT_INBOX = 2;
+    public static final int CONNECT_PROTOCOL = 3;
+    public static final int CONNECT_CONN_ID = 4;
+    public static final int CONNECT_PING_INTERVAL = 5;
+    public static final int CONNECT_PING_MAX_OUT = 6;
+    // ConnectResponse
+    public static final int CONNECTED_PUB_PREFIX = 1;
+    public static final int CONNECTED_SUB_REQUESTS = 2;
+    public static final int CONNECTED_UNSUB_REQUESTS = 3;
+    public static final int CONNECTED_CLOSE_REQUESTS = 4;
+    public static final int CONNECTED_ERROR = 5;
+    public static final int CONNECTED_SUB_CLOSE_REQUESTS = 6;
+    // PubMsg
+    public static final int PUB_CLIENT_ID = 1;
+    public static final int PUB_GUID = 2;
+    public static final int PUB_SUBJECT = 3;
+    public static final int PUB_DATA = 5;
+    public static final int PUB_CONN_ID = 6;
+    // PubAck
+    public static final int PUB_ACK_GUID = 1;
+    public static final int PUB_ACK_ERROR = 2;
+    // SubscriptionRequest
+    public static final int SUB_CLIENT_ID = 1;
+    public static final int SUB_SUBJECT = 2;
+    public static final int SUB_QUEUE_GROUP = 3;
+    public static final int SUB_INBOX = 4;
+    public static final int SUB_MAX_IN_FLIGHT = 5;
+    public static final int SUB_ACK_WAIT_SECS = 6;
+    public static final int SUB_DURABLE_NAME = 7;
+    public static final int SUB_START_POSITION = 10;
+    public static final int SUB_START_SEQUENCE = 11;
+    public static final int SUB_START_TIME_DELTA = 12;
+    // SubscriptionResponse
+    public static final int SUB_RESPONSE_ACK_INBOX = 2;
+    public static final int SUB_RESPONSE_ERROR = 3;
+    // UnsubscribeRequest
+    public static final int UNSUB_CLIENT_ID = 1;
+    public static final int UNSUB_SUBJECT = 2;
+    public static final int UNSUB_INBOX = 3;
+    public static final int UNSUB_DURABLE_NAME = 4;
+    // MsgProto
+    public static final int MSG_SEQUENCE = 1;
+    public static final int MSG_SUBJECT = 2;
+    public static final int MSG_REPLY = 3;
+    public static final int MSG_DATA = 4;
+    public static final int MSG_TIMESTAMP = 5;
+    public static final int MSG_REDELIVERED = 6;
+    public static final int MSG_REDELIVERY_COUNT = 7;
+    public static final int MSG_CRC32 = 10;
+    // Ack
+    public static final int ACK_SUBJECT = 1;
+    public static final int ACK_SEQUENCE = 2;
+    // CloseRequest / CloseResponse
+    public static final int CLOSE_CLIENT_ID = 1;
+    public static final int CLOSE_ERROR = 1;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    /**
+     * Where a new subscription starts to receive messages
+     */
+    public enum StartPosition {
+        NEW_ONLY,
+        LAST_RECEIVED,
+        TIME_DELTA_START,
+        SEQUENCE_START,
+        FIRST
+    }
+
+    private StanProtocol() {
+    }
+
+    /**
+     * Encodes a message from field number / value pairs - null, empty and zero values are skipped like in proto3
+     *
+     * @param fields pairs of field number and value [String, byte[], Number, Boolean, Enum]
+     * @return protobuf encoded message
+     */
+    public static byte[] encode(final Object... fields) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        for (int i = 0; i < fields.length - 1; i += 2) {
+            final int field = (Integer) fields[i];
+            final Object value = fields[i + 1];
+            if (value instanceof String && !((String) value).isEmpty()) {
+                writeBytes(out, field, ((String) value).getBytes(UTF_8));
+            } else if (value instanceof byte[] && ((byte[]) value).length > 0) {
+                writeBytes(out, field, (byte[]) value);
+            } else if (value instanceof Number && ((Number) value).longValue() != 0) {
+                writeVarint(out, field, ((Number) value).longValue());
+            } else if (value instanceof Boolean && (Boolean) value) {
+                writeVarint(out, field, 1);
+            } else if (value instanceof Enum && ((Enum<?>) value).ordinal() != 0) {
+                writeVarint(out, field, ((Enum<?>) value).ordinal());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a message into field number to value - varints as {@link Long}, length delimited as byte[]
+     *
+     * @param buffer encoded message (position is moved to the limit)
+     * @return decoded fields
+     */
+    public static Map<Integer, Object> decode(final ByteBuffer buffer) {
+        final Map<Integer, Object> result = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            final long key = readVarint(buffer);
+            final int field = (int) (key >>> 3);
+            switch ((int) (key & 0x7)) {
+                case WIRE_VARINT -> result.put(field, readVarint(buffer));
+                case WIRE_FIXED64 -> result.put(field, Long.reverseBytes(buffer.getLong()));
+                case WIRE_FIXED32 -> result.put(field, (long) Integer.reverseBytes(buffer.getInt()));
+                case WIRE_LENGTH -> {
+                    final byte[] bytes = new byte[(int) readVarint(buffer)];
+                    buffer.get(bytes);
+                    result.put(field, bytes);
+                }
+                default -> throw new NatsProtocolException("Unsupported protobuf wire type [" + (key & 0x7) + "] for field [" + field + "]");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see StanProtocol#decode(ByteBuffer)
+     */
+    public static Map<Integer, Object> decode(final byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    public static String string(final Map<Integer, Object> message, final int field) {
+        final Object value = message.get(field);
+        return value instanceof byte[] ? new String((byte[]) value, UTF_8) : "";
+    }
+
+    public static byte[] bytes(final Map<Integer, Object> message, final int field) {
+        final Object value = message.get(field);
+        return value instanceof byte[] ? (byte[]) value : new byte[0];
+    }
+
+    public static long number(final Map<Integer, Object> message, final int field) {
+        final Object value = message.get(field);
+        return value instanceof Long ? (Long) value : 0L;
+    }
+
+    public static boolean bool(final Map<Integer, Object> message, final int field) {
+        return number(message, field) != 0;
+    }
+
+    private static void writeBytes(final ByteArrayOutputStream out, final int field, final byte[] value) {
+        writeRawVarint(out, ((long) field << 3) | WIRE_LENGTH);
+        writeRawVarint(out, value.length);
+        out.write(value, 0, value.length);
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream out, final int field, final long value) {
+        writeRawVarint(out, ((long) field << 3) | WIRE_VARINT);
+        writeRawVarint(out, value);
+    }
+
+    private static void writeRawVarint(final ByteArrayOutputStream out, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarint(final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new NatsProtocolException("Malformed protobuf varint");
+    }
+}
@@ -0,0 +1,236 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.logic.StanProtocol.StartPosition;
+import berlin.yuna.natsserver.model.StanMessage;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static berlin.yuna.natsserver.logic.StanProtocol.*;
+
+/**
+ * Subscription on a streaming channel - configure first, then start with {@link #subscribe(Consumer)}
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class StanSubscription implements AutoCloseable {
+
+    protected final StanClient client;
+    protected final String channel;
+    protected final CompletableFuture<String> ackInbox = new CompletableFuture<>();
+    protected String queueGroup;
+    protected String durableName;
+    protected int maxInFlight = 1024;
+    protected int ackWaitSecs = 30;
+    protected StartPosition startPosition = StartPosition.NEW_ONLY;
+    protected long startSequence;
+    protected long startTimeDeltaNs;
+    protected boolean manualAcks;
+    protected String inbox;
+    protected int sid = -1;
+
+    protected StanSubscription(final StanClient client, final String channel) {
+        this.client = client;
+        this.channel = channel;
+    }
+
+    /**
+     * @param queueGroup queue group - messages are distributed over all members
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription queueGroup(final String queueGroup) {
+        this.queueGroup = queueGroup;
+        return this;
+    }
+
+    /**
+     * @param durableName durable name - the server remembers the position after close
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription durableName(final String durableName) {
+        this.durableName = durableName;
+        return this;
+    }
+
+    /**
+     * @param maxInFlight max number of unacknowledged messages the server sends (default: 1024)
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription maxInFlight(final int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * @param ackWaitSecs seconds after which an unacknowledged message is redelivered (default: 30)
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription ackWaitSecs(final int ackWaitSecs) {
+        this.ackWaitSecs = ackWaitSecs;
+        return this;
+    }
+
+    /**
+     * @return self {@link StanSubscription} starting with the first available message
+     */
+    public StanSubscription deliverAllAvailable() {
+        this.startPosition = StartPosition.FIRST;
+        return this;
+    }
+
+    /**
+     * @param sequence first channel sequence to receive
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription startAtSequence(final long sequence) {
+        this.startPosition = StartPosition.SEQUENCE_START;
+        this.startSequence = sequence;
+        return this;
+    }
+
+    /**
+     * @param deltaNs receive messages stored within the last nanoseconds
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription startAtTimeDelta(final long deltaNs) {
+        this.startPosition = StartPosition.TIME_DELTA_START;
+        this.startTimeDeltaNs = deltaNs;
+        return this;
+    }
+
+    /**
+     * @return self {@link StanSubscription} starting with the last stored message
+     */
+    public StanSubscription startWithLastReceived() {
+        this.startPosition = StartPosition.LAST_RECEIVED;
+        return this;
+    }
+
+    /**
+     * @param manualAcks true == the handler has to call {@link #ack(StanMessage)}, false == acked after the handler returns
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription manualAcks(final boolean manualAcks) {
+        this.manualAcks = manualAcks;
+        return this;
+    }
+
+    /**
+     * Sends the subscription request - the handler runs on the reader thread of the connection
+     *
+     * @param handler message handler
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription subscribe(final Consumer<StanMessage> handler) {
+        final NatsConnection connection = client.connection();
+        inbox = NatsConnection.newInbox();
+        sid = connection.subscribe(inbox, null, (subject, replyTo, payload) -> {
+            final StanMessage message = toMessage(payload);
+            handler.accept(message);
+            if (!manualAcks) {
+                ack(message);
+            }
+        });
+        try {
+            final Map<Integer, Object> response = decode(connection.request(client.subRequests, encode(
+                    SUB_CLIENT_ID, client.clientId(),
+                    SUB_SUBJECT, channel,
+                    SUB_QUEUE_GROUP, queueGroup,
+                    SUB_INBOX, inbox,
+                    SUB_MAX_IN_FLIGHT, maxInFlight,
+                    SUB_ACK_WAIT_SECS, ackWaitSecs,
+                    SUB_DURABLE_NAME, durableName,
+                    SUB_START_POSITION, startPosition,
+                    SUB_START_SEQUENCE, startSequence,
+                    SUB_START_TIME_DELTA, startTimeDeltaNs
+            ), client.timeoutMs));
+            final String error = string(response, SUB_RESPONSE_ERROR);
+            if (!error.isEmpty()) {
+                throw new NatsProtocolException("Subscription failed on [" + channel + "] " + error);
+            }
+            ackInbox.complete(string(response, SUB_RESPONSE_ACK_INBOX));
+            connection.flush();
+        } catch (RuntimeException e) {
+            connection.unsubscribe(sid);
+            ackInbox.completeExceptionally(e);
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * Acknowledges a message - the ack is buffered and flushed with the next read batch or {@link StanClient#flush()} <br />
+     * Never blocks: messages can arrive before the subscription response, their acks are sent once the ack inbox is known
+     *
+     * @param message received message
+     * @return self {@link StanSubscription}
+     */
+    public StanSubscription ack(final StanMessage message) {
+        final byte[] ack = encode(
+                ACK_SUBJECT, message.subject(),
+                ACK_SEQUENCE, message.sequence()
+        );
+        ackInbox.thenAccept(subject -> client.connection().publish(subject, null, ByteBuffer.wrap(ack)));
+        return this;
+    }
+
+    /**
+     * Removes the subscription - durables lose their position
+     */
+    public void unsubscribe() {
+        remove(client.unsubRequests);
+    }
+
+    /**
+     * Closes the subscription - durables keep their position (falls back to {@link #unsubscribe()} on old servers)
+     */
+    @Override
+    public void close() {
+        remove(client.subCloseRequests.isEmpty() ? client.unsubRequests : client.subCloseRequests);
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    protected void remove(final String requestSubject) {
+        if (sid != -1 && !client.connection().isClosed()) {
+            final String error = string(decode(client.connection().request(requestSubject, encode(
+                    UNSUB_CLIENT_ID, client.clientId(),
+                    UNSUB_SUBJECT, channel,
+                    UNSUB_INBOX, ackInbox.join(),
+                    UNSUB_DURABLE_NAME, durableName
+            ), client.timeoutMs)), SUB_RESPONSE_ERROR);
+            client.connection().unsubscribe(sid);
+            sid = -1;
+            if (!error.isEmpty()) {
+                throw new NatsProtocolException("Unsubscribe failed on [" + channel + "] " + error);
+            }
+        }
+    }
+
+    protected static StanMessage toMessage(final ByteBuffer payload) {
+        final Map<Integer, Object> msg = decode(payload);
+        return new StanMessage(
+                number(msg, MSG_SEQUENCE),
+                string(msg, MSG_SUBJECT),
+                bytes(msg, MSG_DATA),
+                number(msg, MSG_TIMESTAMP),
+                bool(msg, MSG_REDELIVERED),
+                (int) number(msg, MSG_REDELIVERY_COUNT)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "StanSubscription{" +
+                "channel=" + channel +
+                ", queueGroup=" + queueGroup +
+                ", durableName=" + durableName +
+                ", startPosition=" + startPosition +
+                ", active=" + (sid != -1) +
+                '}';
+    }
+}
@@ -0,0 +1,160 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a benchmark run - rates are calculated from the measured duration
+ */
+@SuppressWarnings("unused")
+public class BenchmarkResult {
+
+    private final String name;
+    private final long published;
+    private final long received;
+    private final long expected;
+    private final int messageSize;
+    private final long publishNs;
+    private final long receiveNs;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram serviceTime;
+
+    /**
+     * @param name        benchmark name
+     * @param published   number of published messages
+     * @param received    number of messages received by all subscribers
+     * @param expected    number of messages the subscribers should have received
+     * @param messageSize payload size in bytes
+     * @param publishNs   duration from first to last publish including the final flush
+     * @param receiveNs   duration from first publish to last received message
+     * @param latency     end to end latency measured from the intended send time (corrected for coordinated omission)
+     * @param serviceTime end to end latency measured from the actual send time
+     */
+    public BenchmarkResult(final String name, final long published, final long received, final long expected, final int messageSize, final long publishNs, final long receiveNs, final LatencyHistogram latency, final LatencyHistogram serviceTime) {
+        this.name = name;
+        this.published = published;
+        this.received = received;
+        this.expected = expected;
+        this.messageSize = messageSize;
+        this.publishNs = publishNs;
+        this.receiveNs = receiveNs;
+        this.latency = latency;
+        this.serviceTime = serviceTime;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long published() {
+        return published;
+    }
+
+    public long received() {
+        return received;
+    }
+
+    public long expected() {
+        return expected;
+    }
+
+    /**
+     * @return messages the subscribers did not receive e.g. cause of slow consumers or limits
+     */
+    public long dropped() {
+        return Math.max(0, expected - received);
+    }
+
+    public int messageSize() {
+        return messageSize;
+    }
+
+    public long publishNs() {
+        return publishNs;
+    }
+
+    public long receiveNs() {
+        return receiveNs;
+    }
+
+    /**
+     * @return published messages per second
+     */
+    public double publishRate() {
+        return rate(published, publishNs);
+    }
+
+    /**
+     * @return received messages per second over all subscribers
+     */
+    public double receiveRate() {
+        return rate(received, receiveNs);
+    }
+
+    /**
+     * @return published payload megabytes per second
+     */
+    public double publishMbPerSec() {
+        return publishRate() * messageSize / (1024d * 1024d);
+    }
+
+    /**
+     * @return received payload megabytes per second over all subscribers
+     */
+    public double receiveMbPerSec() {
+        return receiveRate() * messageSize / (1024d * 1024d);
+    }
+
+    /**
+     * @return latency from the intended send time - corrected for coordinated omission when a rate was set
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return latency from the actual send time - hides publisher stalls
+     */
+    public LatencyHistogram serviceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * @return named values for reports
+     */
+    public Map<String, Number> metrics() {
+        final Map<String, Number> result = new LinkedHashMap<>();
+        result.put("published", published);
+        result.put("received", received);
+        result.put("dropped", dropped());
+        result.put("publish_msgs_per_sec", publishRate());
+        result.put("publish_mb_per_sec", publishMbPerSec());
+        result.put("receive_msgs_per_sec", receiveRate());
+        result.put("receive_mb_per_sec", receiveMbPerSec());
+        result.put("latency_p50_us", latency.percentile(50) / 1000d);
+        result.put("latency_p99_us", latency.percentile(99) / 1000d);
+        result.put("latency_p999_us", latency.percentile(99.9) / 1000d);
+        result.put("latency_max_us", latency.max() / 1000d);
+        return result;
+    }
+
+    private static double rate(final long count, final long durationNs) {
+        return durationNs <= 0 ? 0 : count / (durationNs / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkResult{" +
+                "name=" + name +
+                ", published=" + published +
+                ", received=" + received +
+                ", dropped=" + dropped() +
+                ", publish=" + format("%.0f msgs/s %.2f MB/s", publishRate(), publishMbPerSec()) +
+                ", receive=" + format("%.0f msgs/s %.2f MB/s", receiveRate(), receiveMbPerSec()) +
+                ", latency=" + latency +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a channel export or import
+ */
+@SuppressWarnings("unused")
+public class ChannelTransferResult {
+
+    private final Map<String, Long> channels;
+    private final long bytes;
+    private final long durationNs;
+
+    /**
+     * @param channels   transferred messages per channel
+     * @param bytes      transferred payload bytes
+     * @param durationNs duration of the transfer
+     */
+    public ChannelTransferResult(final Map<String, Long> channels, final long bytes, final long durationNs) {
+        this.channels = Collections.unmodifiableMap(new LinkedHashMap<>(channels));
+        this.bytes = bytes;
+        this.durationNs = durationNs;
+    }
+
+    public Map<String, Long> channels() {
+        return channels;
+    }
+
+    /**
+     * @return transferred messages over all channels
+     */
+    public long messages() {
+        return channels.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long durationNs() {
+        return durationNs;
+    }
+
+    /**
+     * @return messages per second
+     */
+    public double rate() {
+        return durationNs <= 0 ? 0 : messages() / (durationNs / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return payload megabytes per second
+     */
+    public double mbPerSec() {
+        return durationNs <= 0 ? 0 : bytes / (1024d * 1024d) / (durationNs / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelTransferResult{" +
+                "channels=" + channels +
+                ", bytes=" + bytes +
+                ", rate=" + format("%.0f msgs/s %.2f MB/s", rate(), mbPerSec()) +
+                '}';
+    }
+}
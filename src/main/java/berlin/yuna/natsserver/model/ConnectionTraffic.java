@@ -0,0 +1,163 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live traffic aggregates of one client connection - in == client to server, out == server to client
+ */
+@SuppressWarnings({"unused", "UnusedReturnValue"})
+public class ConnectionTraffic {
+
+    private final long id;
+    private final long openedAt;
+    private final AtomicLong closedAt = new AtomicLong(0);
+    private final AtomicLong bytesIn = new AtomicLong(0);
+    private final AtomicLong bytesOut = new AtomicLong(0);
+    private final Map<String, AtomicLong> ops = new ConcurrentHashMap<>();
+    private final SizeHistogram payloadsIn = new SizeHistogram();
+    private final SizeHistogram payloadsOut = new SizeHistogram();
+    private volatile String name;
+
+    /**
+     * @param id       connection number
+     * @param openedAt epoch millis of the connect
+     */
+    public ConnectionTraffic(final long id, final long openedAt) {
+        this.id = id;
+        this.openedAt = openedAt;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    /**
+     * @return client name from the CONNECT options or null
+     */
+    public String name() {
+        return name;
+    }
+
+    public ConnectionTraffic name(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    public long openedAt() {
+        return openedAt;
+    }
+
+    /**
+     * @return epoch millis of the disconnect or 0 while connected
+     */
+    public long closedAt() {
+        return closedAt.get();
+    }
+
+    public ConnectionTraffic closedAt(final long closedAt) {
+        this.closedAt.set(closedAt);
+        return this;
+    }
+
+    public boolean closed() {
+        return closedAt.get() != 0;
+    }
+
+    public long bytesIn() {
+        return bytesIn.get();
+    }
+
+    public long bytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * @return published messages (PUB, HPUB)
+     */
+    public long msgsIn() {
+        return payloadsIn.count();
+    }
+
+    /**
+     * @return delivered messages (MSG, HMSG)
+     */
+    public long msgsOut() {
+        return payloadsOut.count();
+    }
+
+    /**
+     * @return protocol operation counts of both directions e.g. PUB, MSG, PING
+     */
+    public Map<String, Long> ops() {
+        final Map<String, Long> result = new TreeMap<>();
+        ops.forEach((op, value) -> result.put(op, value.get()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    public SizeHistogram payloadsIn() {
+        return payloadsIn;
+    }
+
+    public SizeHistogram payloadsOut() {
+        return payloadsOut;
+    }
+
+    /**
+     * @param in    [true] == client to server
+     * @param bytes received bytes
+     * @return self {@link ConnectionTraffic}
+     */
+    public ConnectionTraffic recordBytes(final boolean in, final long bytes) {
+        (in ? bytesIn : bytesOut).addAndGet(bytes);
+        return this;
+    }
+
+    /**
+     * @param op protocol operation
+     * @return self {@link ConnectionTraffic}
+     */
+    public ConnectionTraffic recordOp(final String op) {
+        ops.computeIfAbsent(op, key -> new AtomicLong(0)).incrementAndGet();
+        return this;
+    }
+
+    /**
+     * @param in   [true] == published by the client
+     * @param size payload size in bytes
+     * @return self {@link ConnectionTraffic}
+     */
+    public ConnectionTraffic recordPayload(final boolean in, final long size) {
+        (in ? payloadsIn : payloadsOut).record(size);
+        return this;
+    }
+
+    /**
+     * @param other traffic to add to this one
+     * @return self {@link ConnectionTraffic}
+     */
+    public ConnectionTraffic add(final ConnectionTraffic other) {
+        bytesIn.addAndGet(other.bytesIn.get());
+        bytesOut.addAndGet(other.bytesOut.get());
+        other.ops.forEach((op, value) -> ops.computeIfAbsent(op, key -> new AtomicLong(0)).addAndGet(value.get()));
+        payloadsIn.add(other.payloadsIn);
+        payloadsOut.add(other.payloadsOut);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionTraffic{" +
+                "id=" + id +
+                ", name=" + name +
+                ", bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                ", msgsIn=" + msgsIn() +
+                ", msgsOut=" + msgsOut() +
+                ", ops=" + ops() +
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe log-linear histogram for nanosecond values with a fixed memory footprint <br />
+ * Every power of two is split into 128 linear buckets which keeps the relative error below 1%
+ */
+@SuppressWarnings("unused")
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * @param valueNs value to record - negative values are recorded as zero
+     * @return self {@link LatencyHistogram}
+     */
+    public LatencyHistogram record(final long valueNs) {
+        final long value = Math.max(0, valueNs);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+        return this;
+    }
+
+    /**
+     * Records the value and back fills the samples which were never taken as the recorder was stalled <br />
+     * Use it if the measured operation should have been started every expected interval
+     *
+     * @param valueNs            measured value
+     * @param expectedIntervalNs interval in which values were expected (&lt;=0 to disable correction)
+     * @return self {@link LatencyHistogram}
+     */
+    public LatencyHistogram recordCorrected(final long valueNs, final long expectedIntervalNs) {
+        record(valueNs);
+        if (expectedIntervalNs > 0) {
+            for (long missing = valueNs - expectedIntervalNs; missing >= expectedIntervalNs; missing -= expectedIntervalNs) {
+                record(missing);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param other histogram to merge into this one
+     * @return self {@link LatencyHistogram}
+     */
+    public LatencyHistogram add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            final long value = other.counts.get(i);
+            if (value != 0) {
+                counts.addAndGet(i, value);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        min.accumulateAndGet(other.min.get(), Math::min);
+        max.accumulateAndGet(other.max.get(), Math::max);
+        return this;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100 e.g. 99.9
+     * @return highest value of the bucket containing the percentile or 0 if empty
+     */
+    public long percentile(final double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100d * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long min() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    protected static int indexOf(final long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    protected static long highestValueOf(final int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_COUNT - 1;
+        final long mantissa = (index % SUB_COUNT) + (long) SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private static String format(final long valueNs) {
+        return String.format("%.3fms", valueNs / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + count() +
+                ", min=" + format(min()) +
+                ", p50=" + format(percentile(50)) +
+                ", p90=" + format(percentile(90)) +
+                ", p99=" + format(percentile(99)) +
+                ", p99.9=" + format(percentile(99.9)) +
+                ", max=" + format(max()) +
+                '}';
+    }
+}
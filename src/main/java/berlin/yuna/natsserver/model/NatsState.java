@@ -0,0 +1,23 @@
+package berlin.yuna.natsserver.model;
+
+/**
+ * Lifecycle of a server <br />
+ * NEW -&gt; STARTING -&gt; READY -&gt; STOPPING -&gt; STOPPED, a failed start or a server error ends in FAILED.
+ * STOPPED and FAILED servers can be started again
+ */
+public enum NatsState {
+
+    NEW,
+    STARTING,
+    READY,
+    STOPPING,
+    STOPPED,
+    FAILED;
+
+    /**
+     * @return true if the server can be started from this state
+     */
+    public boolean isStartable() {
+        return this == NEW || this == STOPPED || this == FAILED;
+    }
+}
@@ -0,0 +1,90 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a simulated network partition of a cluster with the stall seen by a background probe client
+ */
+@SuppressWarnings("unused")
+public class PartitionResult {
+
+    private final Set<String> minority;
+    private final boolean leaderIsolated;
+    private final double electionMs;
+    private final double maxStallMs;
+    private final double totalStallMs;
+    private final long probeOk;
+    private final long probeFailed;
+    private final Map<String, Double> catchUpMs;
+
+    /**
+     * @param minority       node ids cut off from the majority
+     * @param leaderIsolated true if the leader was part of the minority
+     * @param electionMs     time from the partition until the majority had a leader
+     * @param maxStallMs     longest time without acknowledged probe publish around a failure
+     * @param totalStallMs   sum of all times without acknowledged probe publish around failures
+     * @param probeOk        acknowledged probe publishes
+     * @param probeFailed    failed probe publishes
+     * @param catchUpMs      per node id: time from healing until the node stored all messages of the leader
+     */
+    public PartitionResult(final Set<String> minority, final boolean leaderIsolated, final double electionMs, final double maxStallMs, final double totalStallMs, final long probeOk, final long probeFailed, final Map<String, Double> catchUpMs) {
+        this.minority = Collections.unmodifiableSet(new LinkedHashSet<>(minority));
+        this.leaderIsolated = leaderIsolated;
+        this.electionMs = electionMs;
+        this.maxStallMs = maxStallMs;
+        this.totalStallMs = totalStallMs;
+        this.probeOk = probeOk;
+        this.probeFailed = probeFailed;
+        this.catchUpMs = Collections.unmodifiableMap(new LinkedHashMap<>(catchUpMs));
+    }
+
+    public Set<String> minority() {
+        return minority;
+    }
+
+    public boolean leaderIsolated() {
+        return leaderIsolated;
+    }
+
+    public double electionMs() {
+        return electionMs;
+    }
+
+    public double maxStallMs() {
+        return maxStallMs;
+    }
+
+    public double totalStallMs() {
+        return totalStallMs;
+    }
+
+    public long probeOk() {
+        return probeOk;
+    }
+
+    public long probeFailed() {
+        return probeFailed;
+    }
+
+    public Map<String, Double> catchUpMs() {
+        return catchUpMs;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionResult{" +
+                "minority=" + minority +
+                ", leaderIsolated=" + leaderIsolated +
+                ", electionMs=" + format("%.1f", electionMs) +
+                ", maxStallMs=" + format("%.1f", maxStallMs) +
+                ", probe=" + format("%d ok %d failed", probeOk, probeFailed) +
+                ", catchUpMs=" + catchUpMs +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU and memory usage of a process over a sampling window
+ */
+@SuppressWarnings("unused")
+public class ProcessStats {
+
+    private final long pid;
+    private final long wallNs;
+    private final long cpuNs;
+    private final long peakRssBytes;
+    private final long avgRssBytes;
+    private final int samples;
+
+    /**
+     * @param pid          process id
+     * @param wallNs       length of the sampling window
+     * @param cpuNs        user + system cpu time used within the window (-1 == unknown)
+     * @param peakRssBytes highest resident set size seen (-1 == unknown)
+     * @param avgRssBytes  average resident set size (-1 == unknown)
+     * @param samples      number of memory samples
+     */
+    public ProcessStats(final long pid, final long wallNs, final long cpuNs, final long peakRssBytes, final long avgRssBytes, final int samples) {
+        this.pid = pid;
+        this.wallNs = wallNs;
+        this.cpuNs = cpuNs;
+        this.peakRssBytes = peakRssBytes;
+        this.avgRssBytes = avgRssBytes;
+        this.samples = samples;
+    }
+
+    public long pid() {
+        return pid;
+    }
+
+    public long wallNs() {
+        return wallNs;
+    }
+
+    public long cpuNs() {
+        return cpuNs;
+    }
+
+    /**
+     * @return cpu usage in percent of one core (e.g. 250 == two and a half cores)
+     */
+    public double cpuPercent() {
+        return cpuNs < 0 || wallNs <= 0 ? -1 : cpuNs * 100d / wallNs;
+    }
+
+    public long peakRssBytes() {
+        return peakRssBytes;
+    }
+
+    public long avgRssBytes() {
+        return avgRssBytes;
+    }
+
+    public int samples() {
+        return samples;
+    }
+
+    /**
+     * @return named values for reports
+     */
+    public Map<String, Number> metrics() {
+        final Map<String, Number> result = new LinkedHashMap<>();
+        result.put("cpu_ms", cpuNs < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(cpuNs));
+        result.put("cpu_percent", cpuPercent());
+        result.put("rss_peak_mb", peakRssBytes < 0 ? -1 : peakRssBytes / (1024d * 1024d));
+        result.put("rss_avg_mb", avgRssBytes < 0 ? -1 : avgRssBytes / (1024d * 1024d));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessStats{" +
+                "pid=" + pid +
+                ", cpuPercent=" + String.format("%.1f", cpuPercent()) +
+                ", peakRssBytes=" + peakRssBytes +
+                ", samples=" + samples +
+                '}';
+    }
+}
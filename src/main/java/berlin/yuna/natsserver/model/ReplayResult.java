@@ -0,0 +1,100 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a traffic replay with the achieved throughput and the lag behind the recorded schedule
+ */
+@SuppressWarnings("unused")
+public class ReplayResult {
+
+    private final long messages;
+    private final long streamingMessages;
+    private final long bytes;
+    private final long errors;
+    private final long recordedNs;
+    private final long durationNs;
+    private final double speed;
+    private final LatencyHistogram lag;
+
+    /**
+     * @param messages          replayed messages
+     * @param streamingMessages replayed messages which were streaming publishes
+     * @param bytes             replayed payload bytes
+     * @param errors            failed or unacknowledged streaming publishes
+     * @param recordedNs        time between the first and the last recorded publish
+     * @param durationNs        time between the first replayed publish and the last ack
+     * @param speed             requested speed factor (0 == as fast as possible)
+     * @param lag               delay of each publish behind its scheduled time
+     */
+    public ReplayResult(final long messages, final long streamingMessages, final long bytes, final long errors, final long recordedNs, final long durationNs, final double speed, final LatencyHistogram lag) {
+        this.messages = messages;
+        this.streamingMessages = streamingMessages;
+        this.bytes = bytes;
+        this.errors = errors;
+        this.recordedNs = recordedNs;
+        this.durationNs = durationNs;
+        this.speed = speed;
+        this.lag = lag;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    public long streamingMessages() {
+        return streamingMessages;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long errors() {
+        return errors;
+    }
+
+    public long recordedNs() {
+        return recordedNs;
+    }
+
+    public long durationNs() {
+        return durationNs;
+    }
+
+    public double speed() {
+        return speed;
+    }
+
+    public LatencyHistogram lag() {
+        return lag;
+    }
+
+    /**
+     * @return messages per second
+     */
+    public double rate() {
+        return durationNs <= 0 ? 0 : messages / (durationNs / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return recorded duration divided by the replay duration
+     */
+    public double achievedSpeed() {
+        return durationNs <= 0 ? 0 : recordedNs / (double) durationNs;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayResult{" +
+                "messages=" + messages +
+                ", streamingMessages=" + streamingMessages +
+                ", errors=" + errors +
+                ", rate=" + format("%.0f msgs/s", rate()) +
+                ", speed=" + format("%.2fx of %.2fx", achievedSpeed(), speed) +
+                ", lag=" + lag +
+                '}';
+    }
+}
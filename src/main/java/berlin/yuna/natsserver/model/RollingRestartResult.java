@@ -0,0 +1,113 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a rolling cluster restart with the availability seen by a background probe client
+ */
+@SuppressWarnings("unused")
+public class RollingRestartResult {
+
+    private final Map<String, Double> restartMs;
+    private final Map<String, Double> catchUpMs;
+    private final Map<String, Double> restartRates;
+    private final double baselineRate;
+    private final long probeOk;
+    private final long probeFailed;
+    private final double maxGapMs;
+    private final double totalGapMs;
+    private final long durationNs;
+
+    /**
+     * @param restartMs    per node id: time from stop until the node rejoined the cluster
+     * @param catchUpMs    per node id: time from rejoin until the node stored all messages the leader had at rejoin
+     * @param restartRates per node id: acknowledged probe publishes per second while the node was restarted
+     * @param baselineRate acknowledged probe publishes per second before the first restart
+     * @param probeOk      acknowledged probe publishes
+     * @param probeFailed  failed probe publishes
+     * @param maxGapMs     longest time without acknowledged publish around a failure
+     * @param totalGapMs   sum of all times without acknowledged publish around failures
+     * @param durationNs   duration of the rolling restart
+     */
+    public RollingRestartResult(final Map<String, Double> restartMs, final Map<String, Double> catchUpMs, final Map<String, Double> restartRates, final double baselineRate, final long probeOk, final long probeFailed, final double maxGapMs, final double totalGapMs, final long durationNs) {
+        this.restartMs = Collections.unmodifiableMap(new LinkedHashMap<>(restartMs));
+        this.catchUpMs = Collections.unmodifiableMap(new LinkedHashMap<>(catchUpMs));
+        this.restartRates = Collections.unmodifiableMap(new LinkedHashMap<>(restartRates));
+        this.baselineRate = baselineRate;
+        this.probeOk = probeOk;
+        this.probeFailed = probeFailed;
+        this.maxGapMs = maxGapMs;
+        this.totalGapMs = totalGapMs;
+        this.durationNs = durationNs;
+    }
+
+    public Map<String, Double> restartMs() {
+        return restartMs;
+    }
+
+    public Map<String, Double> catchUpMs() {
+        return catchUpMs;
+    }
+
+    public Map<String, Double> restartRates() {
+        return restartRates;
+    }
+
+    public double baselineRate() {
+        return baselineRate;
+    }
+
+    public long probeOk() {
+        return probeOk;
+    }
+
+    public long probeFailed() {
+        return probeFailed;
+    }
+
+    public double maxGapMs() {
+        return maxGapMs;
+    }
+
+    public double totalGapMs() {
+        return totalGapMs;
+    }
+
+    public long durationNs() {
+        return durationNs;
+    }
+
+    /**
+     * @return lowest restart rate relative to the baseline rate in percent (negative == dip)
+     */
+    public double maxDipPercent() {
+        return baselineRate <= 0 ? 0 : restartRates.values().stream()
+                .mapToDouble(rate -> (rate - baselineRate) / baselineRate * 100d)
+                .min().orElse(0);
+    }
+
+    /**
+     * @return availability of the probe client during the rolling restart in percent
+     */
+    public double availabilityPercent() {
+        final double durationMs = durationNs / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        return durationMs <= 0 ? 100 : Math.max(0, 100d - totalGapMs / durationMs * 100d);
+    }
+
+    @Override
+    public String toString() {
+        return "RollingRestartResult{" +
+                "restartMs=" + restartMs +
+                ", catchUpMs=" + catchUpMs +
+                ", probe=" + format("%d ok %d failed", probeOk, probeFailed) +
+                ", maxGapMs=" + format("%.1f", maxGapMs) +
+                ", availability=" + format("%.2f%%", availabilityPercent()) +
+                ", maxDip=" + format("%.1f%%", maxDipPercent()) +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Collection;
+import java.util.Locale;
+
+import static java.lang.String.format;
+
+/**
+ * Mean and standard deviation of repeated measurements with Welch's t-test for comparing two samples
+ */
+@SuppressWarnings("unused")
+public class SampleStats {
+
+    private static final int MAX_ITERATIONS = 200;
+    private static final double EPSILON = 1e-12;
+
+    private final int count;
+    private final double mean;
+    private final double stdDev;
+
+    /**
+     * @param count  number of measurements
+     * @param mean   arithmetic mean
+     * @param stdDev sample standard deviation (n - 1)
+     */
+    public SampleStats(final int count, final double mean, final double stdDev) {
+        this.count = count;
+        this.mean = mean;
+        this.stdDev = stdDev;
+    }
+
+    /**
+     * @param values measurements
+     * @return {@link SampleStats} of the values
+     */
+    public static SampleStats of(final Collection<? extends Number> values) {
+        final int count = values.size();
+        final double mean = values.stream().mapToDouble(Number::doubleValue).average().orElse(Double.NaN);
+        final double variance = count < 2 ? 0 : values.stream().mapToDouble(v -> Math.pow(v.doubleValue() - mean, 2)).sum() / (count - 1);
+        return new SampleStats(count, mean, Math.sqrt(variance));
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    public double stdDev() {
+        return stdDev;
+    }
+
+    /**
+     * @return variance of the mean
+     */
+    public double meanVariance() {
+        return count == 0 ? Double.NaN : stdDev * stdDev / count;
+    }
+
+    /**
+     * @param other sample to compare with
+     * @return relative change of the mean in percent from this to other
+     */
+    public double changePercent(final SampleStats other) {
+        return mean == 0 ? Double.NaN : (other.mean - mean) / Math.abs(mean) * 100d;
+    }
+
+    /**
+     * Two-sided Welch's t-test - does not assume equal variances
+     *
+     * @param other sample to compare with
+     * @return probability that the difference of the means is random (NaN if less than two measurements per sample)
+     */
+    public double pValue(final SampleStats other) {
+        if (count < 2 || other.count < 2) {
+            return Double.NaN;
+        }
+        final double variance = meanVariance() + other.meanVariance();
+        if (variance == 0) {
+            return mean == other.mean ? 1d : 0d;
+        }
+        final double t = (mean - other.mean) / Math.sqrt(variance);
+        final double df = variance * variance / (Math.pow(meanVariance(), 2) / (count - 1) + Math.pow(other.meanVariance(), 2) / (other.count - 1));
+        return regularizedBeta(df / (df + t * t), df / 2d, 0.5d);
+    }
+
+    /**
+     * Regularized incomplete beta function I_x(a, b) via continued fraction (Lentz)
+     */
+    static double regularizedBeta(final double x, final double a, final double b) {
+        if (x <= 0) {
+            return 0;
+        } else if (x >= 1) {
+            return 1;
+        } else if (x > (a + 1) / (a + b + 2)) {
+            return 1 - regularizedBeta(1 - x, b, a);
+        }
+        final double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x)) / a;
+        double c = 1;
+        double d = nonZero(1 - (a + b) * x / (a + 1));
+        d = 1 / d;
+        double result = d;
+        for (int m = 1; m <= MAX_ITERATIONS; m++) {
+            final double even = m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m));
+            d = 1 / nonZero(1 + even * d);
+            c = nonZero(1 + even / c);
+            result *= d * c;
+            final double odd = -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+            d = 1 / nonZero(1 + odd * d);
+            c = nonZero(1 + odd / c);
+            final double delta = d * c;
+            result *= delta;
+            if (Math.abs(delta - 1) < EPSILON) {
+                break;
+            }
+        }
+        return front * result;
+    }
+
+    /**
+     * Lanczos approximation of ln(gamma(x))
+     */
+    static double logGamma(final double x) {
+        final double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        final double tmp = x + 5.5 - (x + 0.5) * Math.log(x + 5.5);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    private static double nonZero(final double value) {
+        return Math.abs(value) < 1e-30 ? 1e-30 : value;
+    }
+
+    @Override
+    public String toString() {
+        return format(Locale.ROOT, "%.3f +-%.3f (n=%d)", mean, stdDev, count);
+    }
+}
@@ -0,0 +1,121 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe power of two histogram for byte sizes with a fixed memory footprint of 64 buckets <br />
+ * Bucket n counts sizes from 2^(n-1) to 2^n - 1, bucket 0 counts empty payloads
+ */
+@SuppressWarnings("unused")
+public class SizeHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * @param size size in bytes - negative values are recorded as zero
+     * @return self {@link SizeHistogram}
+     */
+    public SizeHistogram record(final long size) {
+        final long value = Math.max(0, size);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+        return this;
+    }
+
+    /**
+     * @param other histogram to merge into this one
+     * @return self {@link SizeHistogram}
+     */
+    public SizeHistogram add(final SizeHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            final long value = other.counts.get(i);
+            if (value != 0) {
+                counts.addAndGet(i, value);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+        return this;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100 e.g. 99.9
+     * @return upper bound of the bucket containing the percentile or 0 if empty
+     */
+    public long percentile(final double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100d * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * @return count per bucket upper bound - empty buckets are skipped
+     */
+    public Map<Long, Long> buckets() {
+        final Map<Long, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            final long value = counts.get(i);
+            if (value != 0) {
+                result.put(highestValueOf(i), value);
+            }
+        }
+        return result;
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    protected static int indexOf(final long value) {
+        return value == 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    protected static long highestValueOf(final int index) {
+        return index >= 63 ? Long.MAX_VALUE : (1L << index) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "SizeHistogram{" +
+                "count=" + count() +
+                ", mean=" + String.format("%.1f", mean()) +
+                ", p50=" + percentile(50) +
+                ", p99=" + percentile(99) +
+                ", max=" + max() +
+                '}';
+    }
+}
@@ -0,0 +1,182 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Result of a streaming workload - publish with acks, delivery incl. redelivery and replay from the store
+ */
+@SuppressWarnings("unused")
+public class StanBenchmarkResult {
+
+    private final String name;
+    private final int messageSize;
+    private final long published;
+    private final long acked;
+    private final long publishNs;
+    private final long received;
+    private final long expected;
+    private final long redelivered;
+    private final long receiveNs;
+    private final long replayed;
+    private final long replayNs;
+    private final LatencyHistogram ackLatency;
+    private final LatencyHistogram deliveryLatency;
+
+    /**
+     * @param name            workload name
+     * @param messageSize     payload size in bytes
+     * @param published       number of published messages
+     * @param acked           number of messages acknowledged by the server
+     * @param publishNs       duration from first publish to last ack
+     * @param received        number of first deliveries over all subscribers
+     * @param expected        number of first deliveries expected over all subscribers
+     * @param redelivered     number of redeliveries over all subscribers
+     * @param receiveNs       duration from first publish to last delivery
+     * @param replayed        number of messages replayed from the store
+     * @param replayNs        duration from replay subscription to last replayed message
+     * @param ackLatency      latency from publish to server ack
+     * @param deliveryLatency latency from publish to first delivery
+     */
+    @SuppressWarnings("java:S107")
+    public StanBenchmarkResult(final String name, final int messageSize, final long published, final long acked, final long publishNs, final long received, final long expected, final long redelivered, final long receiveNs, final long replayed, final long replayNs, final LatencyHistogram ackLatency, final LatencyHistogram deliveryLatency) {
+        this.name = name;
+        this.messageSize = messageSize;
+        this.published = published;
+        this.acked = acked;
+        this.publishNs = publishNs;
+        this.received = received;
+        this.expected = expected;
+        this.redelivered = redelivered;
+        this.receiveNs = receiveNs;
+        this.replayed = replayed;
+        this.replayNs = replayNs;
+        this.ackLatency = ackLatency;
+        this.deliveryLatency = deliveryLatency;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int messageSize() {
+        return messageSize;
+    }
+
+    public long published() {
+        return published;
+    }
+
+    public long acked() {
+        return acked;
+    }
+
+    public long publishNs() {
+        return publishNs;
+    }
+
+    public long received() {
+        return received;
+    }
+
+    public long expected() {
+        return expected;
+    }
+
+    public long redelivered() {
+        return redelivered;
+    }
+
+    public long receiveNs() {
+        return receiveNs;
+    }
+
+    public long replayed() {
+        return replayed;
+    }
+
+    public long replayNs() {
+        return replayNs;
+    }
+
+    /**
+     * @return acknowledged messages per second
+     */
+    public double publishRate() {
+        return rate(acked, publishNs);
+    }
+
+    /**
+     * @return first deliveries per second over all subscribers
+     */
+    public double receiveRate() {
+        return rate(received, receiveNs);
+    }
+
+    /**
+     * @return messages per second read back from the store
+     */
+    public double replayRate() {
+        return rate(replayed, replayNs);
+    }
+
+    /**
+     * @return acknowledged payload megabytes per second
+     */
+    public double publishMbPerSec() {
+        return publishRate() * messageSize / (1024d * 1024d);
+    }
+
+    public LatencyHistogram ackLatency() {
+        return ackLatency;
+    }
+
+    public LatencyHistogram deliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * @return named values for reports
+     */
+    public Map<String, Number> metrics() {
+        final Map<String, Number> result = new LinkedHashMap<>();
+        result.put("published", published);
+        result.put("acked", acked);
+        result.put("received", received);
+        result.put("redelivered", redelivered);
+        result.put("replayed", replayed);
+        result.put("publish_msgs_per_sec", publishRate());
+        result.put("publish_mb_per_sec", publishMbPerSec());
+        result.put("receive_msgs_per_sec", receiveRate());
+        result.put("replay_msgs_per_sec", replayRate());
+        result.put("ack_p50_us", ackLatency.percentile(50) / 1000d);
+        result.put("ack_p99_us", ackLatency.percentile(99) / 1000d);
+        result.put("ack_max_us", ackLatency.max() / 1000d);
+        result.put("delivery_p50_us", deliveryLatency.percentile(50) / 1000d);
+        result.put("delivery_p99_us", deliveryLatency.percentile(99) / 1000d);
+        return result;
+    }
+
+    private static double rate(final long count, final long durationNs) {
+        return durationNs <= 0 ? 0 : count / (durationNs / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return "StanBenchmarkResult{" +
+                "name=" + name +
+                ", published=" + published +
+                ", acked=" + acked +
+                ", received=" + received + "/" + expected +
+                ", redelivered=" + redelivered +
+                ", replayed=" + replayed +
+                ", publish=" + format("%.0f msgs/s %.2f MB/s", publishRate(), publishMbPerSec()) +
+                ", receive=" + format("%.0f msgs/s", receiveRate()) +
+                ", replay=" + format("%.0f msgs/s", replayRate()) +
+                ", ackLatency=" + ackLatency +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+package berlin.yuna.natsserver.model;
+
+/**
+ * Message delivered by the streaming server (MsgProto)
+ */
+@SuppressWarnings("unused")
+public class StanMessage {
+
+    private final long sequence;
+    private final String subject;
+    private final byte[] data;
+    private final long timestamp;
+    private final boolean redelivered;
+    private final int redeliveryCount;
+
+    /**
+     * @param sequence        channel sequence
+     * @param subject         channel name
+     * @param data            payload
+     * @param timestamp       store time in nanoseconds since epoch
+     * @param redelivered     true if the message was delivered before without ack
+     * @param redeliveryCount number of redeliveries
+     */
+    public StanMessage(final long sequence, final String subject, final byte[] data, final long timestamp, final boolean redelivered, final int redeliveryCount) {
+        this.sequence = sequence;
+        this.subject = subject;
+        this.data = data;
+        this.timestamp = timestamp;
+        this.redelivered = redelivered;
+        this.redeliveryCount = redeliveryCount;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public String subject() {
+        return subject;
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public boolean redelivered() {
+        return redelivered;
+    }
+
+    public int redeliveryCount() {
+        return redeliveryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "StanMessage{" +
+                "sequence=" + sequence +
+                ", subject='" + subject + '\'' +
+                ", size=" + (data == null ? 0 : data.length) +
+                ", timestamp=" + timestamp +
+                ", redelivered=" + redelivered +
+                '}';
+    }
+}
@@ -0,0 +1,98 @@
+package berlin.yuna.natsserver.model;
+
+/**
+ * Content of one channel in a FILE store - read from the index files only
+ */
+@SuppressWarnings("unused")
+public class StoreChannelStats {
+
+    private final String channel;
+    private final int slices;
+    private final long messages;
+    private final long firstSequence;
+    private final long lastSequence;
+    private final long payloadBytes;
+    private final long fileBytes;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final int subscriptions;
+
+    /**
+     * @param channel        channel name
+     * @param slices         number of message slices
+     * @param messages       number of stored messages
+     * @param firstSequence  first stored sequence (0 == empty)
+     * @param lastSequence   last stored sequence (0 == empty)
+     * @param payloadBytes   size of all message records
+     * @param fileBytes      size of all files of the channel on disk
+     * @param firstTimestamp store time of the first message in nanoseconds since epoch
+     * @param lastTimestamp  store time of the last message in nanoseconds since epoch
+     * @param subscriptions  number of subscriptions in the subscription file
+     */
+    @SuppressWarnings("java:S107")
+    public StoreChannelStats(final String channel, final int slices, final long messages, final long firstSequence, final long lastSequence, final long payloadBytes, final long fileBytes, final long firstTimestamp, final long lastTimestamp, final int subscriptions) {
+        this.channel = channel;
+        this.slices = slices;
+        this.messages = messages;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.payloadBytes = payloadBytes;
+        this.fileBytes = fileBytes;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.subscriptions = subscriptions;
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    public int slices() {
+        return slices;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    public long firstSequence() {
+        return firstSequence;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public long payloadBytes() {
+        return payloadBytes;
+    }
+
+    public long fileBytes() {
+        return fileBytes;
+    }
+
+    public long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public int subscriptions() {
+        return subscriptions;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreChannelStats{" +
+                "channel=" + channel +
+                ", slices=" + slices +
+                ", messages=" + messages +
+                ", sequences=" + firstSequence + "-" + lastSequence +
+                ", payloadBytes=" + payloadBytes +
+                ", fileBytes=" + fileBytes +
+                ", subscriptions=" + subscriptions +
+                '}';
+    }
+}
@@ -0,0 +1,112 @@
+package berlin.yuna.natsserver.model;
+
+/**
+ * Subscription state of a channel as recovered from a FILE store subscription file (SubState)
+ */
+@SuppressWarnings("unused")
+public class StoreSubscription {
+
+    private final long id;
+    private final String clientId;
+    private final String queueGroup;
+    private final String durableName;
+    private final String inbox;
+    private final String ackInbox;
+    private final int maxInFlight;
+    private final int ackWaitSecs;
+    private final long lastSent;
+    private final boolean durable;
+    private final boolean closed;
+    private final int pending;
+
+    /**
+     * @param id          subscription id
+     * @param clientId    client id
+     * @param queueGroup  queue group or empty
+     * @param durableName durable name or empty
+     * @param inbox       delivery inbox
+     * @param ackInbox    ack inbox
+     * @param maxInFlight max unacknowledged messages
+     * @param ackWaitSecs ack timeout in seconds
+     * @param lastSent    last sent sequence
+     * @param durable     true for durable subscriptions
+     * @param closed      true for closed durable subscriptions
+     * @param pending     messages sent but not acknowledged yet
+     */
+    @SuppressWarnings("java:S107")
+    public StoreSubscription(final long id, final String clientId, final String queueGroup, final String durableName, final String inbox, final String ackInbox, final int maxInFlight, final int ackWaitSecs, final long lastSent, final boolean durable, final boolean closed, final int pending) {
+        this.id = id;
+        this.clientId = clientId;
+        this.queueGroup = queueGroup;
+        this.durableName = durableName;
+        this.inbox = inbox;
+        this.ackInbox = ackInbox;
+        this.maxInFlight = maxInFlight;
+        this.ackWaitSecs = ackWaitSecs;
+        this.lastSent = lastSent;
+        this.durable = durable;
+        this.closed = closed;
+        this.pending = pending;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public String clientId() {
+        return clientId;
+    }
+
+    public String queueGroup() {
+        return queueGroup;
+    }
+
+    public String durableName() {
+        return durableName;
+    }
+
+    public String inbox() {
+        return inbox;
+    }
+
+    public String ackInbox() {
+        return ackInbox;
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    public int ackWaitSecs() {
+        return ackWaitSecs;
+    }
+
+    public long lastSent() {
+        return lastSent;
+    }
+
+    public boolean durable() {
+        return durable;
+    }
+
+    public boolean closed() {
+        return closed;
+    }
+
+    public int pending() {
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreSubscription{" +
+                "id=" + id +
+                ", clientId=" + clientId +
+                (queueGroup.isEmpty() ? "" : ", queueGroup=" + queueGroup) +
+                (durableName.isEmpty() ? "" : ", durableName=" + durableName) +
+                ", lastSent=" + lastSent +
+                ", pending=" + pending +
+                (closed ? ", closed" : "") +
+                '}';
+    }
+}
@@ -0,0 +1,167 @@
+package berlin.yuna.natsserver.model;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Comparison table of a config sweep - exportable as CSV and JSON
+ */
+@SuppressWarnings("unused")
+public class SweepResult {
+
+    private final List<NatsStreamingConfig> dimensions;
+    private final List<SweepRow> rows;
+
+    /**
+     * @param dimensions swept config keys in column order
+     * @param rows       one row per combination and repetition
+     */
+    public SweepResult(final List<NatsStreamingConfig> dimensions, final List<SweepRow> rows) {
+        this.dimensions = Collections.unmodifiableList(new ArrayList<>(dimensions));
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+    }
+
+    public List<NatsStreamingConfig> dimensions() {
+        return dimensions;
+    }
+
+    public List<SweepRow> rows() {
+        return rows;
+    }
+
+    /**
+     * @return metric names of all rows in order of appearance
+     */
+    public Set<String> metricNames() {
+        final Set<String> result = new LinkedHashSet<>();
+        rows.forEach(row -> result.addAll(row.metrics().keySet()));
+        return result;
+    }
+
+    /**
+     * @return table with one column per dimension and metric
+     */
+    public String toCsv() {
+        final Set<String> metrics = metricNames();
+        final StringBuilder csv = new StringBuilder();
+        final List<String> header = new ArrayList<>();
+        dimensions.forEach(dimension -> header.add(dimension.name()));
+        header.add("repetition");
+        header.addAll(metrics);
+        header.add("error");
+        csv.append(header.stream().map(SweepResult::csvValue).collect(Collectors.joining(","))).append(System.lineSeparator());
+        for (SweepRow row : rows) {
+            final List<String> values = new ArrayList<>();
+            dimensions.forEach(dimension -> values.add(row.config().getOrDefault(dimension, "")));
+            values.add(String.valueOf(row.repetition()));
+            metrics.forEach(metric -> values.add(number(row.metrics().get(metric))));
+            values.add(row.error() == null ? "" : row.error());
+            csv.append(values.stream().map(SweepResult::csvValue).collect(Collectors.joining(","))).append(System.lineSeparator());
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return array with one object per row containing "config", "repetition", "metrics" and "error"
+     */
+    public String toJson() {
+        return rows.stream().map(row -> "{\"config\":{"
+                + dimensions.stream().filter(row.config()::containsKey).map(key -> jsonString(key.name()) + ":" + jsonString(row.config().get(key))).collect(Collectors.joining(","))
+                + "},\"repetition\":" + row.repetition()
+                + ",\"metrics\":{"
+                + row.metrics().entrySet().stream().map(e -> jsonString(e.getKey()) + ":" + jsonNumber(e.getValue())).collect(Collectors.joining(","))
+                + "},\"error\":" + (row.error() == null ? "null" : jsonString(row.error()))
+                + "}"
+        ).collect(Collectors.joining("," + System.lineSeparator(), "[" + System.lineSeparator(), System.lineSeparator() + "]"));
+    }
+
+    /**
+     * @param target csv file to write
+     * @return target path
+     * @throws IOException on write errors
+     */
+    public Path writeCsv(final Path target) throws IOException {
+        return write(target, toCsv());
+    }
+
+    /**
+     * @param target json file to write
+     * @return target path
+     * @throws IOException on write errors
+     */
+    public Path writeJson(final Path target) throws IOException {
+        return write(target, toJson());
+    }
+
+    private static Path write(final Path target, final String content) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        return Files.writeString(target, content, UTF_8);
+    }
+
+    private static String number(final Number value) {
+        if (value == null) {
+            return "";
+        } else if (value instanceof Double || value instanceof Float) {
+            return String.format(Locale.ROOT, "%.3f", value.doubleValue());
+        }
+        return value.toString();
+    }
+
+    private static String jsonNumber(final Number value) {
+        if (value == null || ((value instanceof Double || value instanceof Float) && !Double.isFinite(value.doubleValue()))) {
+            return "null";
+        }
+        return number(value);
+    }
+
+    private static String csvValue(final String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String jsonString(final String value) {
+        final StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> result.append("\\\"");
+                case '\\' -> result.append("\\\\");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\t' -> result.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "SweepResult{" +
+                "dimensions=" + dimensions +
+                ", rows=" + rows.size() +
+                ", failed=" + rows.stream().filter(SweepRow::failed).count() +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package berlin.yuna.natsserver.model;
+
+import berlin.yuna.natsserver.config.NatsStreamingConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One config combination of a sweep with its measured metrics or the error which prevented the measurement
+ */
+@SuppressWarnings("unused")
+public class SweepRow {
+
+    private final Map<NatsStreamingConfig, String> config;
+    private final int repetition;
+    private final Map<String, Number> metrics;
+    private final String error;
+
+    /**
+     * @param config     config values of the swept dimensions
+     * @param repetition repetition index starting with 0
+     * @param metrics    measured metrics incl. process stats
+     * @param error      error message or null on success
+     */
+    public SweepRow(final Map<NatsStreamingConfig, String> config, final int repetition, final Map<String, Number> metrics, final String error) {
+        this.config = Collections.unmodifiableMap(new LinkedHashMap<>(config));
+        this.repetition = repetition;
+        this.metrics = Collections.unmodifiableMap(new LinkedHashMap<>(metrics));
+        this.error = error;
+    }
+
+    public Map<NatsStreamingConfig, String> config() {
+        return config;
+    }
+
+    public int repetition() {
+        return repetition;
+    }
+
+    public Map<String, Number> metrics() {
+        return metrics;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        return "SweepRow{" +
+                "config=" + config +
+                ", repetition=" + repetition +
+                ", metrics=" + metrics +
+                (error == null ? "" : ", error='" + error + '\'') +
+                '}';
+    }
+}
@@ -3,6 +3,7 @@ package berlin.yuna.natsserver.model;
 public enum ValueSource {
 
     DEFAULT,
+    AUTO,
     ENV,
     FILE,
     DSL
@@ -0,0 +1,160 @@
+package berlin.yuna.natsserver.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Regression report of the same workload measured against several server versions
+ */
+@SuppressWarnings("unused")
+public class VersionComparisonResult {
+
+    private final String baseline;
+    private final double alpha;
+    private final Map<String, List<Map<String, Number>>> runs;
+    private final Map<String, String> errors;
+
+    /**
+     * @param baseline version all others are compared with
+     * @param alpha    significance level
+     * @param runs     metrics of each successful run per version in version order
+     * @param errors   error message per version which failed to run
+     */
+    public VersionComparisonResult(final String baseline, final double alpha, final Map<String, List<Map<String, Number>>> runs, final Map<String, String> errors) {
+        this.baseline = baseline;
+        this.alpha = alpha;
+        final Map<String, List<Map<String, Number>>> copy = new LinkedHashMap<>();
+        runs.forEach((version, list) -> copy.put(version, Collections.unmodifiableList(new ArrayList<>(list))));
+        this.runs = Collections.unmodifiableMap(copy);
+        this.errors = Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+    }
+
+    public String baseline() {
+        return baseline;
+    }
+
+    public double alpha() {
+        return alpha;
+    }
+
+    public Map<String, List<Map<String, Number>>> runs() {
+        return runs;
+    }
+
+    public Map<String, String> errors() {
+        return errors;
+    }
+
+    /**
+     * @return metric names of all runs in order of appearance
+     */
+    public Set<String> metricNames() {
+        final Set<String> result = new LinkedHashSet<>();
+        runs.values().forEach(list -> list.forEach(run -> result.addAll(run.keySet())));
+        return result;
+    }
+
+    /**
+     * @param version version
+     * @param metric  metric name
+     * @return statistics of the metric over all runs of the version
+     */
+    public SampleStats stats(final String version, final String metric) {
+        return SampleStats.of(runs.getOrDefault(version, List.of()).stream()
+                .map(run -> run.get(metric))
+                .filter(value -> value != null && Double.isFinite(value.doubleValue()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return one delta per metric and non baseline version
+     */
+    public List<VersionDelta> deltas() {
+        final List<VersionDelta> result = new ArrayList<>();
+        if (!runs.containsKey(baseline)) {
+            return result;
+        }
+        for (String version : runs.keySet()) {
+            if (!version.equals(baseline)) {
+                metricNames().forEach(metric -> result.add(new VersionDelta(metric, baseline, version, stats(baseline, metric), stats(version, metric), alpha)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return deltas with p-value below alpha
+     */
+    public List<VersionDelta> significant() {
+        return deltas().stream().filter(VersionDelta::significant).collect(Collectors.toList());
+    }
+
+    /**
+     * @return table with mean, standard deviation, change and p-value per version and metric
+     */
+    public String toCsv() {
+        final StringBuilder csv = new StringBuilder("version,metric,runs,mean,std_dev,change_percent,p_value,significant").append(System.lineSeparator());
+        for (String version : runs.keySet()) {
+            for (String metric : metricNames()) {
+                final SampleStats stats = stats(version, metric);
+                final boolean isBaseline = version.equals(baseline) || !runs.containsKey(baseline);
+                final VersionDelta delta = isBaseline ? null : new VersionDelta(metric, baseline, version, stats(baseline, metric), stats, alpha);
+                csv.append(format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%s,%s,%s",
+                        version, metric, stats.count(), stats.mean(), stats.stdDev(),
+                        delta == null ? "" : format(Locale.ROOT, "%.3f", delta.changePercent()),
+                        delta == null ? "" : format(Locale.ROOT, "%.5f", delta.pValue()),
+                        delta != null && delta.significant()
+                )).append(System.lineSeparator());
+            }
+        }
+        errors.forEach((version, error) -> csv.append(version).append(",error,0,,,,,\"").append(error.replace("\"", "\"\"")).append('"').append(System.lineSeparator()));
+        return csv.toString();
+    }
+
+    /**
+     * @return human readable report listing significant changes first
+     */
+    public String report() {
+        final StringBuilder report = new StringBuilder(format(Locale.ROOT, "Baseline [%s] alpha [%.3f]", baseline, alpha)).append(System.lineSeparator());
+        final List<VersionDelta> deltas = deltas();
+        deltas.stream().filter(VersionDelta::significant).forEach(delta -> report.append("  ! ").append(delta).append(System.lineSeparator()));
+        deltas.stream().filter(delta -> !delta.significant()).forEach(delta -> report.append("    ").append(delta).append(System.lineSeparator()));
+        errors.forEach((version, error) -> report.append("  x ").append(version).append(": ").append(error).append(System.lineSeparator()));
+        return report.toString();
+    }
+
+    /**
+     * @param target csv file to write
+     * @return target path
+     * @throws IOException on write errors
+     */
+    public Path writeCsv(final Path target) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        return Files.writeString(target, toCsv(), UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "VersionComparisonResult{" +
+                "baseline=" + baseline +
+                ", versions=" + runs.keySet() +
+                ", significant=" + significant().size() +
+                ", errors=" + errors.keySet() +
+                '}';
+    }
+}
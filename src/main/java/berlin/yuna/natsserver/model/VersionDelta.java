@@ -0,0 +1,85 @@
+package berlin.yuna.natsserver.model;
+
+import java.util.Locale;
+
+import static java.lang.String.format;
+
+/**
+ * Change of one metric between the baseline version and another version
+ */
+@SuppressWarnings("unused")
+public class VersionDelta {
+
+    private final String metric;
+    private final String baseline;
+    private final String version;
+    private final SampleStats baselineStats;
+    private final SampleStats versionStats;
+    private final double pValue;
+    private final double alpha;
+
+    /**
+     * @param metric        metric name
+     * @param baseline      baseline version
+     * @param version       compared version
+     * @param baselineStats measurements of the baseline version
+     * @param versionStats  measurements of the compared version
+     * @param alpha         significance level e.g. 0.05
+     */
+    public VersionDelta(final String metric, final String baseline, final String version, final SampleStats baselineStats, final SampleStats versionStats, final double alpha) {
+        this.metric = metric;
+        this.baseline = baseline;
+        this.version = version;
+        this.baselineStats = baselineStats;
+        this.versionStats = versionStats;
+        this.pValue = baselineStats.pValue(versionStats);
+        this.alpha = alpha;
+    }
+
+    public String metric() {
+        return metric;
+    }
+
+    public String baseline() {
+        return baseline;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public SampleStats baselineStats() {
+        return baselineStats;
+    }
+
+    public SampleStats versionStats() {
+        return versionStats;
+    }
+
+    /**
+     * @return change of the mean in percent relative to the baseline
+     */
+    public double changePercent() {
+        return baselineStats.changePercent(versionStats);
+    }
+
+    /**
+     * @return two-sided p-value of Welch's t-test
+     */
+    public double pValue() {
+        return pValue;
+    }
+
+    /**
+     * @return true if the change is unlikely to be noise (p-value &lt; alpha)
+     */
+    public boolean significant() {
+        return pValue < alpha;
+    }
+
+    @Override
+    public String toString() {
+        return format(Locale.ROOT, "%s %s -> %s: %s -> %s (%+.2f%%, p=%.4f%s)",
+                metric, baseline, version, baselineStats, versionStats, changePercent(), pValue, significant() ? ", significant" : "");
+    }
+}
@@ -0,0 +1,12 @@
+package berlin.yuna.natsserver.model.exception;
+
+public class NatsProtocolException extends RuntimeException {
+
+    public NatsProtocolException(final String message) {
+        super(message);
+    }
+
+    public NatsProtocolException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package berlin.yuna.natsserver.model.exception;
+
+public class NatsStreamingProfileException extends RuntimeException {
+
+    public NatsStreamingProfileException(final String message) {
+        super(message);
+    }
+
+    public NatsStreamingProfileException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package berlin.yuna.natsserver.model.exception;
+
+public class NatsStreamingStoreException extends RuntimeException {
+
+    public NatsStreamingStoreException(final String message) {
+        super(message);
+    }
+
+    public NatsStreamingStoreException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,6 +17,7 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Tag("UnitTest")
 @DisplayName("NatsServer Builder Test")
@@ -162,4 +164,54 @@ class NatsStreamingOptionsBuilderTest {
         assertThat(builder1.build(), is(not(equalTo(builder2.build()))));
         assertThat(builder1.build().hashCode(), is(not(0)));
     }
+
+    @Test
+    @DisplayName("Performance profiles")
+    void profiles_shouldSetCuratedConfig() {
+        final var throughput = NatsStreamingOptions.natsStreamingBuilder().config(NatsStreamingConfig.FILE_SYNC, "true").throughput().configMap();
+        assertThat(throughput.get(NatsStreamingConfig.STORE), is(equalTo("FILE")));
+        assertThat(throughput.get(NatsStreamingConfig.FILE_SYNC), is(equalTo("false")));
+        assertThat(throughput.get(NatsStreamingConfig.FILE_AUTO_SYNC), is(equalTo("1s")));
+        assertThat(throughput.get(NatsStreamingConfig.FILE_BUFFER_SIZE), is(equalTo("8388608")));
+
+        final var lowLatency = NatsStreamingOptions.natsStreamingBuilder().lowLatencyTest().configMap();
+        assertThat(lowLatency.get(NatsStreamingConfig.STORE), is(equalTo("MEMORY")));
+        assertThat(lowLatency.get(NatsStreamingConfig.FILE_CRC), is(equalTo("false")));
+        assertThat(lowLatency.get(NatsStreamingConfig.HB_INTERVAL), is(equalTo("1s")));
+
+        final var durable = NatsStreamingOptions.natsStreamingBuilder().port(4222).throughput().durable().configMap();
+        assertThat(durable.get(NatsStreamingConfig.FILE_SYNC), is(equalTo("true")));
+        assertThat(durable.get(NatsStreamingConfig.CLUSTER_SYNC), is(equalTo("true")));
+        assertThat(durable.get(NatsStreamingConfig.FILE_AUTO_SYNC), is(nullValue()));
+        assertThat(durable.get(NatsStreamingConfig.PORT), is(equalTo("4222")));
+    }
+
+    @Test
+    @DisplayName("Environment variables")
+    void env_shouldBeValidatedAndRemovable() {
+        final var builder = NatsStreamingOptions.natsStreamingBuilder().goMaxProcs(0).goGc(200).env("GODEBUG", "gctrace=1");
+        assertThat(builder.env(), is(equalTo(Map.of("GOMAXPROCS", "1", "GOGC", "200", "GODEBUG", "gctrace=1"))));
+        assertThat(builder.configMap().get(NatsStreamingConfig.NATS_ENV), is(equalTo("GOMAXPROCS=1&&GOGC=200&&GODEBUG=gctrace=1")));
+        assertThat(builder.env("GODEBUG", null).env().size(), is(2));
+        assertThrows(IllegalArgumentException.class, () -> builder.env("GO DEBUG", "1"));
+        assertThrows(IllegalArgumentException.class, () -> builder.env("GODEBUG", "a b"));
+        for (String value : new String[]{"a;reboot", "a|reboot", "$(reboot)", "`reboot`", "a>file", "a&b", "'a'"}) {
+            assertThrows(IllegalArgumentException.class, () -> builder.env("GODEBUG", value), value);
+        }
+        assertThat(builder.env("GOMEMLIMIT", "100MiB").env("GODEBUG", "gctrace=1,madvdontneed=1").env().get("GODEBUG"), is(equalTo("gctrace=1,madvdontneed=1")));
+    }
+
+    @Test
+    @DisplayName("Channel limits DSL")
+    void channel_shouldCollectLimitsPerChannel() {
+        final var builder = NatsStreamingOptions.natsStreamingBuilder()
+                .channel("orders.*").maxMsgs(1000000).maxAge(Duration.ofHours(1))
+                .channel("audit").maxBytes(1048576).maxSubs(-1).maxInactivity(Duration.ZERO)
+                .and().port(4250);
+        assertThat(builder.channelLimits().get("orders.*"), is(equalTo(Map.of("max_msgs", "1000000", "max_age", "3600000ms"))));
+        assertThat(builder.configMap().get(NatsStreamingConfig.NATS_CHANNEL_LIMITS), is(equalTo("orders.*:max_msgs=1000000,max_age=3600000ms&&audit:max_bytes=1048576,max_subs=0,max_inactivity=0s")));
+        assertThat(builder.channel("orders.*").maxMsgs(5).limits().get("max_msgs"), is(equalTo("5")));
+        assertThrows(IllegalArgumentException.class, () -> builder.channel("bad channel"));
+        assertThrows(IllegalArgumentException.class, () -> builder.channel("a:b"));
+    }
 }
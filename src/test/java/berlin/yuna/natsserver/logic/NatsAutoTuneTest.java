@@ -0,0 +1,72 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_LOG_CACHE_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_BUFFER_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_FDS_LIMIT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_PARALLEL_RECOVERY;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_READ_BUFFER_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Tag("UnitTest")
+@DisplayName("Host aware auto tuning")
+class NatsAutoTuneTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    @DisplayName("Small CI runner on disk")
+    void values_smallHost() {
+        final var values = new NatsAutoTune(4, 2 * GB, 1024, false, false).values();
+        assertThat(values.get(FILE_PARALLEL_RECOVERY), is(equalTo("2")));
+        assertThat(values.get(FILE_FDS_LIMIT), is(equalTo("768")));
+        assertThat(values.get(FILE_BUFFER_SIZE), is(equalTo("524288")));
+        assertThat(values.get(FILE_READ_BUFFER_SIZE), is(equalTo("524288")));
+        assertThat(values.get(CLUSTER_LOG_CACHE_SIZE), is(equalTo("512")));
+    }
+
+    @Test
+    @DisplayName("Large perf box on tmpfs")
+    void values_largeHostOnTmpfs() {
+        final var values = new NatsAutoTune(64, 256 * GB, 1048576, true, false).values();
+        assertThat(values.get(FILE_PARALLEL_RECOVERY), is(equalTo("64")));
+        assertThat(values.get(FILE_FDS_LIMIT), is(equalTo("786432")));
+        assertThat(values.get(FILE_BUFFER_SIZE), is(equalTo("4194304")));
+        assertThat(values.get(FILE_READ_BUFFER_SIZE), is(equalTo("0")));
+        assertThat(values.get(CLUSTER_LOG_CACHE_SIZE), is(equalTo("8192")));
+    }
+
+    @Test
+    @DisplayName("Unknown inputs keep server defaults")
+    void values_unknownHost() {
+        final var values = new NatsAutoTune(0, -1, -1, false, false).values();
+        assertThat(values.size(), is(1));
+        assertThat(values.get(FILE_PARALLEL_RECOVERY), is(equalTo("1")));
+    }
+
+    @Test
+    @DisplayName("Tuned values are exposed and explicit configs win")
+    void autoTune_shouldBeVisibleInConfig() throws Exception {
+        final Path dir = Files.createTempDirectory("nats_tune_");
+        final var nats = new NatsStreaming(natsStreamingBuilder()
+                .autostart(false)
+                .autoTune(true)
+                .config(FILE_BUFFER_SIZE, "1234")
+                .config("DIR", dir.resolve("store").toString()));
+        assertThat(nats.config().get(FILE_PARALLEL_RECOVERY), is(notNullValue()));
+        assertThat(nats.config().get(FILE_BUFFER_SIZE), is(equalTo("1234")));
+        assertThat(nats.autoTune().get(FILE_PARALLEL_RECOVERY), is(equalTo(nats.config().get(FILE_PARALLEL_RECOVERY))));
+        assertThat(NatsAutoTune.tmpfs(dir.resolve("not/yet/created")), is(NatsAutoTune.tmpfs(dir)));
+        NatsUtils.deleteRecursive(dir);
+    }
+}
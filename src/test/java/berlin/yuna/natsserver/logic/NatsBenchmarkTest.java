@@ -0,0 +1,97 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.BenchmarkResult;
+import berlin.yuna.natsserver.model.exception.NatsProtocolException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("NatsBenchmark with stand-in server")
+class NatsBenchmarkTest {
+
+    @Test
+    @DisplayName("Connection handshake, pub and sub")
+    void connection_shouldPublishAndReceive() throws Exception {
+        try (final var standIn = new NatsStandIn(); final var connection = new NatsConnection("localhost", standIn.port())) {
+            final var latch = new CountDownLatch(3);
+            final var last = new StringBuilder();
+            connection.subscribe("orders.*", null, (subject, replyTo, payload) -> {
+                last.setLength(0);
+                last.append(subject).append("=").append(UTF_8.decode(payload));
+                latch.countDown();
+            });
+            connection.ping();
+            connection.publish("orders.1", "a".getBytes(UTF_8));
+            connection.publish("orders.2", "bb".getBytes(UTF_8));
+            connection.publish("other", "ignored".getBytes(UTF_8));
+            connection.publish("orders.3", null, ByteBuffer.wrap(new byte[100000])).flush();
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(last.toString().startsWith("orders.3="), is(true));
+            assertThat(connection.serverInfo(), is(notNullValue()));
+            assertThat(connection.msgsOut(), is(equalTo(4L)));
+            assertThat(connection.msgsIn(), is(equalTo(3L)));
+            assertThat(connection.ping(), is(greaterThan(0L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Connection refused [FAIL]")
+    void connection_withoutServer_shouldThrowException() throws Exception {
+        final int port;
+        try (final var standIn = new NatsStandIn()) {
+            port = standIn.port();
+        }
+        assertThrows(NatsProtocolException.class, () -> new NatsConnection("localhost", port));
+    }
+
+    @Test
+    @DisplayName("Pipelined publishers and subscribers")
+    void benchmark_shouldReceiveAllMessages() throws Exception {
+        try (final var standIn = new NatsStandIn()) {
+            final BenchmarkResult result = new NatsBenchmark("localhost", standIn.port())
+                    .publishers(2)
+                    .subscribers(3)
+                    .messages(5001)
+                    .messageSize(64)
+                    .timeoutMs(30000)
+                    .run();
+            assertThat(result.published(), is(equalTo(5001L)));
+            assertThat(result.received(), is(equalTo(15003L)));
+            assertThat(result.dropped(), is(equalTo(0L)));
+            assertThat(result.publishRate(), is(greaterThan(0d)));
+            assertThat(result.receiveMbPerSec(), is(greaterThan(0d)));
+            assertThat(result.latency().count(), is(equalTo(15003L)));
+            assertThat(result.latency().percentile(99), is(greaterThanOrEqualTo(result.latency().percentile(50))));
+            assertThat(standIn.published(), is(equalTo(5001L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Rate limited publishing measures from intended send time")
+    void benchmark_withRate_shouldBePaced() throws Exception {
+        try (final var standIn = new NatsStandIn()) {
+            final BenchmarkResult result = new NatsBenchmark("localhost", standIn.port())
+                    .messages(200)
+                    .rate(1000)
+                    .run();
+            assertThat(result.received(), is(equalTo(200L)));
+            assertThat(result.publishNs(), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(190))));
+            assertThat(result.serviceTime().count(), is(equalTo(200L)));
+            assertThat(result.toString(), is(notNullValue()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.SweepResult;
+import berlin.yuna.natsserver.model.SweepRow;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_SYNC;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.MAX_MSGS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+
+@Tag("UnitTest")
+@DisplayName("Config sweep")
+class NatsConfigSweepTest {
+
+    @Test
+    @DisplayName("Cartesian product of dimensions")
+    void combinations_shouldBeCartesianProduct() {
+        final var combinations = new NatsConfigSweep()
+                .dimension(STORE, "MEMORY", "FILE")
+                .dimension(FILE_SYNC, "true", "false", "")
+                .combinations();
+        assertThat(combinations, hasSize(6));
+        assertThat(combinations.get(0), is(equalTo(Map.of(STORE, "MEMORY", FILE_SYNC, "true"))));
+        assertThat(combinations.get(5), is(equalTo(Map.of(STORE, "FILE", FILE_SYNC, ""))));
+        assertThat(new NatsConfigSweep().combinations(), hasSize(1));
+    }
+
+    @Test
+    @DisplayName("CSV and JSON export")
+    void result_shouldExportCsvAndJson() throws Exception {
+        final var result = new SweepResult(List.of(STORE, MAX_MSGS), List.of(
+                new SweepRow(Map.of(STORE, "MEMORY", MAX_MSGS, "10"), 0, Map.of("rate", 1.5d), null),
+                new SweepRow(Map.of(STORE, "FILE"), 0, Map.of(), "failed, \"badly\"")
+        ));
+        final String csv = result.toCsv();
+        assertThat(csv, containsString("STORE,MAX_MSGS,repetition,rate,error"));
+        assertThat(csv, containsString("MEMORY,10,0,1.500,"));
+        assertThat(csv, containsString("FILE,,0,,\"failed, \"\"badly\"\"\""));
+        final String json = result.toJson();
+        assertThat(json, containsString("{\"config\":{\"STORE\":\"MEMORY\",\"MAX_MSGS\":\"10\"},\"repetition\":0,\"metrics\":{\"rate\":1.500},\"error\":null}"));
+        assertThat(json, containsString("\"error\":\"failed, \\\"badly\\\"\""));
+        final var file = Files.createTempDirectory("sweep_test").resolve("out/result.csv");
+        assertThat(Files.readString(result.writeCsv(file)), is(equalTo(csv)));
+        NatsUtils.deleteRecursive(file.getParent().getParent());
+    }
+
+    @Test
+    @DisplayName("Process sampler on own process")
+    void sampler_shouldMeasureCpu() {
+        final var sampler = new ProcessSampler(ProcessHandle.current().pid(), 5);
+        long spin = 0;
+        for (int i = 0; i < 50_000_000; i++) {
+            spin += i % 7;
+        }
+        final var stats = sampler.stop();
+        assertThat(spin, is(greaterThan(0L)));
+        assertThat(stats.cpuNs(), is(greaterThan(0L)));
+        assertThat(stats.wallNs(), is(greaterThan(0L)));
+    }
+
+    @Test
+    @DisplayName("Sweep over store types")
+    void sweep_shouldRunEveryCombination() {
+        final SweepResult result = new NatsConfigSweep(natsStreamingBuilder().config(MAX_MSGS, "1000"))
+                .dimension(STORE, "MEMORY", "FILE")
+                .workload(nats -> new StanBenchmark(nats).messages(500).run().metrics())
+                .run();
+        assertThat(result.rows(), hasSize(2));
+        result.rows().forEach(row -> {
+            assertThat(row.toString(), row.failed(), is(false));
+            assertThat(row.metrics().get("acked"), is(equalTo(500L)));
+        });
+        assertThat(result.toCsv(), containsString("cpu_percent"));
+    }
+
+    @Test
+    @DisplayName("Failed workload stops the sampler")
+    void sweep_failedWorkload_shouldStopSampler() {
+        final SweepResult result = new NatsConfigSweep(natsStreamingBuilder())
+                .dimension(STORE, "MEMORY")
+                .workload(nats -> {
+                    throw new IllegalStateException("workload failed");
+                })
+                .run();
+        assertThat(result.rows().get(0).failed(), is(true));
+        assertThat(Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().startsWith("sampler-") && thread.isAlive()), is(false));
+    }
+}
@@ -0,0 +1,79 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+@Tag("UnitTest")
+@DisplayName("Core protocol connection")
+class NatsConnectionTest {
+
+    @Test
+    @DisplayName("Reader keeps reading while a publisher holds the write lock")
+    void reader_shouldNotBlockOnWriteLock() throws Exception {
+        try (final var standIn = new NatsStandIn();
+             final var replier = new NatsConnection("localhost", standIn.port());
+             final var client = new NatsConnection("localhost", standIn.port())) {
+            final var handled = new CountDownLatch(3);
+            final var replies = new CountDownLatch(3);
+            replier.subscribe("requests", null, (subject, replyTo, payload) -> {
+                replier.publish("replies", "pong".getBytes(UTF_8));
+                handled.countDown();
+            });
+            client.subscribe("replies", null, (subject, replyTo, payload) -> replies.countDown());
+            client.ping();
+            replier.ping();
+            synchronized (replier.writeLock) {
+                for (int i = 0; i < 3; i++) {
+                    client.publish("requests", "ping".getBytes(UTF_8));
+                }
+                client.flush();
+                assertThat(handled.await(5, TimeUnit.SECONDS), is(true));
+            }
+            assertThat(replies.await(5, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("Non fatal errors keep pings in order")
+    void ping_afterPermissionError_shouldNotFail() throws Exception {
+        try (final var standIn = new NatsStandIn();
+             final var client = new NatsConnection("localhost", standIn.port())) {
+            client.publish("denied.orders", "secret".getBytes(UTF_8));
+            assertThat(client.ping(), is(greaterThan(0L)));
+            assertThat(client.lastError(), containsString("Permissions Violation"));
+            assertThat(client.ping(), is(greaterThan(0L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Ping is not allowed on the reader thread")
+    void ping_inHandler_shouldThrow() throws Exception {
+        try (final var standIn = new NatsStandIn();
+             final var client = new NatsConnection("localhost", standIn.port())) {
+            final var error = new CompletableFuture<Throwable>();
+            client.subscribe("requests", null, (subject, replyTo, payload) -> {
+                try {
+                    client.ping();
+                    error.complete(null);
+                } catch (RuntimeException e) {
+                    error.complete(e);
+                }
+            });
+            client.ping();
+            client.publish("requests", "ping".getBytes(UTF_8)).flush();
+            assertThat(error.get(5, TimeUnit.SECONDS), is(instanceOf(IllegalStateException.class)));
+        }
+    }
+}
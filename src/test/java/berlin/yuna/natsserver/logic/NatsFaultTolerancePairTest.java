@@ -0,0 +1,49 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.SampleStats;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+
+import static berlin.yuna.natsserver.logic.NatsFaultTolerancePair.SERVE_MS;
+import static berlin.yuna.natsserver.logic.NatsFaultTolerancePair.TAKEOVER_MS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("FT pair")
+class NatsFaultTolerancePairTest {
+
+    @Test
+    @DisplayName("Failover requires a started pair")
+    void failover_withoutStart_shouldFail() {
+        try (final var pair = new NatsFaultTolerancePair()) {
+            assertThrows(IllegalStateException.class, pair::failover);
+        }
+    }
+
+    @Test
+    @DisplayName("Measure failover distribution")
+    void measure_shouldRecordEachTrial() {
+        try (final var pair = new NatsFaultTolerancePair().start()) {
+            final var active = pair.active();
+            assertThat(active, is(notNullValue()));
+            assertThat(pair.standby(), is(not(sameInstance(active))));
+
+            final var result = pair.measure(2);
+            assertThat(result.rows().size(), is(2));
+            result.rows().forEach(row -> assertThat(row.error(), row.failed(), is(false)));
+            final var serve = SampleStats.of(result.rows().stream().map(row -> row.metrics().get(SERVE_MS)).collect(Collectors.toList()));
+            final var takeover = SampleStats.of(result.rows().stream().map(row -> row.metrics().get(TAKEOVER_MS)).collect(Collectors.toList()));
+            assertThat(serve.mean(), is(greaterThanOrEqualTo(takeover.mean())));
+            assertThat(pair.active(), is(notNullValue()));
+        }
+    }
+}
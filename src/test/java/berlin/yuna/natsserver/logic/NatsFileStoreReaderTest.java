@@ -0,0 +1,213 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.StanMessage;
+import berlin.yuna.natsserver.model.exception.NatsStreamingStoreException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_CRC;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_CRC_POLY;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.CLIENTS_FILE;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.CLIENT_REC_ADD;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.CLIENT_REC_DEL;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.SUBS_FILE;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.SUB_REC_ACK;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.SUB_REC_DEL;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.SUB_REC_MSG;
+import static berlin.yuna.natsserver.logic.NatsFileStoreReader.SUB_REC_NEW;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_DATA;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_SEQUENCE;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_SUBJECT;
+import static berlin.yuna.natsserver.logic.StanProtocol.MSG_TIMESTAMP;
+import static berlin.yuna.natsserver.logic.StanProtocol.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("FILE store reader")
+class NatsFileStoreReaderTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("nats_store_");
+        // two slices with 3 + 2 messages
+        writeSlice("orders", 1, 1, 3);
+        writeSlice("orders", 2, 4, 2);
+        writeRecords(dir.resolve("orders").resolve(SUBS_FILE), true,
+                SUB_REC_NEW, encode(1, 1L, 2, "client-a", 4, "_INBOX.a", 8, "durable", 10, true),
+                SUB_REC_MSG, encode(1, 1L, 2, 1L),
+                SUB_REC_MSG, encode(1, 1L, 2, 2L),
+                SUB_REC_ACK, encode(1, 1L, 2, 1L),
+                SUB_REC_NEW, encode(1, 2L, 2, "client-b", 3, "workers"),
+                SUB_REC_DEL, encode(1, 2L)
+        );
+        writeRecords(dir.resolve(CLIENTS_FILE), true,
+                CLIENT_REC_ADD, encode(1, "client-a"),
+                CLIENT_REC_ADD, encode(1, "client-b"),
+                CLIENT_REC_DEL, encode(1, "client-b")
+        );
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        NatsUtils.deleteRecursive(dir);
+    }
+
+    @Test
+    @DisplayName("Channel stats from index files")
+    void stats_shouldReadIndexFiles() {
+        final var reader = new NatsFileStoreReader(dir);
+        assertThat(reader.channels(), is(equalTo(List.of("orders"))));
+        final var stats = reader.stats("orders");
+        assertThat(stats.slices(), is(2));
+        assertThat(stats.messages(), is(5L));
+        assertThat(stats.firstSequence(), is(1L));
+        assertThat(stats.lastSequence(), is(5L));
+        assertThat(stats.firstTimestamp(), is(1000L));
+        assertThat(stats.lastTimestamp(), is(5000L));
+        assertThat(stats.subscriptions(), is(1));
+        assertThat(stats.fileBytes(), is(greaterThan(stats.payloadBytes())));
+    }
+
+    @Test
+    @DisplayName("Stream messages lazily across slices")
+    void messages_shouldStreamAcrossSlices() {
+        final var reader = new NatsFileStoreReader(dir).windowSize(48);
+        final List<StanMessage> messages = reader.messages("orders").collect(Collectors.toList());
+        assertThat(messages, hasSize(5));
+        assertThat(messages.get(4).sequence(), is(5L));
+        assertThat(new String(messages.get(4).data(), UTF_8), is(equalTo("payload-5")));
+        assertThat(messages.get(0).subject(), is(equalTo("orders")));
+        assertThat(reader.messages("orders", 3).map(StanMessage::sequence).collect(Collectors.toList()), is(equalTo(List.of(3L, 4L, 5L))));
+        assertThat(reader.messages("orders", 5).findFirst().map(StanMessage::sequence).orElse(-1L), is(5L));
+        assertThat(reader.messages("orders", 6).count(), is(0L));
+        assertThat(reader.messages("unknown").count(), is(0L));
+    }
+
+    @Test
+    @DisplayName("Subscriptions and clients")
+    void subscriptions_shouldApplyRecords() {
+        final var reader = new NatsFileStoreReader(dir);
+        final var subscriptions = reader.subscriptions("orders");
+        assertThat(subscriptions, hasSize(1));
+        assertThat(subscriptions.get(0).clientId(), is(equalTo("client-a")));
+        assertThat(subscriptions.get(0).durableName(), is(equalTo("durable")));
+        assertThat(subscriptions.get(0).durable(), is(true));
+        assertThat(subscriptions.get(0).lastSent(), is(2L));
+        assertThat(subscriptions.get(0).pending(), is(1));
+        assertThat(reader.clients(), is(equalTo(List.of("client-a"))));
+    }
+
+    @Test
+    @DisplayName("Detect corrupted records")
+    void verify_shouldDetectCrcMismatch() throws Exception {
+        assertThat(new NatsFileStoreReader(dir).verify(), is(equalTo(List.of())));
+        final Path slice = dir.resolve("orders").resolve("msgs.2.dat");
+        try (final FileChannel channel = FileChannel.open(slice, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), channel.size() - 1);
+        }
+        final var problems = new NatsFileStoreReader(dir).verify();
+        assertThat(problems, hasSize(1));
+        assertThat(problems.get(0), containsString("CRC mismatch"));
+        assertThrows(NatsStreamingStoreException.class, () -> new NatsFileStoreReader(dir).messages("orders").count());
+        assertThat(new NatsFileStoreReader(dir).crc(false).messages("orders").count(), is(5L));
+    }
+
+    @Test
+    @DisplayName("CRC settings of the server")
+    void reader_shouldUseServerCrcSettings() {
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).config(DIR, dir.toString()).config(FILE_CRC, "false").config(FILE_CRC_POLY, "0x82f63b78"));
+        final var reader = new NatsFileStoreReader(nats);
+        assertThat(reader.crc, is(false));
+        assertThat(reader.crcPoly, is(0x82f63b78L));
+        assertThat(new NatsFileStoreReader(new NatsStreaming(natsStreamingBuilder().autostart(false).config(DIR, dir.toString()))).crcPoly, is(NatsFileStoreReader.CRC_POLY_IEEE));
+    }
+
+    @Test
+    @DisplayName("Read store of a real server")
+    void reader_shouldReadServerStore() throws Exception {
+        final Path store = Files.createTempDirectory("nats_store_server_");
+        try (final var nats = new NatsStreaming(natsStreamingBuilder().port(-1).config(STORE, "FILE").config(DIR, store.toString()))) {
+            try (final var client = StanClient.connect(nats, "reader-test")) {
+                client.subscription("reader.test").durableName("durable").subscribe(msg -> {
+                });
+                for (int i = 0; i < 100; i++) {
+                    client.publish("reader.test", ("message-" + i).getBytes(UTF_8));
+                }
+            }
+        }
+        final var reader = new NatsFileStoreReader(store);
+        assertThat(reader.verify(), is(equalTo(List.of())));
+        assertThat(reader.stats("reader.test").messages(), is(100L));
+        assertThat(new String(reader.messages("reader.test", 100).findFirst().orElseThrow().data(), UTF_8), is(equalTo("message-99")));
+        assertThat(reader.subscriptions("reader.test").get(0).durableName(), is(equalTo("durable")));
+        NatsUtils.deleteRecursive(store);
+    }
+
+    private void writeSlice(final String channel, final int slice, final long firstSeq, final int count) throws Exception {
+        final ByteArrayOutputStream dat = new ByteArrayOutputStream();
+        final ByteArrayOutputStream idx = new ByteArrayOutputStream();
+        dat.write(le(4).putInt(1).array());
+        idx.write(le(4).putInt(1).array());
+        for (long seq = firstSeq; seq < firstSeq + count; seq++) {
+            final byte[] msg = encode(MSG_SEQUENCE, seq, MSG_SUBJECT, channel, MSG_DATA, ("payload-" + seq).getBytes(UTF_8), MSG_TIMESTAMP, seq * 1000);
+            final long offset = dat.size();
+            dat.write(le(8).putInt(msg.length).putInt((int) crc(msg)).array());
+            dat.write(msg);
+            final ByteBuffer entry = le(32).putLong(seq).putLong(offset).putLong(seq * 1000).putInt(msg.length + 8);
+            entry.putInt((int) crc(Arrays.copyOf(entry.array(), 28)));
+            idx.write(entry.array());
+        }
+        Files.createDirectories(dir.resolve(channel));
+        Files.write(dir.resolve(channel).resolve("msgs." + slice + ".dat"), dat.toByteArray());
+        Files.write(dir.resolve(channel).resolve("msgs." + slice + ".idx"), idx.toByteArray());
+    }
+
+    private static void writeRecords(final Path file, final boolean typed, final Object... typeAndRecord) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(le(4).putInt(1).array());
+        for (int i = 0; i < typeAndRecord.length; i += 2) {
+            final byte[] record = (byte[]) typeAndRecord[i + 1];
+            final int header = typed ? (Integer) typeAndRecord[i] << 24 | record.length : record.length;
+            out.write(le(8).putInt(header).putInt((int) crc(record)).array());
+            out.write(record);
+        }
+        Files.write(file, out.toByteArray());
+    }
+
+    private static ByteBuffer le(final int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long crc(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
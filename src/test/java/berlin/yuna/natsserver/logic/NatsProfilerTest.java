@@ -0,0 +1,90 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.logic.NatsProfiler.Profile;
+import berlin.yuna.natsserver.model.exception.NatsStreamingProfileException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PROFILE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("Pprof profile collector")
+class NatsProfilerTest {
+
+    private HttpServer server;
+    private Path dir;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("nats_profile_");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/debug/pprof/", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            final var name = exchange.getRequestURI().getPath().substring(13);
+            final var body = name.getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop(0);
+        NatsUtils.deleteRecursive(dir);
+    }
+
+    @Test
+    @DisplayName("Collect profiles around a workload")
+    void profile_shouldStoreAllProfiles() throws Exception {
+        final var profiler = new NatsProfiler("localhost", server.getAddress().getPort()).maxCpuSeconds(2).prefix("bench_");
+        final var result = profiler.profile(dir, () -> "done");
+        assertThat(result, is(equalTo("done")));
+        assertThat(requests.contains("/debug/pprof/profile?seconds=2"), is(true));
+        for (Profile profile : Profile.values()) {
+            final var file = dir.resolve("bench_" + profile.name().toLowerCase() + ".pb.gz");
+            assertThat(Files.readString(file), is(equalTo(profile.endpoint())));
+            assertThat(profiler.file(profile), is(equalTo(file)));
+        }
+    }
+
+    @Test
+    @DisplayName("Selected profiles only")
+    void stop_shouldReturnSelectedProfiles() {
+        final var profiler = new NatsProfiler("localhost", server.getAddress().getPort()).profiles(Profile.HEAP, Profile.GOROUTINE);
+        final var files = profiler.start(dir).stop();
+        assertThat(files.size(), is(2));
+        assertThat(files.get(Profile.HEAP), is(equalTo(dir.resolve("heap.pb.gz"))));
+        assertThat(requests.size(), is(2));
+        assertThrows(IllegalStateException.class, profiler::stop);
+    }
+
+    @Test
+    @DisplayName("Failures and missing profile port")
+    void profile_shouldFail() {
+        server.stop(0);
+        final var profiler = new NatsProfiler("localhost", server.getAddress().getPort()).profiles(Profile.HEAP).timeoutMs(500);
+        assertThrows(NatsStreamingProfileException.class, () -> profiler.start(dir).stop());
+        assertThrows(IllegalStateException.class, () -> new NatsProfiler(new NatsStreaming(natsStreamingBuilder().autostart(false))));
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).config(PROFILE, "6060"));
+        assertThat(new NatsProfiler(nats).url(), is(equalTo("http://localhost:6060/debug/pprof/")));
+    }
+}
@@ -0,0 +1,150 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@Tag("UnitTest")
+@DisplayName("Proxy")
+class NatsProxyTest {
+
+    private ServerSocket echo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        echo = new ServerSocket(0);
+        final Thread acceptor = new Thread(() -> {
+            while (!echo.isClosed()) {
+                try {
+                    final Socket socket = echo.accept();
+                    final Thread worker = new Thread(() -> NatsUtils.ignoreException(run -> {
+                        try (socket; final InputStream in = socket.getInputStream(); final OutputStream out = socket.getOutputStream()) {
+                            in.transferTo(out);
+                        }
+                        return run;
+                    }));
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (IOException ignored) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        echo.close();
+    }
+
+    @Test
+    @DisplayName("Forward without shaping")
+    void forward_shouldEcho() throws Exception {
+        try (final var proxy = new NatsProxy("localhost", echo.getLocalPort()).start(); final var socket = new Socket("localhost", proxy.port())) {
+            final var payload = payload(256 * 1024);
+            assertThat(roundTrip(socket, payload), is(equalTo(payload)));
+            assertThat(proxy.bytesUp(), is(256L * 1024));
+            assertThat(proxy.bytesDown(), is(256L * 1024));
+            assertThat(proxy.connections(), is(1L));
+        }
+    }
+
+    @Test
+    @DisplayName("Latency, jitter and chunking keep the byte order")
+    void latency_shouldDelayBothDirections() throws Exception {
+        try (final var proxy = new NatsProxy("localhost", echo.getLocalPort()).latencyMs(50).jitterMs(20).chunkSize(7).start(); final var socket = new Socket("localhost", proxy.port())) {
+            final var payload = payload(4096);
+            final long start = System.nanoTime();
+            assertThat(roundTrip(socket, payload), is(equalTo(payload)));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(greaterThanOrEqualTo(100L)));
+
+            proxy.latencyMs(0).jitterMs(0).chunkSize(0);
+            final long fast = System.nanoTime();
+            assertThat(roundTrip(socket, payload), is(equalTo(payload)));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fast), is(lessThan(100L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Bandwidth cap")
+    void bytesPerSecond_shouldLimitThroughput() throws Exception {
+        try (final var proxy = new NatsProxy("localhost", echo.getLocalPort()).bytesPerSecond(200 * 1024).start(); final var socket = new Socket("localhost", proxy.port())) {
+            final var payload = payload(100 * 1024);
+            final long start = System.nanoTime();
+            assertThat(roundTrip(socket, payload), is(equalTo(payload)));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(greaterThanOrEqualTo(400L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Close on client disconnect")
+    void close_shouldReleaseLinks() throws Exception {
+        try (final var proxy = new NatsProxy("localhost", echo.getLocalPort()).start()) {
+            try (final var socket = new Socket("localhost", proxy.port())) {
+                roundTrip(socket, payload(16));
+                assertThat(proxy.activeConnections(), is(1));
+            }
+            final long deadline = System.currentTimeMillis() + 2000;
+            while (proxy.activeConnections() > 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertThat(proxy.activeConnections(), is(0));
+        }
+    }
+
+    @Test
+    @DisplayName("Blocked proxy drops and refuses connections")
+    void blocked_shouldDropConnections() throws Exception {
+        try (final var proxy = new NatsProxy("localhost", echo.getLocalPort()).start(); final var socket = new Socket("localhost", proxy.port())) {
+            roundTrip(socket, payload(16));
+            proxy.blocked(true);
+            assertThat(socket.getInputStream().read(), is(-1));
+            try (final var refused = new Socket("localhost", proxy.port())) {
+                assertThat(refused.getInputStream().read(), is(-1));
+            }
+            proxy.blocked(false);
+            try (final var healed = new Socket("localhost", proxy.port())) {
+                assertThat(roundTrip(healed, payload(16)), is(equalTo(payload(16))));
+            }
+        }
+    }
+
+    private static byte[] roundTrip(final Socket socket, final byte[] payload) throws Exception {
+        final var received = new byte[payload.length];
+        final Thread writer = new Thread(() -> NatsUtils.ignoreException(run -> {
+            socket.getOutputStream().write(payload);
+            socket.getOutputStream().flush();
+            return run;
+        }));
+        writer.start();
+        new DataInputStream(socket.getInputStream()).readFully(received);
+        writer.join();
+        return received;
+    }
+
+    private static byte[] payload(final int size) {
+        final var payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,48 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_PARALLEL_RECOVERY;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_READ_BUFFER_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.FILE_SLICE_MAX_MSGS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+
+@Tag("UnitTest")
+@DisplayName("Recovery benchmark")
+class NatsRecoveryBenchmarkTest {
+
+    @Test
+    @DisplayName("Store layout depends on slice configs only")
+    void layout_shouldContainSliceConfigsOnly() {
+        final var layout = NatsRecoveryBenchmark.layout(Map.of(FILE_PARALLEL_RECOVERY, "4", FILE_SLICE_MAX_MSGS, "100", FILE_READ_BUFFER_SIZE, "0"));
+        assertThat(layout, is(equalTo(Map.of(FILE_SLICE_MAX_MSGS, "100"))));
+    }
+
+    @Test
+    @DisplayName("Recovery time per parallel recovery")
+    void run_shouldMeasureTimeToReady() {
+        final var result = new NatsRecoveryBenchmark()
+                .channels(8)
+                .messages(500)
+                .restarts(2)
+                .dimension(FILE_PARALLEL_RECOVERY, "1", "4")
+                .dimension(FILE_SLICE_MAX_MSGS, "100", "0")
+                .run();
+        assertThat(result.rows(), hasSize(8));
+        result.rows().forEach(row -> {
+            assertThat(row.toString(), row.failed(), is(false));
+            assertThat(row.metrics().get("recovered_channels"), is(equalTo(8L)));
+            assertThat(row.metrics().get("ready_ms").doubleValue(), is(greaterThanOrEqualTo(row.metrics().get("bind_ms").doubleValue())));
+            assertThat(row.metrics().get("store_bytes").longValue(), is(greaterThan(8L * 500 * 128)));
+        });
+    }
+}
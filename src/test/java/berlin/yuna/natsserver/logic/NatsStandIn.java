@@ -0,0 +1,153 @@
+package berlin.yuna.natsserver.logic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Scripted local stand-in for the NATS core protocol (INFO, CONNECT, PING, SUB, UNSUB, PUB) without any store <br />
+ * Publishing to denied.* answers with a permissions violation which keeps the connection open
+ */
+class NatsStandIn implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong(0);
+
+    NatsStandIn() throws IOException {
+        server = new ServerSocket(0);
+        final Thread acceptor = new Thread(this::accept, "stand-in-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    long published() {
+        return published.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Client client : clients) {
+            client.socket.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (!server.isClosed()) {
+                final Client client = new Client(server.accept());
+                clients.add(client);
+                final Thread thread = new Thread(client::serve, "stand-in-client");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException ignored) {
+            // closed
+        }
+    }
+
+    private void deliver(final String subject, final String replyTo, final byte[] payload) throws IOException {
+        published.incrementAndGet();
+        for (Client client : clients) {
+            for (Map.Entry<String, String> sub : client.subs.entrySet()) {
+                if (matches(sub.getValue(), subject)) {
+                    client.send(("MSG " + subject + " " + sub.getKey() + (replyTo == null ? "" : " " + replyTo) + " " + payload.length + "\r\n").getBytes(ISO_8859_1), payload);
+                }
+            }
+        }
+    }
+
+    static boolean matches(final String pattern, final String subject) {
+        final String[] expected = pattern.split("\\.");
+        final String[] actual = subject.split("\\.");
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i].equals(">")) {
+                return actual.length > i;
+            } else if (i >= actual.length || (!expected[i].equals("*") && !expected[i].equals(actual[i]))) {
+                return false;
+            }
+        }
+        return expected.length == actual.length;
+    }
+
+    private class Client {
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<String, String> subs = new ConcurrentHashMap<>();
+
+        Client(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        synchronized void send(final byte[] line, final byte[] payload) throws IOException {
+            out.write(line);
+            if (payload != null) {
+                out.write(payload);
+                out.write('\r');
+                out.write('\n');
+            }
+            out.flush();
+        }
+
+        void serve() {
+            try (final InputStream in = new BufferedInputStream(socket.getInputStream())) {
+                send("INFO {\"server_id\":\"stand-in\",\"proto\":1,\"max_payload\":1048576}\r\n".getBytes(ISO_8859_1), null);
+                String line;
+                while ((line = readLine(in)) != null) {
+                    final String[] args = line.split(" ");
+                    switch (args[0].toUpperCase()) {
+                        case "PING" -> send("PONG\r\n".getBytes(ISO_8859_1), null);
+                        case "SUB" -> subs.put(args[args.length - 1], args[1]);
+                        case "UNSUB" -> subs.remove(args[1]);
+                        case "PUB" -> {
+                            final byte[] payload = in.readNBytes(Integer.parseInt(args[args.length - 1]));
+                            readLine(in);
+                            if (args[1].startsWith("denied.")) {
+                                send(("-ERR 'Permissions Violation for Publish to \"" + args[1] + "\"'\r\n").getBytes(ISO_8859_1), null);
+                            } else {
+                                deliver(args[1], args.length == 4 ? args[2] : null, payload);
+                            }
+                        }
+                        default -> {
+                            // CONNECT, PONG
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // disconnected
+            } finally {
+                clients.remove(this);
+            }
+        }
+
+        private String readLine(final InputStream in) throws IOException {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return line.toString(ISO_8859_1).trim();
+                }
+                line.write(b);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.exception.NatsStreamingStoreException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("Store snapshot")
+class NatsStoreSnapshotTest {
+
+    @Test
+    @DisplayName("Hardlink sealed slices only")
+    void copyStore_shouldLinkSealedSlices() throws Exception {
+        final Path source = store();
+        final Path target = Files.createTempDirectory("nats_store_copy_");
+        assertThat(NatsUtils.copyStore(source, target), is(2));
+        assertThat(Files.isSameFile(source.resolve("orders/msgs.1.dat"), target.resolve("orders/msgs.1.dat")), is(true));
+        assertThat(Files.isSameFile(source.resolve("orders/msgs.1.idx"), target.resolve("orders/msgs.1.idx")), is(true));
+        assertThat(Files.isSameFile(source.resolve("orders/msgs.2.dat"), target.resolve("orders/msgs.2.dat")), is(false));
+        assertThat(Files.isSameFile(source.resolve("orders/subs.dat"), target.resolve("orders/subs.dat")), is(false));
+        assertThat(Files.readString(target.resolve("clients.dat")), is(equalTo("clients")));
+        NatsUtils.deleteRecursive(source);
+        NatsUtils.deleteRecursive(target);
+    }
+
+    @Test
+    @DisplayName("Snapshot and restore a stopped server")
+    void snapshotStore_shouldRestoreState() throws Exception {
+        final Path store = store();
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).config(STORE, "FILE").config(DIR, store.toString()));
+        final Path snapshot = nats.snapshotStore();
+        Files.writeString(store.resolve("orders/msgs.2.dat"), "changed", UTF_8);
+        Files.writeString(store.resolve("orders/msgs.3.dat"), "new", UTF_8);
+        nats.restoreStore(snapshot);
+        assertThat(Files.readString(store.resolve("orders/msgs.2.dat")), is(equalTo("msgs.2.dat")));
+        assertThat(Files.exists(store.resolve("orders/msgs.3.dat")), is(false));
+        nats.restoreStore(snapshot);
+        assertThat(Files.readString(snapshot.resolve("orders/msgs.2.dat")), is(equalTo("msgs.2.dat")));
+        NatsUtils.deleteRecursive(store);
+        NatsUtils.deleteRecursive(snapshot);
+    }
+
+    @Test
+    @DisplayName("Snapshot requires FILE store")
+    void snapshotStore_withoutFileStore_shouldFail() {
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false));
+        assertThrows(NatsStreamingStoreException.class, nats::snapshotStore);
+        assertThrows(NatsStreamingStoreException.class, () -> nats.restoreStore(Path.of("not_existing")));
+    }
+
+    @Test
+    @DisplayName("Restore a running server")
+    void restoreStore_shouldRestartServer() throws Exception {
+        final Path store = Files.createTempDirectory("nats_store_");
+        try (final var nats = new NatsStreaming(natsStreamingBuilder().port(-1).config(STORE, "FILE").config(DIR, store.toString()))) {
+            try (final var client = StanClient.connect(nats, "snapshot-test")) {
+                for (int i = 0; i < 10; i++) {
+                    client.publish("snapshot.test", new byte[]{(byte) i});
+                }
+            }
+            final Path snapshot = nats.snapshotStore();
+            try (final var client = StanClient.connect(nats, "snapshot-test")) {
+                client.publish("snapshot.test", new byte[]{10});
+            }
+            nats.restoreStore(snapshot);
+            assertThat(nats.pid() > 0, is(true));
+            NatsUtils.deleteRecursive(snapshot);
+        }
+        assertThat(new NatsFileStoreReader(store).stats("snapshot.test").lastSequence(), is(10L));
+        NatsUtils.deleteRecursive(store);
+    }
+
+    private static Path store() throws Exception {
+        final Path store = Files.createTempDirectory("nats_store_");
+        Files.createDirectories(store.resolve("orders"));
+        for (String file : new String[]{"msgs.1.dat", "msgs.1.idx", "msgs.2.dat", "msgs.2.idx", "subs.dat"}) {
+            Files.writeString(store.resolve("orders").resolve(file), file, UTF_8);
+        }
+        Files.writeString(store.resolve("clients.dat"), "clients", UTF_8);
+        return store;
+    }
+}
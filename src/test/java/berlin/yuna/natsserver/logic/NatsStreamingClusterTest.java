@@ -0,0 +1,106 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_LOG_CACHE_SIZE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.CLUSTER_PEERS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.ROUTES;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("Cluster launcher")
+class NatsStreamingClusterTest {
+
+    @Test
+    @DisplayName("Reserve distinct ports")
+    void reservePorts_shouldBeDistinct() {
+        final var ports = NatsUtils.reservePorts(9);
+        assertThat(ports.size(), is(9));
+        assertThat(new HashSet<>(ports).size(), is(9));
+    }
+
+    @Test
+    @DisplayName("Disjoint cpu sets")
+    void cpuSets_shouldBeDisjoint() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        assertThat(NatsUtils.cpuSets(1, 1, cores - 1), is(equalTo(List.of(String.valueOf(cores - 1)))));
+        if (cores >= 5) {
+            assertThat(NatsUtils.cpuSets(2, 2, 1), is(equalTo(List.of("1-2", "3-4"))));
+        }
+        assertThrows(IllegalArgumentException.class, () -> NatsUtils.cpuSets(cores, 1, 1));
+    }
+
+    @Test
+    @DisplayName("Start three nodes and elect a leader")
+    void start_shouldElectLeader() throws Exception {
+        try (final var cluster = new NatsStreamingCluster().size(3).start()) {
+            assertThat(cluster.nodes().size(), is(3));
+            assertThat(cluster.leader(), is(notNullValue()));
+            assertThat(Files.isDirectory(cluster.dir().resolve("node-0")), is(true));
+            final var node = cluster.node("node-1");
+            assertThat(node.config().get(CLUSTER_PEERS), is(equalTo("node-0,node-2")));
+            assertThat(node.config().get(ROUTES), not(containsString(node.config().get(CLUSTER))));
+            cluster.nodes().forEach(n -> assertThat(cluster.role(n), is(notNullValue())));
+        }
+    }
+
+    @Test
+    @DisplayName("Rolling restart requires a started cluster")
+    void rollingRestart_withoutStart_shouldFail() {
+        final var cluster = new NatsStreamingCluster();
+        assertThrows(IllegalStateException.class, () -> cluster.rollingRestart(Map.of(CLUSTER_LOG_CACHE_SIZE, "1024")));
+    }
+
+    @Test
+    @DisplayName("Rolling restart applies changes node by node")
+    void rollingRestart_shouldKeepClusterAvailable() {
+        try (final var cluster = new NatsStreamingCluster().size(3).warmupMs(200).start()) {
+            assertThrows(IllegalArgumentException.class, () -> cluster.rollingRestart(Map.of(CLUSTER, "nats://localhost:4248")));
+            final var result = cluster.rollingRestart(Map.of(CLUSTER_LOG_CACHE_SIZE, "1024"));
+            assertThat(result.restartMs().keySet(), is(equalTo(new HashSet<>(cluster.nodeIds()))));
+            assertThat(result.probeOk(), is(greaterThan(0L)));
+            cluster.nodes().forEach(node -> assertThat(node.config().get(CLUSTER_LOG_CACHE_SIZE), is(equalTo("1024"))));
+            assertThat(cluster.leader(), is(notNullValue()));
+        }
+    }
+
+    @Test
+    @DisplayName("Partition requires relayed routes")
+    void partition_withoutRelays_shouldFail() {
+        final var cluster = new NatsStreamingCluster();
+        assertThrows(IllegalStateException.class, () -> cluster.partition(List.of("node-0")));
+    }
+
+    @Test
+    @DisplayName("Partition the leader and heal")
+    void measurePartition_shouldElectNewLeader() {
+        try (final var cluster = new NatsStreamingCluster().size(3).relayed(true).warmupMs(200).start()) {
+            assertThat(cluster.relays().values(), hasSize(6));
+            assertThat(cluster.node("node-0").config().get(ROUTES), containsString(cluster.relay("node-0", "node-1").url()));
+            assertThrows(IllegalArgumentException.class, () -> cluster.partition(cluster.nodeIds()));
+
+            final var leader = cluster.nodeId(cluster.leader());
+            final var result = cluster.measurePartition(List.of(leader), 3000);
+            assertThat(result.leaderIsolated(), is(true));
+            assertThat(result.catchUpMs().keySet(), is(equalTo(new HashSet<>(List.of(leader)))));
+            assertThat(result.probeOk(), is(greaterThan(0L)));
+            assertThat(cluster.relay("node-0", "node-1").blocked(), is(false));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package berlin.yuna.natsserver.logic;
 import berlin.yuna.natsserver.config.NatsStreamingConfig;
 import berlin.yuna.natsserver.config.NatsStreamingOptions;
 import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.model.NatsState;
 import berlin.yuna.natsserver.model.exception.NatsStreamingDownloadException;
 import berlin.yuna.natsserver.model.exception.NatsStreamingFileReaderException;
 import berlin.yuna.natsserver.model.exception.NatsStreamingStartException;
@@ -13,13 +14,28 @@ import org.junit.jupiter.api.Test;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.ADDR;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.DEBUG;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.DIR;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.MAX_CHANNELS;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_BINARY_PATH;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PASS;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STAN_CONFIG;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.TRACE;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.USER;
 import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
 import static berlin.yuna.natsserver.model.MapValue.mapValueOf;
 import static berlin.yuna.natsserver.model.ValueSource.ENV;
@@ -27,6 +43,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -171,6 +188,234 @@ class NatsStreamingComponentTest {
         assertThat(nats.pid(), is(greaterThan(-1)));
     }
 
+    @Test
+    @DisplayName("Ephemeral store is namespaced, collects stale stores and is deleted on close")
+    void ephemeralStore_shouldBeDeletedOnClose() throws Exception {
+        final var root = Files.createTempDirectory("nats_ephemeral_root_");
+        final var stale = Files.createDirectories(root.resolve("nats_ephemeral/crashed_" + Long.MAX_VALUE + "_1/channel"));
+        Files.writeString(stale.resolve("msgs.1.dat"), "stale");
+        final var first = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).ephemeralStore(true).ephemeralRoot(root));
+        final var second = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).ephemeralStore(true).ephemeralRoot(root));
+        assertThat(Files.exists(stale.getParent()), is(false));
+        assertThat(first.ephemeralDir(), is(not(equalTo(second.ephemeralDir()))));
+        assertThat(first.ephemeralDir().getParent(), is(equalTo(root.resolve("nats_ephemeral"))));
+        assertThat(first.config().get(DIR), is(equalTo(first.ephemeralDir().toString())));
+        assertThat(first.config().get(STORE), is(equalTo("FILE")));
+
+        Files.createDirectories(first.ephemeralDir().resolve("channel"));
+        Files.writeString(first.ephemeralDir().resolve("channel/msgs.1.dat"), "data");
+        first.close();
+        assertThat(Files.exists(first.ephemeralDir()), is(false));
+        assertThat(Files.exists(second.ephemeralDir()), is(true));
+        second.close();
+
+        final var explicit = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).ephemeralStore(true).ephemeralRoot(root).config(DIR, root.resolve("explicit").toString()));
+        assertThat(explicit.ephemeralDir(), is(nullValue()));
+        assertThat(explicit.config().get(DIR), is(equalTo(root.resolve("explicit").toString())));
+        NatsUtils.deleteRecursive(root);
+    }
+
+    @Test
+    @DisplayName("Reconfigure a stopped server for the next start")
+    void reconfigure_stoppedServer_shouldApplyOnNextStart() {
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false)
+                .config(USER, "Admin").config(MAX_CHANNELS, "10"));
+        assertThat(nats.prepareCommand().contains("--max_channels=10"), is(true));
+        assertThat(nats.reconfigure(Map.of(USER, "other", MAX_CHANNELS, "20")), is(false));
+        assertThat(nats.getValue(USER), is(equalTo("other")));
+        final var command = nats.prepareCommand();
+        assertThat(command.contains("--user=other"), is(true));
+        assertThat(command.contains("--max_channels=20"), is(true));
+    }
+
+    @Test
+    @DisplayName("Reconfigure restarts a running server")
+    void reconfigure_shouldRestart() {
+        try (final var nats = new NatsStreaming(testConfig().config(USER, "first").config(PASS, "secret"))) {
+            final var pid = nats.pid();
+            assertThat(nats.reconfigure(Map.of(USER, "first")), is(false));
+            assertThat(nats.pid(), is(equalTo(pid)));
+            assertThat(nats.reconfigure(Map.of(USER, "second", DEBUG, "true")), is(true));
+            assertThat(nats.isRunning(), is(true));
+            assertThat(nats.pid(), is(not(equalTo(pid))));
+            assertThat(nats.getValue(USER), is(equalTo("second")));
+        }
+    }
+
+    @Test
+    @DisplayName("Channel limits are written to a stan config file")
+    void channelLimits_shouldGenerateStanConfig() throws Exception {
+        final var custom = Files.createTempFile("nats_stan_", ".conf");
+        Files.writeString(custom, "max_channels: 10");
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).config(STAN_CONFIG, custom.toString())
+                .channel("orders.*").maxMsgs(100).maxAge(Duration.ofMinutes(1)).and());
+        final var command = nats.prepareCommand();
+        final var file = nats.pidFile().resolveSibling(nats.port() + "_stan.conf");
+        final var conf = Files.readString(file);
+        assertThat(command.contains("--stan_config=" + file), is(true));
+        assertThat(command.contains(custom.toString()), is(false));
+        assertThat(conf.startsWith("max_channels: 10"), is(true));
+        assertThat(conf.contains("\"orders.*\": {"), is(true));
+        assertThat(conf.contains("max_msgs: 100"), is(true));
+        assertThat(conf.contains("max_age: \"60000ms\""), is(true));
+        assertThat(new NatsStreaming(natsStreamingBuilder().autostart(false)).prepareCommand().contains("--stan_config"), is(false));
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(custom);
+    }
+
+    @Test
+    @DisplayName("Channel limits reject custom store limits")
+    void channelLimits_withCustomStoreLimits_shouldFail() throws Exception {
+        final var custom = Files.createTempFile("nats_stan_", ".conf");
+        for (final String content : List.of(
+                "max_channels: 10\nstore_limits {\n  max_msgs: 5\n}",
+                "store_limits: {\n  channels {\n    \"audit\": { max_msgs: 1 }\n  }\n}",
+                "streaming {\n  id: \"cluster\"\n}"
+        )) {
+            Files.writeString(custom, content);
+            final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).config(STAN_CONFIG, custom.toString())
+                    .channel("orders.*").maxMsgs(100).and());
+            assertThrows(IllegalArgumentException.class, nats::prepareCommand, content);
+            assertThat(Files.exists(nats.pidFile().resolveSibling(nats.port() + "_stan.conf")), is(false));
+        }
+        Files.writeString(custom, "# store_limits {\nmax_channels: 10");
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).shutdownHook(false).config(STAN_CONFIG, custom.toString())
+                .channel("orders.*").maxMsgs(100).and());
+        assertThat(nats.prepareCommand().contains("--stan_config="), is(true));
+        nats.deleteStanConfig();
+        Files.deleteIfExists(custom);
+    }
+
+    @Test
+    @DisplayName("Channel limits are applied by the server")
+    void channelLimits_shouldStartServer() {
+        final Path file;
+        try (final var nats = natsStreamingBuilder().config(PORT, "-1").channel("orders.*").maxMsgs(10).and().nats()) {
+            assertThat(nats.pid(), is(greaterThan(-1)));
+            assertThat(nats.channelLimits().get("orders.*"), is(equalTo(Map.of("max_msgs", "10"))));
+            file = nats.pidFile().resolveSibling(nats.port() + "_stan.conf");
+            assertThat(Files.exists(file), is(true));
+        }
+        assertThat(Files.exists(file), is(false));
+    }
+
+    @Test
+    @DisplayName("Restart reuses the previous command")
+    void restart_shouldReuseCommand() {
+        try (final var nats = new NatsStreaming(testConfig().goMaxProcs(1))) {
+            final var pid = nats.pid();
+            final var port = nats.port();
+            final var command = nats.command;
+            for (int i = 0; i < 3; i++) {
+                nats.restart();
+                assertThat(nats.pid(), is(not(equalTo(pid))));
+                assertThat(nats.port(), is(equalTo(port)));
+                assertThat(nats.command, is(equalTo(command)));
+            }
+            nats.shutdown();
+            nats.restart();
+            assertThat(nats.pid(), is(greaterThan(-1)));
+            nats.reconfigure(Map.of(MAX_CHANNELS, "10"));
+            assertThat(nats.command.contains("--max_channels=10"), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("Restart without previous command")
+    void restart_withoutCommand_shouldRestart() {
+        try (final var nats = new NatsStreaming(testConfig())) {
+            nats.reconfigure(Map.of(DEBUG, "true"));
+            final var pid = nats.pid();
+            nats.restart();
+            assertThat(nats.isRunning(), is(true));
+            assertThat(nats.pid(), is(not(equalTo(pid))));
+
+            final var cachedPid = nats.pid();
+            nats.command = null;
+            nats.restart();
+            assertThat(nats.isRunning(), is(true));
+            assertThat(nats.pid(), is(not(equalTo(cachedPid))));
+            assertThat(nats.command, is(notNullValue()));
+        }
+    }
+
+    @Test
+    @DisplayName("Failed start ends in state FAILED")
+    void state_shouldBeFailedOnStartError() throws Exception {
+        final var transitions = new CopyOnWriteArrayList<String>();
+        final var binary = Files.createTempFile("nats_failing_", ".sh");
+        Files.writeString(binary, "#!/bin/sh" + System.lineSeparator() + "exit 1" + System.lineSeparator());
+        final var nats = natsStreamingBuilder().autostart(false).shutdownHook(false).port(-1).timeoutMs(500).config(NATS_BINARY_PATH, binary.toString()).nats()
+                .addStateListener((previous, next) -> transitions.add(previous + "->" + next))
+                .addStateListener((previous, next) -> {
+                    throw new IllegalStateException("ignored");
+                });
+        assertThat(nats.state(), is(NatsState.NEW));
+        nats.close();
+        assertThat(transitions.isEmpty(), is(true));
+        assertThrows(NatsStreamingStartException.class, nats::start);
+        assertThat(nats.state(), is(NatsState.FAILED));
+        assertThat(nats.isRunning(), is(false));
+        nats.close();
+        assertThat(nats.state(), is(NatsState.STOPPED));
+        assertThat(transitions, is(equalTo(List.of("NEW->STARTING", "STARTING->FAILED", "FAILED->STOPPING", "STOPPING->STOPPED"))));
+        Files.deleteIfExists(binary);
+    }
+
+    @Test
+    @DisplayName("Lifecycle states and non blocking queries")
+    void state_shouldFollowLifecycle() throws Exception {
+        final var transitions = new CopyOnWriteArrayList<NatsState>();
+        final var nats = natsStreamingBuilder().autostart(false).shutdownHook(false).port(-1).nats().addStateListener((previous, next) -> transitions.add(next));
+        final var executor = Executors.newFixedThreadPool(4);
+        final var queries = new AtomicInteger(0);
+        final var starts = new ArrayList<Future<NatsStreaming>>();
+        for (int i = 0; i < 4; i++) {
+            starts.add(executor.submit(nats::start));
+        }
+        do {
+            nats.url();
+            nats.port();
+            queries.incrementAndGet();
+        } while (nats.state() == NatsState.NEW || nats.state() == NatsState.STARTING);
+        for (Future<NatsStreaming> start : starts) {
+            start.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(queries.get(), is(greaterThan(0)));
+        assertThat(nats.isRunning(), is(true));
+
+        final var stops = new ArrayList<Future<NatsState>>();
+        for (int i = 0; i < 2; i++) {
+            stops.add(executor.submit(() -> {
+                nats.close();
+                return nats.state();
+            }));
+        }
+        for (Future<NatsState> stop : stops) {
+            assertThat(stop.get(10, TimeUnit.SECONDS), is(NatsState.STOPPED));
+        }
+        executor.shutdown();
+        assertThat(transitions, is(equalTo(List.of(NatsState.STARTING, NatsState.READY, NatsState.STOPPING, NatsState.STOPPED))));
+    }
+
+    @Test
+    @DisplayName("Shutdown while starting leaves no process")
+    void state_shutdownWhileStarting_shouldKillProcess() throws Exception {
+        final var nats = natsStreamingBuilder().autostart(false).shutdownHook(false).port(-1).nats();
+        final var executor = Executors.newSingleThreadExecutor();
+        final var start = executor.submit(nats::start);
+        while (nats.state() == NatsState.NEW) {
+            Thread.yield();
+        }
+        nats.shutdown();
+        assertThat(nats.state(), is(NatsState.STOPPED));
+        start.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertThat(nats.state(), is(NatsState.STOPPED));
+        assertThat(nats.isRunning(), is(false));
+        assertThat(nats.terminal.get(), is(nullValue()));
+        assertThat(nats.pid(), is(-1));
+    }
 
     @Test
     @DisplayName("Cov dummy")
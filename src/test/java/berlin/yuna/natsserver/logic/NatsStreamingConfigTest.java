@@ -23,6 +23,8 @@ import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static berlin.yuna.clu.logic.SystemUtil.OS;
+import static berlin.yuna.clu.model.OsType.OS_LINUX;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.ADDR;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_DOWNLOAD_URL;
 import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_LOG_NAME;
@@ -45,7 +47,10 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.io.FileMatchers.anExistingFile;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Tag("UnitTest")
 @DisplayName("Nats config test")
@@ -171,6 +176,29 @@ class NatsStreamingConfigTest {
         assertThat(command, containsString("--customArg1=123 --customArg2=456"));
     }
 
+    @Test
+    @DisplayName("Prepare command with environment")
+    void prepareCommand_withEnv() {
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).goMaxProcs(2).goGc(-1).goMemLimit(536870912).env("GODEBUG", "madvdontneed=1"));
+        assertThat(nats.env(), is(equalTo(Map.of("GOMAXPROCS", "2", "GOGC", "off", "GOMEMLIMIT", "536870912B", "GODEBUG", "madvdontneed=1"))));
+        final String command = nats.prepareCommand();
+        assertThat(command, containsString("GOMAXPROCS=2"));
+        assertThat(command, containsString("GOMEMLIMIT=536870912B"));
+        assertThat(command.indexOf("GODEBUG"), is(lessThan(command.indexOf(nats.binary().toString()))));
+        assertThat(new NatsStreaming(noAutostart()).prepareCommand(), startsWith(nats.binary().toString()));
+    }
+
+    @Test
+    @DisplayName("Prepare command with cpu set and nice level")
+    void prepareCommand_withIsolation() {
+        final var nats = new NatsStreaming(natsStreamingBuilder().autostart(false).cpuSet("0").nice(25).goMaxProcs(1));
+        final String command = nats.prepareCommand();
+        if (OS == OS_LINUX) {
+            assertThat(command, containsString("env GOMAXPROCS=1 nice -n 19 taskset -c 0 " + nats.binary()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new NatsStreaming(natsStreamingBuilder().autostart(false).cpuSet("0;reboot")).prepareCommand());
+    }
+
     @Test
     @DisplayName("download without zip")
     void downloadNatsWithoutZip() throws Exception {
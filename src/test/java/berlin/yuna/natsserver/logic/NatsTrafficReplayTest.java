@@ -0,0 +1,105 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@Tag("UnitTest")
+@DisplayName("Traffic replay")
+class NatsTrafficReplayTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("nats_replay_");
+        try (final var standIn = new NatsStandIn(); final var tap = new NatsTrafficTap("localhost", standIn.port()).capture(dir).start()) {
+            try (final var connection = new NatsConnection("localhost", tap.port())) {
+                connection.publish("orders.1", "a".getBytes(UTF_8));
+                connection.publish("_INBOX.skipped", "b".getBytes(UTF_8));
+                connection.publish("orders.2", new byte[100000]).flush();
+                Thread.sleep(300);
+                connection.publish("orders.3", new byte[0]).flush();
+                connection.ping();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        NatsUtils.deleteRecursive(dir);
+    }
+
+    @Test
+    @DisplayName("Replay core publishes at original speed")
+    void replay_shouldKeepRecordedTiming() throws Exception {
+        try (final var standIn = new NatsStandIn(); final var connection = new NatsConnection("localhost", standIn.port())) {
+            final var received = new AtomicLong(0);
+            final var latch = new CountDownLatch(3);
+            connection.subscribe(">", null, (subject, replyTo, payload) -> {
+                received.addAndGet(payload.remaining());
+                latch.countDown();
+            });
+            final var result = new NatsTrafficReplay(dir).replay(connection);
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(result.messages(), is(3L));
+            assertThat(result.streamingMessages(), is(0L));
+            assertThat(result.bytes(), is(100001L));
+            assertThat(received.get(), is(100001L));
+            assertThat(result.recordedNs(), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(250))));
+            assertThat(result.durationNs(), is(greaterThanOrEqualTo(result.recordedNs())));
+            assertThat(result.lag().count(), is(3L));
+        }
+    }
+
+    @Test
+    @DisplayName("Replay accelerated and unthrottled")
+    void replay_shouldAccelerate() throws Exception {
+        try (final var standIn = new NatsStandIn(); final var connection = new NatsConnection("localhost", standIn.port())) {
+            final var fast = new NatsTrafficReplay(dir).speed(10).replay(connection);
+            assertThat(fast.messages(), is(3L));
+            assertThat(fast.durationNs(), is(lessThan(fast.recordedNs())));
+            assertThat(fast.achievedSpeed(), is(greaterThan(1d)));
+
+            final var unthrottled = new NatsTrafficReplay(dir).asFastAsPossible().replay(connection);
+            assertThat(unthrottled.messages(), is(3L));
+            assertThat(unthrottled.lag().count(), is(0L));
+            assertThat(new NatsTrafficReplay(dir).core(false).replay(connection).messages(), is(0L));
+        }
+    }
+
+    @Test
+    @DisplayName("Replay streaming publishes")
+    void replay_streamingCapture_shouldPublishAgain() throws Exception {
+        try (final var source = new NatsStreaming(4240).start(); final var tap = new NatsTrafficTap("localhost", source.port()).capture(dir.resolve("stan")).start()) {
+            final var connection = new NatsConnection("localhost", tap.port());
+            try (final var client = new StanClient(connection, StanClient.DEFAULT_CLUSTER_ID, "recorder", 64, true)) {
+                for (int i = 0; i < 100; i++) {
+                    client.publishAsync("replayed", ("msg-" + i).getBytes(UTF_8));
+                }
+                client.flush();
+            }
+        }
+        try (final var target = new NatsStreaming(4241).start()) {
+            final var result = new NatsTrafficReplay(dir.resolve("stan")).asFastAsPossible().replay(target);
+            assertThat(result.streamingMessages(), is(100L));
+            assertThat(result.errors(), is(0L));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+@Tag("UnitTest")
+@DisplayName("Traffic tap")
+class NatsTrafficTapTest {
+
+    @Test
+    @DisplayName("Aggregate per connection")
+    void tap_shouldCountOpsAndPayloads() throws Exception {
+        try (final var standIn = new NatsStandIn(); final var tap = new NatsTrafficTap("localhost", standIn.port()).start()) {
+            try (final var connection = new NatsConnection("localhost", tap.port(), "flooder", null, null, null, NatsConnection.DEFAULT_BUFFER_SIZE, 5000)) {
+                final var latch = new CountDownLatch(3);
+                connection.subscribe("orders.*", null, (subject, replyTo, payload) -> latch.countDown());
+                connection.publish("orders.1", "a".getBytes(UTF_8));
+                connection.publish("orders.2", new byte[1000]);
+                connection.publish("orders.3", null, ByteBuffer.wrap(new byte[100000])).flush();
+                assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+                connection.ping();
+            }
+            final var traffic = tap.connections().get(0);
+            assertThat(traffic.name(), is(equalTo("flooder")));
+            assertThat(traffic.msgsIn(), is(3L));
+            assertThat(traffic.msgsOut(), is(3L));
+            assertThat(traffic.ops().get("PUB"), is(3L));
+            assertThat(traffic.ops().get("SUB"), is(1L));
+            assertThat(traffic.ops().get("CONNECT"), is(1L));
+            assertThat(traffic.payloadsIn().max(), is(100000L));
+            assertThat(traffic.payloadsIn().percentile(50), is(lessThanOrEqualTo(1023L)));
+            assertThat(traffic.bytesIn(), is(greaterThan(101001L)));
+            assertThat(tap.total().msgsIn(), is(3L));
+            assertThat(tap.report(10), containsString("flooder"));
+        }
+    }
+
+    @Test
+    @DisplayName("Capture into rotating files")
+    void capture_shouldRotateAndRead() throws Exception {
+        final var dir = Files.createTempDirectory("nats_tap_");
+        try (final var standIn = new NatsStandIn(); final var tap = new NatsTrafficTap("localhost", standIn.port()).capture(dir, 4096, 2).start()) {
+            try (final var connection = new NatsConnection("localhost", tap.port())) {
+                for (int i = 0; i < 20; i++) {
+                    connection.publish("capture." + i, new byte[512]).flush();
+                }
+                connection.ping();
+            }
+        }
+        assertThat(NatsTrafficTap.captureFiles(dir), hasSize(2));
+        final var toServer = new AtomicLong(0);
+        final long records = NatsTrafficTap.read(dir, (offsetNs, connection, up, data) -> {
+            if (up) {
+                toServer.addAndGet(data.remaining());
+            }
+        });
+        assertThat(records, is(greaterThan(0L)));
+        assertThat(toServer.get(), is(greaterThan(0L)));
+        NatsUtils.deleteRecursive(dir);
+    }
+}
@@ -0,0 +1,77 @@
+package berlin.yuna.natsserver.logic;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.NATS_STREAMING_VERSION;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static berlin.yuna.natsserver.config.NatsStreamingVersion.V0_25_5;
+import static berlin.yuna.natsserver.config.NatsStreamingVersion.V0_25_6;
+import static berlin.yuna.natsserver.logic.NatsVersionComparison.START_MS;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+
+@Tag("UnitTest")
+@DisplayName("Version comparison")
+class NatsVersionComparisonTest {
+
+    @Test
+    @DisplayName("Offline without cached binaries")
+    void offline_shouldReportMissingBinaries() throws Exception {
+        final var cacheDir = Files.createTempDirectory("nats_versions_");
+        final var result = new NatsVersionComparison()
+                .versions("0.25.6", "v0.25.5")
+                .baseline(V0_25_5)
+                .cacheDir(cacheDir)
+                .offline(true)
+                .run();
+        assertThat(result.baseline(), is(equalTo("v0.25.5")));
+        assertThat(result.runs().isEmpty(), is(true));
+        assertThat(result.errors().keySet().toString(), is(equalTo("[v0.25.6, v0.25.5]")));
+        assertThat(result.errors().get("v0.25.6"), containsString(cacheDir.toString()));
+        NatsUtils.deleteRecursive(cacheDir);
+    }
+
+    @Test
+    @DisplayName("Compare two versions")
+    void run_shouldCompareVersions() {
+        final var result = new NatsVersionComparison()
+                .versions(V0_25_5, V0_25_6)
+                .repetitions(2)
+                .workload(nats -> new StanBenchmark(nats).messages(200).run().metrics())
+                .run();
+        assertThat(result.errors().toString(), result.errors().isEmpty(), is(true));
+        assertThat(result.runs().get("v0.25.6"), hasSize(2));
+        assertThat(result.stats("v0.25.5", START_MS).count(), is(2));
+        assertThat(result.deltas().isEmpty(), is(false));
+    }
+
+    @Test
+    @DisplayName("Parallel versions use their own servers")
+    void run_inParallel_shouldUseOwnServers() {
+        final var seen = new ConcurrentHashMap<String, Integer>();
+        final var result = new NatsVersionComparison(natsStreamingBuilder().config(PORT, "4222"))
+                .versions(V0_25_5, V0_25_6)
+                .repetitions(1)
+                .workload(nats -> {
+                    seen.put(nats.getValue(NATS_STREAMING_VERSION), nats.port());
+                    return Map.of("pid", nats.pid());
+                })
+                .run();
+        assertThat(result.errors().toString(), result.errors().isEmpty(), is(true));
+        assertThat(seen.keySet(), containsInAnyOrder("v0.25.5", "v0.25.6"));
+        assertThat(seen.get("v0.25.5"), is(not(equalTo(seen.get("v0.25.6")))));
+        assertThat(result.runs().get("v0.25.5").get(0).get("pid"), is(not(equalTo(result.runs().get("v0.25.6").get(0).get("pid")))));
+    }
+}
@@ -0,0 +1,154 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.config.NatsStreamingOptionsBuilder;
+import berlin.yuna.natsserver.logic.StanProtocol.StartPosition;
+import berlin.yuna.natsserver.model.StanBenchmarkResult;
+import berlin.yuna.natsserver.model.StanMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.PORT;
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static berlin.yuna.natsserver.logic.StanProtocol.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+@Tag("UnitTest")
+@DisplayName("Streaming workload driver")
+class StanBenchmarkTest {
+
+    @Test
+    @DisplayName("Protobuf round trip")
+    void protocol_shouldEncodeAndDecode() {
+        final var decoded = decode(encode(
+                SUB_CLIENT_ID, "client",
+                SUB_QUEUE_GROUP, null,
+                SUB_MAX_IN_FLIGHT, 300,
+                SUB_START_POSITION, StartPosition.SEQUENCE_START,
+                SUB_START_SEQUENCE, Long.MAX_VALUE,
+                SUB_START_TIME_DELTA, -1L,
+                MSG_REDELIVERED, true
+        ));
+        assertThat(string(decoded, SUB_CLIENT_ID), is(equalTo("client")));
+        assertThat(decoded.containsKey(SUB_QUEUE_GROUP), is(false));
+        assertThat(number(decoded, SUB_MAX_IN_FLIGHT), is(equalTo(300L)));
+        assertThat(number(decoded, SUB_START_POSITION), is(equalTo(3L)));
+        assertThat(number(decoded, SUB_START_SEQUENCE), is(equalTo(Long.MAX_VALUE)));
+        assertThat(number(decoded, SUB_START_TIME_DELTA), is(equalTo(-1L)));
+        assertThat(bool(decoded, MSG_REDELIVERED), is(true));
+        assertThat(bytes(decoded, 99).length, is(equalTo(0)));
+    }
+
+    @Test
+    @DisplayName("Publish with ack, durable subscription and replay")
+    void client_shouldPublishSubscribeAndReplay() throws Exception {
+        try (final var nats = new NatsStreaming(natsStreamingBuilder().config(PORT, "-1"));
+             final var client = StanClient.connect(nats, "client_test")) {
+            for (int i = 1; i <= 10; i++) {
+                client.publish("orders", ("order-" + i).getBytes(UTF_8));
+            }
+            final List<StanMessage> messages = new CopyOnWriteArrayList<>();
+            final var latch = new CountDownLatch(6);
+            final var subscription = client.subscription("orders").durableName("durable").startAtSequence(5).subscribe(message -> {
+                messages.add(message);
+                latch.countDown();
+            });
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            subscription.close();
+            assertThat(messages.get(0).sequence(), is(equalTo(5L)));
+            assertThat(new String(messages.get(5).data(), UTF_8), is(equalTo("order-10")));
+        }
+    }
+
+    @Test
+    @DisplayName("Replay of a filled channel acks without blocking the reader")
+    void subscription_deliverAllAvailable_shouldNotBlockOnAck() throws Exception {
+        try (final var nats = new NatsStreaming(natsStreamingBuilder().config(PORT, "-1"));
+             final var client = StanClient.connect(nats, "replay_test")) {
+            final var stored = new CompletableFuture<?>[200];
+            for (int i = 0; i < stored.length; i++) {
+                stored[i] = client.publishAsync("history", ("event-" + i).getBytes(UTF_8));
+            }
+            client.flush();
+            CompletableFuture.allOf(stored).get(10, TimeUnit.SECONDS);
+            final var latch = new CountDownLatch(200);
+            final var subscription = client.subscription("history").maxInFlight(5).deliverAllAvailable().subscribe(message -> latch.countDown());
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            subscription.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Workload with queue group, redelivery and replay")
+    void benchmark_shouldReportThroughputAndReplay() {
+        try (final var nats = new NatsStreaming(natsStreamingBuilder().config(PORT, "-1").config(STORE, "MEMORY"))) {
+            final StanBenchmarkResult result = new StanBenchmark(nats)
+                    .channels(2)
+                    .messages(2000)
+                    .subscribers(2)
+                    .queueGroup("workers")
+                    .durable(true)
+                    .ackWaitSecs(1)
+                    .unackedPercent(1)
+                    .run();
+            assertThat(result.acked(), is(equalTo(4000L)));
+            assertThat(result.received(), is(equalTo(4000L)));
+            assertThat(result.redelivered(), is(greaterThanOrEqualTo(40L)));
+            assertThat(result.replayed(), is(equalTo(4000L)));
+            assertThat(result.publishRate(), is(greaterThan(0d)));
+            assertThat(result.ackLatency().count(), is(equalTo(4000L)));
+        }
+    }
+
+    @Test
+    @DisplayName("Profiles trade durability for throughput")
+    void profiles_shouldTradeDurabilityForThroughput() throws Exception {
+        final var throughput = runAndRestart(natsStreamingBuilder().throughput().ephemeralStore(true), 5000);
+        final var durable = runAndRestart(natsStreamingBuilder().throughput().durable().ephemeralStore(true), 5000);
+        runAndRestart(natsStreamingBuilder().lowLatencyTest(), 0);
+        // same ephemeral store root so only the sync policy differs - generous margin as a sync is cheap on tmpfs
+        assertThat(throughput.publishRate(), is(greaterThan(durable.publishRate() / 2)));
+    }
+
+    private static StanBenchmarkResult runAndRestart(final NatsStreamingOptionsBuilder profile, final long survivors) throws Exception {
+        try (final var nats = profile.config(PORT, "-1").nats()) {
+            final var benchmark = new StanBenchmark(nats).messages(5000).messageSize(128);
+            final var result = benchmark.run();
+            assertThat(result.acked(), is(5000L));
+            nats.restart();
+            assertThat(stored(nats, benchmark.channel(0)), is(survivors));
+            return result;
+        }
+    }
+
+    private static long stored(final NatsStreaming nats, final String channel) throws Exception {
+        try (final var client = StanClient.connect(nats, "restart_check")) {
+            final var stored = new AtomicLong();
+            final var marker = new CountDownLatch(1);
+            final var subscription = client.subscription(channel).deliverAllAvailable().subscribe(message -> {
+                if ("marker".equals(new String(message.data(), UTF_8))) {
+                    marker.countDown();
+                } else {
+                    stored.incrementAndGet();
+                }
+            });
+            client.publish(channel, "marker".getBytes(UTF_8));
+            assertThat(marker.await(10, TimeUnit.SECONDS), is(true));
+            subscription.close();
+            return stored.get();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package berlin.yuna.natsserver.logic;
+
+import berlin.yuna.natsserver.model.StanMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static berlin.yuna.natsserver.config.NatsStreamingConfig.STORE;
+import static berlin.yuna.natsserver.config.NatsStreamingOptions.natsStreamingBuilder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("UnitTest")
+@DisplayName("Channel export and import")
+class StanChannelTransferTest {
+
+    @Test
+    @DisplayName("Fixture file round trip")
+    void read_shouldReturnWrittenRecords() throws Exception {
+        final Path file = Files.createTempFile("fixture_", ".stan");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(StanChannelTransfer.MAGIC);
+            StanChannelTransfer.write(out, new StanMessage(7, "orders.eu", "hello".getBytes(UTF_8), 123456789L, false, 0));
+            StanChannelTransfer.write(out, new StanMessage(8, "orders.eu", new byte[0], 123456790L, false, 0));
+        }
+        final List<StanMessage> messages = new ArrayList<>();
+        assertThat(StanChannelTransfer.read(file, messages::add), is(2L));
+        assertThat(messages, hasSize(2));
+        assertThat(messages.get(0).sequence(), is(7L));
+        assertThat(messages.get(0).timestamp(), is(123456789L));
+        assertThat(messages.get(0).subject(), is(equalTo("orders.eu")));
+        assertThat(new String(messages.get(0).data(), UTF_8), is(equalTo("hello")));
+        assertThat(messages.get(1).data().length, is(0));
+
+        Files.write(file, "invalid!".getBytes(UTF_8));
+        assertThrows(UncheckedIOException.class, () -> StanChannelTransfer.read(file, message -> {
+        }));
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    @DisplayName("Export from one server and import into another")
+    void exportTo_importFrom_shouldTransferChannels() throws Exception {
+        final Path file = Files.createTempFile("fixture_", ".stan");
+        try (final var source = new NatsStreaming(natsStreamingBuilder().port(-1).config(STORE, "MEMORY"));
+             final var target = new NatsStreaming(natsStreamingBuilder().port(-1).config(STORE, "MEMORY"))) {
+            try (final var client = StanClient.connect(source, "transfer-test")) {
+                for (int i = 0; i < 1000; i++) {
+                    client.publishAsync(i % 2 == 0 ? "transfer.a" : "transfer.b", ("message-" + i).getBytes(UTF_8));
+                }
+                client.publish("transfer.b", "last".getBytes(UTF_8));
+            }
+            final var exported = new StanChannelTransfer(source).exportTo(file, "transfer.a", "transfer.b", "transfer.empty");
+            assertThat(exported.channels(), is(equalTo(Map.of("transfer.a", 500L, "transfer.b", 501L, "transfer.empty", 0L))));
+
+            final var imported = new StanChannelTransfer(target).channelMapping(channel -> "copy." + channel).importFrom(file);
+            assertThat(imported.messages(), is(1001L));
+            assertThat(imported.channels().get("copy.transfer.b"), is(501L));
+            final var replayed = new StanChannelTransfer(target).exportTo(file, "copy.transfer.b");
+            assertThat(replayed.messages(), is(501L));
+        }
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,42 @@
+package berlin.yuna.natsserver.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+@Tag("UnitTest")
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Percentiles within one percent")
+    void percentiles_shouldBeAccurate() {
+        final var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertThat(histogram.count(), is(equalTo(100000L)));
+        assertThat(histogram.min(), is(equalTo(1000L)));
+        assertThat(histogram.max(), is(equalTo(100000000L)));
+        assertThat((double) histogram.percentile(50), is(closeTo(50000000d, 500000d)));
+        assertThat((double) histogram.percentile(99.9), is(closeTo(99900000d, 999000d)));
+        assertThat(histogram.percentile(100), is(equalTo(100000000L)));
+        assertThat(histogram.mean(), is(closeTo(50000500d, 1d)));
+    }
+
+    @Test
+    @DisplayName("Coordinated omission correction and merge")
+    void correctedAndMerged() {
+        final var corrected = new LatencyHistogram().recordCorrected(10000, 1000);
+        assertThat(corrected.count(), is(equalTo(10L)));
+        final var merged = new LatencyHistogram().record(5).add(corrected);
+        assertThat(merged.count(), is(equalTo(11L)));
+        assertThat(merged.min(), is(equalTo(5L)));
+        assertThat(merged.max(), is(equalTo(10000L)));
+        assertThat(new LatencyHistogram().percentile(99), is(equalTo(0L)));
+    }
+}
@@ -0,0 +1,67 @@
+package berlin.yuna.natsserver.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+
+@Tag("UnitTest")
+@DisplayName("Sample statistics")
+class SampleStatsTest {
+
+    @Test
+    @DisplayName("Mean and standard deviation")
+    void of_shouldCalculateMeanAndStdDev() {
+        final var stats = SampleStats.of(List.of(2, 4, 4, 4, 5, 5, 7, 9));
+        assertThat(stats.count(), is(8));
+        assertThat(stats.mean(), is(closeTo(5, 1e-9)));
+        assertThat(stats.stdDev(), is(closeTo(2.138, 1e-3)));
+        assertThat(SampleStats.of(List.of(1)).pValue(stats), is(Double.NaN));
+    }
+
+    @Test
+    @DisplayName("Student t distribution")
+    void regularizedBeta_shouldMatchTDistribution() {
+        // two-sided critical values of the t distribution for p = 0.05
+        assertThat(SampleStats.regularizedBeta(10 / (10 + 2.228 * 2.228), 5, 0.5), is(closeTo(0.05, 1e-3)));
+        assertThat(SampleStats.regularizedBeta(30 / (30 + 2.042 * 2.042), 15, 0.5), is(closeTo(0.05, 1e-3)));
+        assertThat(SampleStats.regularizedBeta(1 / (1 + 12.706 * 12.706), 0.5, 0.5), is(closeTo(0.05, 1e-3)));
+    }
+
+    @Test
+    @DisplayName("Welch's t-test")
+    void pValue_shouldDetectSignificantChanges() {
+        final var a = SampleStats.of(List.of(19.8, 20.4, 19.6, 17.8, 18.5, 18.9, 18.3, 18.9, 19.5, 22.0));
+        final var b = SampleStats.of(List.of(28.2, 26.6, 20.1, 23.3, 25.2, 22.1, 17.7, 27.6, 20.6, 13.7, 23.2, 17.5, 20.6, 18.0, 23.9, 21.6, 24.3, 20.4, 23.9, 13.3));
+        final var c = SampleStats.of(List.of(19.9, 20.1, 19.5, 18.0, 18.6, 19.1, 18.2, 18.8, 19.6, 21.7));
+        assertThat(a.pValue(b), is(closeTo(0.036, 2e-3)));
+        assertThat(a.pValue(b), is(closeTo(b.pValue(a), 1e-12)));
+        assertThat(a.pValue(c), is(greaterThan(0.5)));
+        assertThat(a.changePercent(b), is(greaterThan(0d)));
+    }
+
+    @Test
+    @DisplayName("Version comparison report")
+    void versionComparison_shouldReportSignificantDeltas() {
+        final var result = new VersionComparisonResult("v0.25.5", 0.05, Map.of(
+                "v0.25.5", List.of(Map.of("rate", 100), Map.of("rate", 101), Map.of("rate", 99), Map.of("rate", 100)),
+                "v0.25.6", List.of(Map.of("rate", 80), Map.of("rate", 81), Map.of("rate", 79), Map.of("rate", 80))
+        ), Map.of("v0.2.0", "not cached"));
+        assertThat(result.deltas(), hasSize(1));
+        assertThat(result.significant(), hasSize(1));
+        assertThat(result.significant().get(0).changePercent(), is(closeTo(-20, 1e-9)));
+        assertThat(result.significant().get(0).pValue(), is(lessThan(0.001)));
+        assertThat(result.toCsv().lines().count(), is(equalTo(4L)));
+        assertThat(result.report().contains("not cached"), is(true));
+    }
+}